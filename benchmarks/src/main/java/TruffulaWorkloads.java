@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import truffula.bench.Workloads;
+
+/**
+ * The benchmarked operations, implemented against truffula's classes.
+ *
+ * See Workloads for why this lives in the default package.
+ */
+public class TruffulaWorkloads implements Workloads {
+
+  @Override
+  public Runnable printTree(Path root, boolean showHidden, OutputStream out) {
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), showHidden, true);
+    PrintStream stream = new PrintStream(out);
+    return () -> new TruffulaPrinter(options, stream).printTree();
+  }
+
+  @Override
+  public Supplier<Long> printSortedTree(Path root, boolean showHidden, String sortKey, OutputStream out)
+      throws IOException {
+    MemoryFileSystem fileSystem = MemoryFileSystem.newFileSystem();
+    Path copy = fileSystem.getPath("/" + root.getFileName());
+    long entries = copyTree(root, copy, showHidden);
+
+    TruffulaOptions options = new TruffulaOptions(copy, showHidden, true);
+    options.setSortKey(SortKey.valueOf(sortKey));
+    options.setDirectoriesFirst(true);
+    PrintStream stream = new PrintStream(out);
+    return () -> {
+      fileSystem.resetCounts();
+      new TruffulaPrinter(options, stream).printTree();
+
+      // The printer reads the root's attributes once to check that it is a directory
+      long reads = fileSystem.getAttributeReads();
+      if (reads > entries + 1) {
+        throw new IllegalStateException(reads + " attribute reads for " + entries + " entries");
+      }
+      return reads;
+    };
+  }
+
+  @Override
+  public Supplier<Object> sortListings(Path root, boolean showHidden) throws IOException {
+    DirectoryLister lister = new NioDirectoryLister();
+    List<TreeEntry[]> listings = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+        List<TreeEntry> listing = new ArrayList<>();
+        try (DirectoryStream<TreeEntry> entries = lister.list(dir, showHidden)) {
+          entries.forEach(listing::add);
+        }
+        listings.add(listing.toArray(new TreeEntry[0]));
+      }
+    }
+
+    return () -> {
+      List<TreeEntry> sorted = null;
+      for (TreeEntry[] listing : listings) {
+        sorted = AlphabeticalFileSorter.sort(new ArrayList<>(Arrays.asList(listing)));
+      }
+      return sorted;
+    };
+  }
+
+  /**
+   * Copies a tree into another filesystem, with the same names and file sizes.
+   *
+   * @return the number of entries below the root that are printed
+   */
+  private static long copyTree(Path root, Path copy, boolean showHidden) throws IOException {
+    long entries = 0;
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        Path target = copy;
+        boolean hidden = false;
+        for (Path name : root.relativize(path)) {
+          target = target.resolve(name.toString());
+          hidden |= DirectoryLister.isHiddenName(name.toString());
+        }
+
+        if (Files.isDirectory(path)) {
+          Files.createDirectories(target);
+        } else {
+          Files.write(target, new byte[(int) Files.size(path)]);
+        }
+        if (!path.equals(root) && (showHidden || !hidden)) {
+          entries++;
+        }
+      }
+    }
+    return entries;
+  }
+
+  @Override
+  public Runnable printLines(List<String> lines, OutputStream out) {
+    ColorPrinter printer = new ColorPrinter(new PrintStream(out));
+    return () -> {
+      for (int i = 0; i < lines.size(); i++) {
+        printer.setCurrentColor(i % 2 == 0 ? ConsoleColor.PURPLE : ConsoleColor.YELLOW);
+        printer.println(lines.get(i));
+      }
+      printer.flush();
+    };
+  }
+}
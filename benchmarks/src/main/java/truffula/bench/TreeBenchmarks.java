@@ -0,0 +1,128 @@
+package truffula.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks printing a whole tree, and the two hot paths inside it on their
+ * own: sorting each directory's listing, and printing the lines.
+ *
+ * Each benchmark covers the same entries of the tree, so their scores compare
+ * directly. Besides the number of operations per second, each reports an
+ * "entries" secondary result: the entries printed or sorted per second.
+ *
+ * printSortedTree prints an in-memory copy of the tree sorted by each sort key,
+ * with directories first, and also reports "attributeReads": the attribute
+ * reads per second, as counted by the MemoryFileSystem that serves them. Sizes
+ * and times are read once per entry while listing, never by the comparator, so
+ * this never exceeds the entries rate; every run checks it and fails if an entry
+ * was read twice.
+ *
+ * Run with -prof gc for the allocation rate as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBenchmarks {
+
+  /**
+   * Counts the entries handled, which JMH reports as a rate.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Entries {
+    public long entries;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      entries = 0;
+    }
+  }
+
+  /**
+   * Counts the attribute reads made, which JMH reports as a rate.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class AttributeReads {
+    public long attributeReads;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      attributeReads = 0;
+    }
+  }
+
+  /**
+   * The key the tree is sorted by, and the task that prints it sorted.
+   */
+  @State(Scope.Benchmark)
+  public static class Sorting {
+    @Param({"NAME", "SIZE", "TIME", "EXTENSION"})
+    public String sortKey;
+
+    Supplier<Long> printSortedTree;
+
+    @Setup(Level.Trial)
+    public void prepare(TreeState tree) throws IOException {
+      printSortedTree = Workloads.load().printSortedTree(tree.root, tree.shape.showHidden(), sortKey,
+          OutputStream.nullOutputStream());
+    }
+  }
+
+  /**
+   * TruffulaPrinter.printTree() over the whole tree, to a stream that discards the output.
+   */
+  @Benchmark
+  public void printTree(TreeState tree, Entries counter) {
+    tree.printTree.run();
+    counter.entries += tree.entries;
+  }
+
+  /**
+   * TruffulaPrinter.printTree() sorted by the sort key, directories first, to a
+   * stream that discards the output.
+   */
+  @Benchmark
+  public void printSortedTree(TreeState tree, Sorting sorting, Entries counter, AttributeReads reads) {
+    reads.attributeReads += sorting.printSortedTree.get();
+    counter.entries += tree.entries;
+  }
+
+  /**
+   * AlphabeticalFileSorter.sort over every directory's listing, read in advance.
+   */
+  @Benchmark
+  public Object sort(TreeState tree, Entries counter) {
+    Object sorted = tree.sortListings.get();
+    counter.entries += tree.entries;
+    return sorted;
+  }
+
+  /**
+   * ColorPrinter.println with one line per entry, to a stream that discards the output.
+   */
+  @Benchmark
+  public void println(TreeState tree, Entries counter) {
+    tree.printLines.run();
+    counter.entries += tree.entries;
+  }
+}
@@ -0,0 +1,104 @@
+package truffula.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The synthetic trees the benchmarks run over.
+ */
+public enum TreeShape {
+
+  /**
+   * A single directory of 100,000 files, named like build output: long shared
+   * prefixes, mixed case, and numbered suffixes.
+   */
+  WIDE {
+    @Override
+    void create(Path root) throws IOException {
+      Random random = new Random(1);
+      String[] prefixes = {"Generated", "generated", "ModuleTest", "module-test", "R$", "r$"};
+      for (int i = 0; i < 100_000; i++) {
+        String prefix = prefixes[random.nextInt(prefixes.length)];
+        Files.createFile(root.resolve(prefix + "Class" + i + "_" + Integer.toString(random.nextInt(), 36) + ".class"));
+      }
+    }
+  },
+
+  /**
+   * A chain of 500 nested directories, with 30 files in each.
+   */
+  DEEP {
+    @Override
+    void create(Path root) throws IOException {
+      Path dir = root;
+      for (int level = 0; level < 500; level++) {
+        createFiles(dir, 30, 0);
+        dir = Files.createDirectory(dir.resolve("d"));
+      }
+    }
+  },
+
+  /**
+   * Five levels of directories, each holding 8 subdirectories (except at the
+   * bottom level) and 8 files: about 42,000 entries.
+   */
+  BALANCED {
+    @Override
+    void create(Path root) throws IOException {
+      createBalanced(root, 5, 8, 0);
+    }
+  },
+
+  /**
+   * The balanced tree with three hidden files for every visible one in each
+   * directory, printed without hidden entries.
+   */
+  HIDDEN_HEAVY {
+    @Override
+    void create(Path root) throws IOException {
+      createBalanced(root, 5, 8, 24);
+    }
+
+    @Override
+    boolean showHidden() {
+      return false;
+    }
+  };
+
+  /**
+   * Creates the tree in an empty directory.
+   *
+   * @param root the directory
+   * @throws IOException if an entry can't be created
+   */
+  abstract void create(Path root) throws IOException;
+
+  /**
+   * Indicates whether the tree is printed with hidden entries.
+   *
+   * @return true if hidden entries are shown; false otherwise
+   */
+  boolean showHidden() {
+    return true;
+  }
+
+  private static void createBalanced(Path dir, int depth, int fanout, int hidden) throws IOException {
+    createFiles(dir, fanout, hidden);
+    if (depth > 1) {
+      for (int i = 0; i < fanout; i++) {
+        createBalanced(Files.createDirectory(dir.resolve("Dir" + i)), depth - 1, fanout, hidden);
+      }
+    }
+  }
+
+  private static void createFiles(Path dir, int visible, int hidden) throws IOException {
+    for (int i = 0; i < visible; i++) {
+      Files.createFile(dir.resolve("file" + i + ".txt"));
+    }
+    for (int i = 0; i < hidden; i++) {
+      Files.createFile(dir.resolve(".hidden" + i));
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package truffula.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A synthetic tree in a temporary directory, created once per trial, and the
+ * benchmarked tasks over it.
+ */
+@State(Scope.Benchmark)
+public class TreeState {
+
+  @Param({"WIDE", "DEEP", "BALANCED", "HIDDEN_HEAVY"})
+  public TreeShape shape;
+
+  /**
+   * The number of entries printed for the tree, not counting the root.
+   */
+  long entries;
+
+  Runnable printTree;
+  Supplier<Object> sortListings;
+  Runnable printLines;
+
+  Path root;
+
+  @Setup(Level.Trial)
+  public void createTree() throws IOException {
+    root = Files.createTempDirectory("truffula-jmh");
+    shape.create(root);
+
+    boolean showHidden = shape.showHidden();
+    List<String> lines = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.skip(1)
+          .filter(path -> showHidden || !path.getFileName().toString().startsWith("."))
+          .forEach(path -> lines.add("   ".repeat(root.relativize(path).getNameCount() - 1) + path.getFileName()));
+    }
+    entries = lines.size();
+
+    Workloads workloads = Workloads.load();
+    printTree = workloads.printTree(root, showHidden, OutputStream.nullOutputStream());
+    sortListings = workloads.sortListings(root, showHidden);
+    printLines = workloads.printLines(lines, OutputStream.nullOutputStream());
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteTree() throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package truffula.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The operations the benchmarks measure.
+ *
+ * Truffula's classes are in the default package, which classes in a named
+ * package can't import, and JMH won't generate benchmarks in the default
+ * package. So the operations are implemented by TruffulaWorkloads, in the
+ * default package, and the benchmarks reach it through this interface.
+ */
+public interface Workloads {
+
+  /**
+   * Returns a task that prints the tree with TruffulaPrinter.printTree().
+   *
+   * @param root       the root of the tree
+   * @param showHidden whether hidden entries are printed
+   * @param out        the stream the tree is printed to
+   * @return the task, which prints the whole tree each time it runs
+   */
+  Runnable printTree(Path root, boolean showHidden, OutputStream out);
+
+  /**
+   * Copies the tree into a MemoryFileSystem, and returns a task that prints the
+   * copy with TruffulaPrinter.printTree(), sorted by the given key with
+   * directories first. The filesystem counts every attribute read it serves, so
+   * the count doesn't depend on the printer reporting its own reads.
+   *
+   * @param root       the root of the tree
+   * @param showHidden whether hidden entries are printed
+   * @param sortKey    the name of the SortKey to sort by
+   * @param out        the stream the tree is printed to
+   * @return the task, which prints the whole tree each time it runs and returns
+   *         the number of attribute reads
+   * @throws IOException if the tree can't be copied
+   * @throws IllegalStateException from the task, if there were more attribute
+   *         reads than printed entries (and the root)
+   */
+  Supplier<Long> printSortedTree(Path root, boolean showHidden, String sortKey, OutputStream out)
+      throws IOException;
+
+  /**
+   * Lists every directory of the tree up front, and returns a task that sorts
+   * a fresh copy of each listing with AlphabeticalFileSorter.sort.
+   *
+   * @param root       the root of the tree
+   * @param showHidden whether hidden entries are listed
+   * @return the task, which returns the last sorted listing
+   * @throws IOException if a directory can't be listed
+   */
+  Supplier<Object> sortListings(Path root, boolean showHidden) throws IOException;
+
+  /**
+   * Returns a task that prints the lines with ColorPrinter.println, alternating
+   * between two colors the way the tree's levels do, then flushes.
+   *
+   * @param lines the lines to print
+   * @param out   the stream the lines are printed to
+   * @return the task, which prints all the lines each time it runs
+   */
+  Runnable printLines(List<String> lines, OutputStream out);
+
+  /**
+   * Loads the implementation from the default package.
+   *
+   * @return the workloads
+   */
+  static Workloads load() {
+    try {
+      return (Workloads) Class.forName("TruffulaWorkloads").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Can't load TruffulaWorkloads", e);
+    }
+  }
+}
@@ -1,12 +1,47 @@
 import java.io.File;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 /**
- * Utility class for sorting an array of files alphabetically by name, 
+ * Utility class for sorting an array of files alphabetically by name,
  * ignoring case differences.
+ *
+ * Names that are equal ignoring case are sorted lexicographically, so uppercase
+ * comes first (Cat.png before cat.png) and the order never depends on the order
+ * the filesystem listed the files in.
+ *
+ * Each name is case-folded once, up front, into a collation key; the sort then
+ * compares keys instead of folding both names on every comparison. Large
+ * directories are sorted with a multikey (MSD radix) quicksort on the keys,
+ * which looks at each character of a shared prefix only a few times.
+ *
+ * Entries can also be sorted by another order first, such as size or type (see
+ * SortKey); the name order then only breaks ties.
  */
 public class AlphabeticalFileSorter {
 
+  /**
+   * Directories with at least this many entries are sorted with the radix sort.
+   */
+  static final int RADIX_THRESHOLD = 2048;
+
+  /**
+   * Ranges smaller than this are finished with an insertion sort.
+   */
+  private static final int INSERTION_THRESHOLD = 12;
+
+  /**
+   * The sort order for names: ignoring case, then lexicographically.
+   */
+  public static final Comparator<String> NAME_ORDER =
+      ((Comparator<String>) String::compareToIgnoreCase).thenComparing(Comparator.naturalOrder());
+
+  /**
+   * The sort order for tree entries, by name.
+   */
+  public static final Comparator<TreeEntry> ENTRY_ORDER = Comparator.comparing(TreeEntry::getName, NAME_ORDER);
+
   /**
    * Sorts an array of files alphabetically by name, ignoring case.
    *
@@ -14,9 +49,205 @@ public class AlphabeticalFileSorter {
    * @return the sorted array of files
    */
   public static File[] sort(File[] files) {
-    // This uses lambdas, which we haven't yet covered
-    // Look at it with curiosity, but you don't need to edit anything here
-    Arrays.sort(files, (f1, f2) -> f1.getName().compareToIgnoreCase(f2.getName()));
+    TreeEvents.Sort event = new TreeEvents.Sort();
+    event.begin();
+    Keyed<?>[] keyed = new Keyed<?>[files.length];
+    for (int i = 0; i < files.length; i++) {
+      keyed[i] = new Keyed<>(files[i].getName(), files[i]);
+    }
+
+    sortKeyed(keyed);
+
+    for (int i = 0; i < files.length; i++) {
+      files[i] = (File) keyed[i].item;
+    }
+    commit(event, keyed.length);
     return files;
   }
+
+  /**
+   * Sorts a list of tree entries alphabetically by name, ignoring case.
+   * Uses the same ordering as {@link #sort(File[])}.
+   *
+   * @param entries the list of entries to be sorted
+   * @return the sorted list of entries
+   */
+  public static List<TreeEntry> sort(List<TreeEntry> entries) {
+    TreeEvents.Sort event = new TreeEvents.Sort();
+    event.begin();
+    Keyed<?>[] keyed = new Keyed<?>[entries.size()];
+    for (int i = 0; i < keyed.length; i++) {
+      TreeEntry entry = entries.get(i);
+      keyed[i] = new Keyed<>(entry.getName(), entry);
+    }
+
+    sortKeyed(keyed);
+
+    for (int i = 0; i < keyed.length; i++) {
+      entries.set(i, (TreeEntry) keyed[i].item);
+    }
+    commit(event, keyed.length);
+    return entries;
+  }
+
+  /**
+   * Sorts a list of tree entries by the given order, and entries the order
+   * considers equal alphabetically by name, ignoring case.
+   *
+   * The entries are first sorted by name with {@link #sort(List)}, then by the
+   * order with a stable sort, which keeps equal entries in name order. The order
+   * only compares what the entries already hold, so neither pass touches the
+   * filesystem.
+   *
+   * @param entries the list of entries to be sorted
+   * @param order   the order to sort by before the name, or null to sort by name only
+   * @return the sorted list of entries
+   */
+  public static List<TreeEntry> sort(List<TreeEntry> entries, Comparator<TreeEntry> order) {
+    sort(entries);
+    if (order != null) {
+      entries.sort(order);
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the full order for entries sorted by the given order: the order,
+   * then the name.
+   *
+   * @param order the order to sort by before the name, or null to sort by name only
+   * @return the comparator
+   */
+  public static Comparator<TreeEntry> entryOrder(Comparator<TreeEntry> order) {
+    return order == null ? ENTRY_ORDER : order.thenComparing(ENTRY_ORDER);
+  }
+
+  /**
+   * Records a sort with the flight recorder, if it is recording sorts.
+   */
+  private static void commit(TreeEvents.Sort event, int entries) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.entries = entries;
+      event.commit();
+    }
+  }
+
+  /**
+   * Case-folds a name the same way String.compareToIgnoreCase compares characters
+   * (upper case, then lower case), so that comparing two keys with compareTo gives
+   * the same result as comparing the names with compareToIgnoreCase. Names that
+   * are already folded are returned as they are, without copying.
+   *
+   * @param name the name to fold
+   * @return the collation key for the name
+   */
+  static String collationKey(String name) {
+    int length = name.length();
+    int i = 0;
+    while (i < length) {
+      char c = name.charAt(i);
+      if (c >= 0x80 || (c >= 'A' && c <= 'Z')) break;
+      i++;
+    }
+    if (i == length) {
+      return name;
+    }
+
+    StringBuilder key = new StringBuilder(length).append(name, 0, i);
+    while (i < length) {
+      int codePoint = name.codePointAt(i);
+      key.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint)));
+      i += Character.charCount(codePoint);
+    }
+    return key.toString();
+  }
+
+  private static void sortKeyed(Keyed<?>[] keyed) {
+    if (keyed.length < RADIX_THRESHOLD) {
+      Arrays.sort(keyed);
+    } else {
+      radixSort(keyed, 0, keyed.length - 1, 0);
+    }
+  }
+
+  /**
+   * Multikey quicksort (three-way radix quicksort) of keyed[lo..hi] by key, where
+   * all keys in the range are known to share their first d characters. Keys that
+   * are equal all the way through are ordered by their original names.
+   */
+  private static void radixSort(Keyed<?>[] keyed, int lo, int hi, int d) {
+    while (hi - lo >= INSERTION_THRESHOLD) {
+      int pivot = charAt(keyed[lo + (hi - lo) / 2].key, d);
+      int lt = lo;
+      int gt = hi;
+      int i = lo;
+      while (i <= gt) {
+        int c = charAt(keyed[i].key, d);
+        if (c < pivot) {
+          swap(keyed, lt++, i++);
+        } else if (c > pivot) {
+          swap(keyed, i, gt--);
+        } else {
+          i++;
+        }
+      }
+
+      radixSort(keyed, lo, lt - 1, d);
+      radixSort(keyed, gt + 1, hi, d);
+
+      if (pivot < 0) {
+        // Every key in the middle range is identical; only the names differ
+        Arrays.sort(keyed, lt, gt + 1);
+        return;
+      }
+      lo = lt;
+      hi = gt;
+      d++;
+    }
+    insertionSort(keyed, lo, hi);
+  }
+
+  private static void insertionSort(Keyed<?>[] keyed, int lo, int hi) {
+    for (int i = lo + 1; i <= hi; i++) {
+      Keyed<?> current = keyed[i];
+      int j = i - 1;
+      while (j >= lo && keyed[j].compareTo(current) > 0) {
+        keyed[j + 1] = keyed[j];
+        j--;
+      }
+      keyed[j + 1] = current;
+    }
+  }
+
+  private static int charAt(String key, int d) {
+    return d < key.length() ? key.charAt(d) : -1;
+  }
+
+  private static void swap(Keyed<?>[] keyed, int i, int j) {
+    Keyed<?> temp = keyed[i];
+    keyed[i] = keyed[j];
+    keyed[j] = temp;
+  }
+
+  /**
+   * An item to be sorted, with its name and collation key computed once.
+   */
+  private static class Keyed<T> implements Comparable<Keyed<?>> {
+    private final String key;
+    private final String name;
+    private final T item;
+
+    private Keyed(String name, T item) {
+      this.key = collationKey(name);
+      this.name = name;
+      this.item = item;
+    }
+
+    @Override
+    public int compareTo(Keyed<?> other) {
+      int result = key.compareTo(other.key);
+      return result != 0 ? result : name.compareTo(other.name);
+    }
+  }
 }
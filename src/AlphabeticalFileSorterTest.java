@@ -0,0 +1,158 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class AlphabeticalFileSorterTest {
+
+  @Test
+  void testSortsIgnoringCase() {
+    File[] files = {new File("zebra.txt"), new File("Apple.txt"), new File("Documents"), new File("banana.txt")};
+
+    AlphabeticalFileSorter.sort(files);
+
+    assertArrayEquals(new File[] {new File("Apple.txt"), new File("banana.txt"), new File("Documents"),
+        new File("zebra.txt")}, files);
+  }
+
+  @Test
+  void testTiesBreakLexicographically() {
+    // Whatever order the filesystem lists them in, Cat.png comes before cat.png
+    File[] files = {new File("cat.png"), new File("Dog.png"), new File("Cat.png")};
+    File[] reversed = {new File("Cat.png"), new File("Dog.png"), new File("cat.png")};
+
+    File[] expected = {new File("Cat.png"), new File("cat.png"), new File("Dog.png")};
+    assertArrayEquals(expected, AlphabeticalFileSorter.sort(files));
+    assertArrayEquals(expected, AlphabeticalFileSorter.sort(reversed));
+  }
+
+  @Test
+  void testSortsEntries() {
+    List<TreeEntry> entries = new ArrayList<>();
+    for (String name : new String[] {"notes.txt", "README.md", "images", "Images", "a"}) {
+      entries.add(new TreeEntry(Paths.get(name), name, false));
+    }
+
+    AlphabeticalFileSorter.sort(entries);
+
+    List<String> names = new ArrayList<>();
+    for (TreeEntry entry : entries) {
+      names.add(entry.getName());
+    }
+    assertEquals(List.of("a", "Images", "images", "notes.txt", "README.md"), names);
+  }
+
+  @Test
+  void testCollationKeyMatchesCompareToIgnoreCase() {
+    String[] names = {"abc", "ABC", "aBd", "Straße", "STRASSE", "ÿes", "Ÿes", "µm", "Μm", "émile", "Émile", "z",
+        "日本", "İstanbul", "istanbul", "ǅemal", "ǆemal", "a𐐀", "a𐐨", ""};
+
+    for (String a : names) {
+      for (String b : names) {
+        int expected = Integer.signum(a.compareToIgnoreCase(b));
+        int actual = Integer.signum(AlphabeticalFileSorter.collationKey(a).compareTo(AlphabeticalFileSorter.collationKey(b)));
+        assertEquals(expected, actual, a + " vs " + b);
+      }
+    }
+  }
+
+  @Test
+  void testCollationKeyReusesFoldedNames() {
+    String name = "already-folded_name.txt";
+    assertSame(name, AlphabeticalFileSorter.collationKey(name));
+  }
+
+  @Test
+  void testRadixSortMatchesComparator() {
+    // Large enough for the radix path, with long shared prefixes and many case-only ties
+    Random random = new Random(7);
+    List<TreeEntry> entries = new ArrayList<>();
+    for (int i = 0; i < AlphabeticalFileSorter.RADIX_THRESHOLD * 4; i++) {
+      StringBuilder name = new StringBuilder(random.nextBoolean() ? "build-output-" : "Build-Output-");
+      int length = random.nextInt(4);
+      for (int j = 0; j < length; j++) {
+        char c = (char) ('a' + random.nextInt(4));
+        name.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+      }
+      String unique = name.append('.').append(i % 50).toString();
+      if (entries.stream().noneMatch(e -> e.getName().equals(unique))) {
+        entries.add(new TreeEntry(Paths.get(unique), unique, false));
+      }
+    }
+
+    List<TreeEntry> expected = new ArrayList<>(entries);
+    expected.sort(AlphabeticalFileSorter.ENTRY_ORDER);
+
+    Collections.shuffle(entries, random);
+    AlphabeticalFileSorter.sort(entries);
+
+    assertEquals(expected, entries);
+  }
+
+  @Test
+  void testSortsEntriesBySortKey() {
+    List<TreeEntry> entries = new ArrayList<>();
+    entries.add(new TreeEntry(Paths.get("b.txt"), "b.txt", false, 10, 300));
+    entries.add(new TreeEntry(Paths.get("A.md"), "A.md", false, 10, 100));
+    entries.add(new TreeEntry(Paths.get("src"), "src", true, 4096, 200));
+    entries.add(new TreeEntry(Paths.get("c.TXT"), "c.TXT", false, 99, 300));
+    entries.add(new TreeEntry(Paths.get(".profile"), ".profile", false, 5, TreeEntry.UNKNOWN_TIME));
+    entries.add(new TreeEntry(Paths.get("Makefile"), "Makefile", false, TreeEntry.UNKNOWN_SIZE, 50));
+
+    // Equal keys fall back to the name order
+    assertEquals(List.of(".profile", "A.md", "b.txt", "c.TXT", "Makefile", "src"), sorted(entries, SortKey.NAME, false));
+    assertEquals(List.of("src", "c.TXT", "A.md", "b.txt", ".profile", "Makefile"), sorted(entries, SortKey.SIZE, false));
+    assertEquals(List.of("b.txt", "c.TXT", "src", "A.md", "Makefile", ".profile"), sorted(entries, SortKey.TIME, false));
+    assertEquals(List.of(".profile", "Makefile", "src", "A.md", "b.txt", "c.TXT"),
+        sorted(entries, SortKey.EXTENSION, false));
+    assertEquals(List.of("src", ".profile", "A.md", "b.txt", "c.TXT", "Makefile"), sorted(entries, SortKey.NAME, true));
+    assertEquals(List.of("src", "c.TXT", "A.md", "b.txt", ".profile", "Makefile"), sorted(entries, SortKey.SIZE, true));
+  }
+
+  @Test
+  void testCompareExtensionsMatchesCompareToIgnoreCase() {
+    String[] names = {"a.txt", "b.TXT", "c.tx", "d.txta", "e", "f.", ".g", "h.Straße", "i.STRASSE", "j.tar.gz",
+        "k.GZ", "l.ÿ", "m.Ÿ"};
+
+    for (String a : names) {
+      for (String b : names) {
+        int expected = Integer.signum(extension(a).compareToIgnoreCase(extension(b)));
+        assertEquals(expected, Integer.signum(SortKey.compareExtensions(a, b)), a + " vs " + b);
+      }
+    }
+  }
+
+  private static List<String> sorted(List<TreeEntry> entries, SortKey key, boolean directoriesFirst) {
+    TruffulaOptions options = new TruffulaOptions(new File("."), false, false);
+    options.setSortKey(key);
+    options.setDirectoriesFirst(directoriesFirst);
+
+    List<TreeEntry> copy = new ArrayList<>(entries);
+    Collections.shuffle(copy, new Random(key.ordinal()));
+    AlphabeticalFileSorter.sort(copy, options.getSortOrder());
+
+    // Sorting with the full order, as the entry-limit heaps do, gives the same result
+    List<TreeEntry> expected = new ArrayList<>(entries);
+    expected.sort(AlphabeticalFileSorter.entryOrder(options.getSortOrder()));
+    assertEquals(expected, copy);
+
+    List<String> names = new ArrayList<>();
+    for (TreeEntry entry : copy) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+
+  private static String extension(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot > 0 ? name.substring(dot + 1) : "";
+  }
+}
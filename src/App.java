@@ -1,3 +1,11 @@
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
 public class App {
   
   /**
@@ -13,19 +21,52 @@ public class App {
    * 
    * Usage Example:
    * 
-   * Arguments Format: [-h] [-nc] path
+   * Arguments Format: [-h] [-nc] [-nio] [-it] [-p threads] [-vt listings] [-rl] [-L depth] [-cm] [-k entries] [-U] [-sort key] [-df] [-P pattern]... [-I pattern]... [-gi] [-s snapshot] [-w] [-wl directories] [-du] [-o format] [-wi image] [-ri image] [-d before] [-stats] path
    * 
    * Flags:
    * - -h   : Show hidden files (defaults to false).
    * - -nc  : Do not use color (color is enabled by default).
+   * - -nio : List directories with java.nio instead of java.io.File (defaults to false).
+   * - -it  : Walk the tree iteratively instead of recursively, for very deep trees (defaults to false).
+   * - -p N : List directories on N threads ahead of the printer (defaults to 1).
+   * - -vt N: List directories on virtual threads, at most N at once (off by default).
+   * - -rl  : Only write color codes when the color changes (defaults to false).
+   * - -L N : Print at most N levels below the root; deeper directories are not read (no limit by default).
+   * - -cm  : Mark directories collapsed by -L with a trailing " [...]" (defaults to false).
+   * - -k N : Print at most the first N entries of each directory, then "… M more" (no limit by default).
+   * - -U   : Don't sort; print entries in the order each directory lists them, with memory that
+   *          stays flat however big a directory is. Implies -nio, and ignores -it, -p, -vt, -sort and -df (defaults to false).
+   * - -sort key : Sort each directory by name, size (largest first), time (newest first) or extension;
+   *               entries with equal keys are sorted by name (defaults to name).
+   * - -df  : List directories before files, then sort each group by the -sort key (defaults to false).
+   * - -P pattern : Only show files matching the glob pattern; may be repeated, or separated by '|'.
+   * - -I pattern : Leave out entries matching the glob pattern; excluded directories are not read.
+   *               May be repeated, or separated by '|' (e.g. -I 'build|node_modules|*.class').
+   * - -gi  : Leave out entries ignored by .gitignore files (and .git); ignored directories are not read.
+   * - -s file : Keep a snapshot of the tree in file; later runs only re-list directories that changed.
+   * - -w   : Keep running, and print the tree again whenever it changes (defaults to false).
+   * - -wl N: Watch at most N directories; poll the rest for changes (defaults to 8192).
+   * - -du  : Show the total size and file count of every directory (defaults to false).
+   * - -o format : Print the tree as text, json (nested) or ndjson (one entry per line) (defaults to text).
+   * - -wi file : Save the tree to a binary image file instead of printing it.
+   * - -ri file : Print the tree saved in an image file; the path is then a directory in the image
+   *              ("." for its root), and the filesystem is not read.
+   * - -d before : Print only what was added, removed, or changed type since before, which is
+   *               another directory or a snapshot file written with -s.
+   * - -stats : When done, print how many directories were listed, entries seen and hidden,
+   *            attributes read, and bytes written, to standard error (defaults to false).
    * 
    * Path:
    * - The absolute or relative path to the directory whose contents will be printed.
+   * - Or the path to a zip or jar file, whose entries are printed as a tree straight from
+   *   the archive's central directory, without extracting anything.
    * 
    * Behavior:
    * - If color is disabled, all text will be printed in white.
    * - The order of flags is unimportant.
    * - The path argument is mandatory.
+   * - If the output is closed before the tree is printed (e.g. piped into head), the walk
+   *   stops there, background listings included, and nothing is reported.
    * 
    * Examples:
    * 
@@ -43,11 +84,88 @@ public class App {
   public static void main(String[] args) throws Exception {
     try {
       TruffulaOptions choices = new TruffulaOptions(args);
-      TruffulaPrinter printer = new TruffulaPrinter(choices);
-
-      printer.printTree();
+      try {
+        run(choices);
+      } finally {
+        if (choices.getArchive() != null) {
+          choices.getRootPath().getFileSystem().close();
+        }
+        if (choices.isPrintStats()) {
+          System.err.println(TreeMetrics.global().summary());
+        }
+      }
     } catch (Exception e) {
+      // Whoever was reading the output has gone away, so there is nobody to tell
+      if (System.out.checkError()) {
+        return;
+      }
       System.err.println(e.getMessage());
     }
   }
+
+  /**
+   * Prints the tree, or runs the mode, selected by the options.
+   */
+  private static void run(TruffulaOptions choices) throws Exception {
+    if (choices.isWatch()) {
+      try (TreeWatcher watcher = new TreeWatcher(choices, new BufferedColorPrinter(System.out))) {
+        watcher.run();
+      }
+      return;
+    }
+
+    if (choices.getDiffAgainst() != null) {
+      BufferedColorPrinter out = new BufferedColorPrinter(System.out);
+      TreeDiff.fromOptions(choices).run(TreeDiff.printer(out, choices.isUseColor()));
+      out.flush();
+      return;
+    }
+
+    if (choices.getWriteImage() != null) {
+      try (TreeImageWriter writer = new TreeImageWriter(choices.getWriteImage())) {
+        new TruffulaPrinter(choices).walkTree(writer);
+      }
+      return;
+    }
+
+    TruffulaPrinter printer = new TruffulaPrinter(choices, new BufferedColorPrinter(System.out));
+    TreeImage image = choices.getReadImage() == null ? null : TreeImage.open(choices.getReadImage());
+    try {
+      if (choices.getOutputFormat() != OutputFormat.TEXT) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(standardOutput(), StandardCharsets.UTF_8),
+            BufferedColorPrinter.DEFAULT_BUFFER_SIZE);
+        JsonTreeWriter json = new JsonTreeWriter(writer, choices.getOutputFormat());
+        if (image != null) {
+          printer.walkTree(image, choices.getRootPath(), json);
+        } else {
+          printer.walkTree(json);
+        }
+        writer.flush();
+      } else if (image != null) {
+        printer.printTree(image, choices.getRootPath());
+      } else {
+        printer.printTree();
+      }
+    } finally {
+      if (image != null) {
+        image.close();
+      }
+    }
+  }
+
+  /**
+   * Returns a stream writing to System.out that throws once System.out has failed,
+   * which System.out itself never does, so writers stop as soon as the output is closed.
+   */
+  private static OutputStream standardOutput() {
+    return new FilterOutputStream(System.out) {
+      @Override
+      public void write(byte[] bytes, int offset, int length) throws IOException {
+        System.out.write(bytes, offset, length);
+        if (System.out.checkError()) {
+          throw new IOException("Output stream failed");
+        }
+      }
+    };
+  }
 }
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A ColorPrinter that encodes text straight into a reusable byte buffer and writes
+ * it to the underlying stream or channel in large chunks.
+ * 
+ * Unlike ColorPrinter, no String is built per line: the color code, message, line
+ * separator and reset code are each encoded into the buffer in place. Text is
+ * encoded as UTF-8.
+ * 
+ * Output is only guaranteed to reach the underlying stream after flush() or close().
+ * 
+ * A failed write throws an UncheckedIOException. When the underlying stream is a
+ * PrintStream, which never throws, its checkError() is called after every chunk,
+ * so a failed stream (such as a closed pipe) is noticed as early as with a stream
+ * that throws.
+ * 
+ * Example Usage:
+ * 
+ * BufferedColorPrinter printer = new BufferedColorPrinter(System.out);
+ * printer.setCurrentColor(ConsoleColor.RED);
+ * printer.println("This is red text");
+ * printer.flush();
+ */
+public class BufferedColorPrinter extends ColorPrinter implements AutoCloseable {
+  /**
+   * Default size of the output buffer in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  /**
+   * The stream written to, or null when writing to a channel.
+   */
+  private final OutputStream outputStream;
+
+  /**
+   * The channel written to, or null when writing to a stream.
+   */
+  private final WritableByteChannel channel;
+
+  /**
+   * The encoded output that hasn't been written yet.
+   */
+  private final byte[] buffer;
+
+  /**
+   * A view of the buffer for writing to the channel.
+   */
+  private final ByteBuffer channelBuffer;
+
+  /**
+   * The number of bytes in the buffer.
+   */
+  private int count;
+
+  /**
+   * Constructs a BufferedColorPrinter writing to the given stream, in white,
+   * with the default buffer size.
+   * 
+   * @param outputStream the stream to which output will be written
+   */
+  public BufferedColorPrinter(OutputStream outputStream) {
+    this(outputStream, ConsoleColor.WHITE, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructs a BufferedColorPrinter writing to the given stream.
+   * 
+   * @param outputStream the stream to which output will be written
+   * @param color        the initial ConsoleColor to use for printing
+   * @param bufferSize   the size of the output buffer in bytes, at least 4
+   */
+  public BufferedColorPrinter(OutputStream outputStream, ConsoleColor color, int bufferSize) {
+    this(outputStream, null, color, bufferSize);
+  }
+
+  /**
+   * Constructs a BufferedColorPrinter writing to the given channel, in white,
+   * with the default buffer size.
+   * 
+   * @param channel the channel to which output will be written
+   */
+  public BufferedColorPrinter(WritableByteChannel channel) {
+    this(null, channel, ConsoleColor.WHITE, DEFAULT_BUFFER_SIZE);
+  }
+
+  private BufferedColorPrinter(OutputStream outputStream, WritableByteChannel channel, ConsoleColor color,
+      int bufferSize) {
+    super(color);
+    if (bufferSize < 4) {
+      throw new IllegalArgumentException("Buffer size must be at least 4 bytes.");
+    }
+    this.outputStream = outputStream;
+    this.channel = channel;
+    this.buffer = new byte[bufferSize];
+    this.channelBuffer = ByteBuffer.wrap(buffer);
+  }
+
+  @Override
+  public void println(String message, boolean reset) {
+    if (message == null) {
+      throw new IllegalArgumentException("Message cannot be null.");
+    }
+
+    write(enterCurrentColor());
+    write(message);
+    write(LINE_SEPARATOR);
+    if (resetAfterMessage(reset)) {
+      write(ConsoleColor.RESET.getCode());
+    }
+  }
+
+  @Override
+  public void print(String message, boolean reset) {
+    if (message == null) {
+      throw new IllegalArgumentException("Message cannot be null.");
+    }
+
+    if (message.isEmpty()) return;
+
+    write(enterCurrentColor());
+    write(message);
+    if (resetAfterMessage(reset)) {
+      write(ConsoleColor.RESET.getCode());
+    }
+  }
+
+  /**
+   * Writes the buffered output to the underlying stream or channel and flushes it.
+   * 
+   * @throws UncheckedIOException if the output can't be written
+   */
+  @Override
+  protected void flushOutput() {
+    drain();
+    if (outputStream != null) {
+      try {
+        outputStream.flush();
+        checkError();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Flushes the buffered output and closes the underlying stream or channel.
+   * 
+   * @throws UncheckedIOException if the output can't be written or closed
+   */
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      try {
+        if (outputStream != null) {
+          outputStream.close();
+        } else {
+          channel.close();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Encodes text into the buffer as UTF-8, draining the buffer whenever it fills up.
+   * Unpaired surrogates are written as '?', like String.getBytes does.
+   */
+  @Override
+  protected void write(String text) {
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+
+      if (c < 0x80) {
+        if (count == buffer.length) drain();
+        buffer[count++] = (byte) c;
+        continue;
+      }
+
+      if (count + 4 > buffer.length) drain();
+
+      if (c < 0x800) {
+        buffer[count++] = (byte) (0xC0 | (c >> 6));
+        buffer[count++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+        buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        buffer[count++] = '?';
+      } else {
+        buffer[count++] = (byte) (0xE0 | (c >> 12));
+        buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[count++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered bytes to the underlying stream or channel and empties the buffer.
+   */
+  private void drain() {
+    if (count == 0) return;
+
+    TreeEvents.OutputFlush event = new TreeEvents.OutputFlush();
+    event.begin();
+    try {
+      if (outputStream != null) {
+        outputStream.write(buffer, 0, count);
+        checkError();
+      } else {
+        channelBuffer.clear().limit(count);
+        while (channelBuffer.hasRemaining()) {
+          channel.write(channelBuffer);
+        }
+      }
+      TreeMetrics.global().bytesWritten(count);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.bytes = count;
+        event.commit();
+      }
+      count = 0;
+    }
+  }
+
+  /**
+   * Throws if the underlying stream is a PrintStream that has swallowed a failure.
+   */
+  private void checkError() throws IOException {
+    if (outputStream instanceof PrintStream && ((PrintStream) outputStream).checkError()) {
+      throw new IOException("Output stream failed");
+    }
+  }
+}
@@ -0,0 +1,178 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferedColorPrinterTest {
+
+  @Test
+  void testPrintlnWithRedColorAndReset() {
+    // Arrange: Capture the printed output
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    BufferedColorPrinter printer = new BufferedColorPrinter(outputStream);
+    printer.setCurrentColor(ConsoleColor.RED);
+
+    // Act: Print the message
+    printer.println("I speak for the trees");
+    printer.flush();
+
+    String expectedOutput = ConsoleColor.RED + "I speak for the trees" + System.lineSeparator() + ConsoleColor.RESET;
+
+    // Assert: Verify the printed output
+    assertEquals(expectedOutput, outputStream.toString());
+  }
+
+  @Test
+  void testNothingWrittenBeforeFlush() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    BufferedColorPrinter printer = new BufferedColorPrinter(outputStream);
+    printer.println("Apples!");
+
+    assertEquals(0, outputStream.size());
+
+    printer.flush();
+
+    assertEquals(ConsoleColor.WHITE + "Apples!" + System.lineSeparator() + ConsoleColor.RESET, outputStream.toString());
+  }
+
+  @Test
+  void testMatchesColorPrinter() {
+    // Arrange: Run the same calls through both printers
+    ByteArrayOutputStream expectedStream = new ByteArrayOutputStream();
+    ColorPrinter expectedPrinter = new ColorPrinter(new PrintStream(expectedStream, true, StandardCharsets.UTF_8));
+
+    ByteArrayOutputStream actualStream = new ByteArrayOutputStream();
+    BufferedColorPrinter actualPrinter = new BufferedColorPrinter(actualStream, ConsoleColor.WHITE, 16);
+
+    for (ColorPrinter printer : new ColorPrinter[] {expectedPrinter, actualPrinter}) {
+      printer.setCurrentColor(ConsoleColor.RED);
+      printer.print("Apples!");
+      printer.setCurrentColor(ConsoleColor.YELLOW);
+      printer.print("Bananas!", false);
+      printer.println("Pineapples!");
+      printer.println("", false);
+      printer.print("");
+      printer.setCurrentColor(ConsoleColor.CYAN);
+      printer.println("Über café, 日本語, and a tree 🌳 that is longer than the buffer");
+      printer.println("Lone surrogate \uD83C!");
+      printer.flush();
+    }
+
+    // Assert: The bytes are identical
+    assertArrayEquals(expectedStream.toByteArray(), actualStream.toByteArray());
+  }
+
+  @Test
+  void testWritesToChannel() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    BufferedColorPrinter printer = new BufferedColorPrinter(Channels.newChannel(outputStream));
+    printer.setCurrentColor(ConsoleColor.GREEN);
+    printer.print("I love Binary trees!");
+    printer.close();
+
+    assertEquals(ConsoleColor.GREEN + "I love Binary trees!" + ConsoleColor.RESET, outputStream.toString());
+  }
+
+  @Test
+  void testLargeOutputIsWrittenInChunks() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    StringBuilder expected = new StringBuilder();
+
+    BufferedColorPrinter printer = new BufferedColorPrinter(outputStream, ConsoleColor.WHITE, 1024);
+    for (int i = 0; i < 10_000; i++) {
+      printer.println("line " + i);
+      expected.append(ConsoleColor.WHITE).append("line ").append(i).append(System.lineSeparator()).append(ConsoleColor.RESET);
+    }
+
+    // Everything but the last partial chunk has already been written
+    assertEquals(expected.length() - expected.length() % 1024, outputStream.size());
+
+    printer.flush();
+    assertEquals(expected.toString(), outputStream.toString());
+  }
+
+  @Test
+  void testPrintNullInput() {
+    BufferedColorPrinter printer = new BufferedColorPrinter(new ByteArrayOutputStream());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      printer.print(null);
+    }, "Illegal Argument Exception Expected");
+    assertThrows(IllegalArgumentException.class, () -> {
+      printer.println(null);
+    }, "Illegal Argument Exception Expected");
+  }
+
+  @Test
+  void testPrintEmptyString() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    BufferedColorPrinter printer = new BufferedColorPrinter(outputStream);
+    printer.print("");
+    printer.flush();
+
+    assertEquals("", outputStream.toString());
+  }
+
+  @Test
+  void testRunLengthMatchesColorPrinter() {
+    ByteArrayOutputStream expectedStream = new ByteArrayOutputStream();
+    ColorPrinter expectedPrinter = new ColorPrinter(new PrintStream(expectedStream, true, StandardCharsets.UTF_8));
+    expectedPrinter.setRunLength(true);
+
+    ByteArrayOutputStream actualStream = new ByteArrayOutputStream();
+    BufferedColorPrinter actualPrinter = new BufferedColorPrinter(actualStream, ConsoleColor.WHITE, 16);
+    actualPrinter.setRunLength(true);
+
+    for (ColorPrinter printer : new ColorPrinter[] {expectedPrinter, actualPrinter}) {
+      printer.println("root/");
+      printer.setCurrentColor(ConsoleColor.PURPLE);
+      printer.println("   a.txt");
+      printer.println("   b/");
+      printer.setCurrentColor(ConsoleColor.YELLOW);
+      printer.println("      c.txt", false);
+      printer.setCurrentColor(ConsoleColor.PURPLE);
+      printer.println("   d.txt");
+      printer.flush();
+    }
+
+    assertArrayEquals(expectedStream.toByteArray(), actualStream.toByteArray());
+    assertTrue(actualStream.toString().endsWith(ConsoleColor.RESET.getCode()));
+  }
+
+  @Test
+  void testRunLengthResetsOnClose() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    BufferedColorPrinter printer = new BufferedColorPrinter(outputStream);
+    printer.setRunLength(true);
+    printer.println("one");
+    printer.println("two");
+    printer.close();
+
+    String nl = System.lineSeparator();
+    assertEquals(ConsoleColor.WHITE + "one" + nl + "two" + nl + ConsoleColor.RESET, outputStream.toString());
+  }
+
+  @Test
+  void testThrowsWhenPrintStreamFails() {
+    BufferedColorPrinter printer = new BufferedColorPrinter(
+        new PrintStream(new TruffulaPrinterTest.FailingStream(100)), ConsoleColor.WHITE, 64);
+    assertThrows(UncheckedIOException.class, () -> {
+      for (int i = 0; i < 10; i++) {
+        printer.println("I speak for the trees");
+      }
+    });
+  }
+}
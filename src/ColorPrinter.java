@@ -1,4 +1,8 @@
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A utility class for printing colored text to a PrintStream using ANSI escape codes.
@@ -16,8 +20,30 @@ import java.io.PrintStream;
  * printer.println("This is red text");
  * 
  * The printed text will appear in the terminal with the specified colors if the terminal supports ANSI codes.
+ * 
+ * Run-length mode:
+ * 
+ * By default every print writes the color code before the message and (usually) the
+ * reset code after it. In run-length mode the printer remembers which color the
+ * terminal is in and only writes a color code when the color changes. The reset
+ * code is written once, by flush(), at the end of the run. The text looks the same
+ * in the terminal but uses far fewer bytes when consecutive lines share a color.
+ * 
+ * Failed output:
+ * 
+ * PrintStream never throws; it only remembers that a write failed, for instance
+ * because the reader of a pipe went away. The printer asks the stream with
+ * checkError() every ERROR_CHECK_INTERVAL bytes and on every flush, and throws
+ * an UncheckedIOException once the stream has failed, so a tree walk printing to
+ * "| head" stops soon after head exits instead of listing the whole tree.
  */
 public class ColorPrinter {
+  /**
+   * How many bytes may be printed between checks that the stream hasn't failed.
+   * checkError() flushes the stream, so it isn't called for every line.
+   */
+  static final int ERROR_CHECK_INTERVAL = 8 * 1024;
+
   /**
    * The current color used for printing.
    */
@@ -28,6 +54,31 @@ public class ColorPrinter {
    */
   private final PrintStream printStream;
 
+  /**
+   * The charset the PrintStream encodes text with, for counting the bytes written.
+   */
+  private final Charset charset;
+
+  /**
+   * Whether color codes are only written when the color changes.
+   */
+  private boolean runLength;
+
+  /**
+   * The color the terminal was last set to, or null if it was reset.
+   */
+  private ConsoleColor activeColor;
+
+  /**
+   * The number of bytes printed since the last flush.
+   */
+  private long unflushed;
+
+  /**
+   * The number of bytes printed since the stream was last checked for errors.
+   */
+  private int unchecked;
+
   /**
    * Returns the current color set for the printer.
    * 
@@ -92,11 +143,135 @@ public class ColorPrinter {
 
     if (message.isEmpty()) return;
 
-    if (reset) {
-      printStream.print(currentColor + message + ConsoleColor.RESET);
+    String color = enterCurrentColor();
+    String text;
+    if (resetAfterMessage(reset)) {
+      text = color + message + ConsoleColor.RESET;
     } else {
-      printStream.print(currentColor + message);
+      text = color.isEmpty() ? message : color + message;
     }
+    write(text);
+  }
+
+  /**
+   * Writes text, color codes included, to the output. Every print goes through
+   * here; subclasses that don't write to a PrintStream override it along with
+   * flushOutput().
+   * 
+   * @param text the text to write
+   * @throws UncheckedIOException if a write to the stream has failed
+   */
+  protected void write(String text) {
+    printStream.print(text);
+    int bytes = charset == StandardCharsets.UTF_8 ? utf8Length(text) : text.getBytes(charset).length;
+    unflushed += bytes;
+    unchecked += bytes;
+    if (unchecked >= ERROR_CHECK_INTERVAL) {
+      checkError();
+    }
+  }
+
+  /**
+   * Throws if the stream has failed. This flushes the stream.
+   * 
+   * @throws UncheckedIOException if a write to the stream has failed
+   */
+  private void checkError() {
+    unchecked = 0;
+    if (printStream.checkError()) {
+      throw new UncheckedIOException(new IOException("Output stream failed"));
+    }
+  }
+
+  /**
+   * Returns the number of bytes a string takes up in UTF-8, without encoding it.
+   * UTF-8 is what BufferedColorPrinter writes, and PrintStream's default on
+   * current JDKs; a PrintStream with another charset is counted by encoding.
+   *
+   * @param text the text
+   * @return its length in bytes
+   */
+  static int utf8Length(String text) {
+    int length = text.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          bytes++;
+        } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+          bytes += 2;
+          i++;
+        } else if (!Character.isSurrogate(c)) {
+          bytes += 2;
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Indicates whether the printer is in run-length mode, where color codes are only
+   * written when the color changes and the reset code is deferred until flush().
+   * 
+   * @return true if the printer is in run-length mode; false otherwise
+   */
+  public boolean isRunLength() {
+    return runLength;
+  }
+
+  /**
+   * Turns run-length mode on or off. In run-length mode the reset parameter of
+   * print and println is ignored; the terminal is reset once by flush().
+   * 
+   * @param runLength true to write color codes only when the color changes
+   */
+  public void setRunLength(boolean runLength) {
+    this.runLength = runLength;
+  }
+
+  /**
+   * Returns the color code to write before the next message and records that the
+   * terminal is now in the current color. In run-length mode this is empty if the
+   * terminal is already in the current color.
+   * 
+   * @return the color code to write, possibly empty
+   */
+  protected String enterCurrentColor() {
+    if (runLength && activeColor == currentColor) {
+      return "";
+    }
+    activeColor = currentColor;
+    return currentColor.getCode();
+  }
+
+  /**
+   * Records whether the reset code is written after the current message, and
+   * returns true if it should be. It never is in run-length mode.
+   * 
+   * @param reset whether the caller asked for a reset
+   * @return true if the reset code should be written after the message
+   */
+  protected boolean resetAfterMessage(boolean reset) {
+    if (runLength || !reset) {
+      return false;
+    }
+    activeColor = null;
+    return true;
+  }
+
+  /**
+   * Returns the reset code if run-length mode left the terminal in a color, and
+   * records that the terminal has been reset. Otherwise returns an empty string.
+   * 
+   * @return the reset code to write, possibly empty
+   */
+  protected String endColorRun() {
+    if (!runLength || activeColor == null) {
+      return "";
+    }
+    activeColor = null;
+    return ConsoleColor.RESET.getCode();
   }
 
   /**
@@ -117,9 +292,52 @@ public class ColorPrinter {
    */
   public ColorPrinter(PrintStream printStream, ConsoleColor color) {
     this.printStream = printStream;
+    this.charset = printStream == null ? null : printStream.charset();
     this.currentColor = color;
   }
 
+  /**
+   * Constructs a ColorPrinter that does not write to a PrintStream. Subclasses using
+   * this constructor must override write() and flushOutput().
+   * 
+   * @param color the initial ConsoleColor to use for printing
+   */
+  protected ColorPrinter(ConsoleColor color) {
+    this(null, color);
+  }
+
+  /**
+   * Writes any buffered output to the underlying stream. In run-length mode this
+   * first resets the terminal color.
+   * 
+   * @throws UncheckedIOException if a write to the stream has failed
+   */
+  public void flush() {
+    write(endColorRun());
+    flushOutput();
+  }
+
+  /**
+   * Flushes the stream, and records how many bytes it was given since the last
+   * flush. Subclasses that don't write to a PrintStream override it along with
+   * write().
+   * 
+   * @throws UncheckedIOException if a write to the stream has failed
+   */
+  protected void flushOutput() {
+    TreeEvents.OutputFlush event = new TreeEvents.OutputFlush();
+    event.begin();
+    printStream.flush();
+    event.end();
+    if (event.shouldCommit()) {
+      event.bytes = unflushed;
+      event.commit();
+    }
+    TreeMetrics.global().bytesWritten(unflushed);
+    unflushed = 0;
+    checkError();
+  }
+
   public static void main(String[] args) {
     ColorPrinter printer = new ColorPrinter(System.out);
 
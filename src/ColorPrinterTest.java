@@ -1,10 +1,12 @@
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
 import java.io.PrintStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ColorPrinterTest {
 
@@ -129,4 +131,126 @@ class ColorPrinterTest {
     // Assert: Verify the printed output
     assertEquals(expectedOutput, outputStream.toString());
   }
+
+  @Test
+  void testRunLengthSkipsRepeatedColor() {
+    // Arrange: Capture the printed output
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(outputStream);
+
+    ColorPrinter printer = new ColorPrinter(printStream);
+    printer.setRunLength(true);
+
+    // Act: Print two red lines, a green line, then a red line
+    printer.setCurrentColor(ConsoleColor.RED);
+    printer.println("Apples!");
+    printer.println("Cherries!");
+    printer.setCurrentColor(ConsoleColor.GREEN);
+    printer.println("Limes!");
+    printer.setCurrentColor(ConsoleColor.RED);
+    printer.print("Strawberries!");
+    printer.flush();
+
+    String nl = System.lineSeparator();
+    String expectedOutput = ConsoleColor.RED + "Apples!" + nl + "Cherries!" + nl
+        + ConsoleColor.GREEN + "Limes!" + nl
+        + ConsoleColor.RED + "Strawberries!" + ConsoleColor.RESET;
+
+    // Assert: Verify the printed output
+    assertEquals(expectedOutput, outputStream.toString());
+  }
+
+  @Test
+  void testRunLengthResetsOnlyWhenColored() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    ColorPrinter printer = new ColorPrinter(new PrintStream(outputStream));
+    printer.setRunLength(true);
+
+    // Flushing with nothing printed writes nothing
+    printer.flush();
+    assertEquals("", outputStream.toString());
+
+    // After a flush the color is written again, since the terminal was reset
+    printer.print("one");
+    printer.flush();
+    printer.print("two");
+    printer.flush();
+    printer.flush();
+
+    String expectedOutput = ConsoleColor.WHITE + "one" + ConsoleColor.RESET + ConsoleColor.WHITE + "two" + ConsoleColor.RESET;
+    assertEquals(expectedOutput, outputStream.toString());
+  }
+
+  @Test
+  void testRunLengthByteCount() {
+    // 1,000 lines in 10 runs of the same color
+    ByteArrayOutputStream plainStream = new ByteArrayOutputStream();
+    ColorPrinter plain = new ColorPrinter(new PrintStream(plainStream));
+    ByteArrayOutputStream runLengthStream = new ByteArrayOutputStream();
+    ColorPrinter runLength = new ColorPrinter(new PrintStream(runLengthStream));
+    runLength.setRunLength(true);
+
+    for (ColorPrinter printer : new ColorPrinter[] {plain, runLength}) {
+      for (int i = 0; i < 1000; i++) {
+        printer.setCurrentColor(i / 100 % 2 == 0 ? ConsoleColor.PURPLE : ConsoleColor.YELLOW);
+        printer.println("leaf");
+      }
+      printer.flush();
+    }
+
+    int text = 1000 * ("leaf" + System.lineSeparator()).length();
+    int colorCode = ConsoleColor.PURPLE.getCode().length();
+    int resetCode = ConsoleColor.RESET.getCode().length();
+
+    assertEquals(text + 1000 * (colorCode + resetCode), plainStream.size());
+    assertEquals(text + 10 * colorCode + resetCode, runLengthStream.size());
+  }
+
+  @Test
+  void testSubclassWithoutStreamOnlyOverridesWriteAndFlushOutput() {
+    StringBuilder written = new StringBuilder();
+    int[] flushes = {0};
+    ColorPrinter printer = new ColorPrinter(ConsoleColor.GREEN) {
+      @Override
+      protected void write(String text) {
+        written.append(text);
+      }
+
+      @Override
+      protected void flushOutput() {
+        flushes[0]++;
+      }
+    };
+    printer.setRunLength(true);
+
+    printer.print("truffula ");
+    printer.println("tree");
+    printer.println("grove", false);
+    printer.flush();
+
+    assertEquals(ConsoleColor.GREEN + "truffula tree" + System.lineSeparator() + "grove" + System.lineSeparator()
+        + ConsoleColor.RESET, written.toString());
+    assertEquals(1, flushes[0]);
+  }
+
+  @Test
+  void testThrowsOnceStreamFails() {
+    // PrintStream only records the failure; the printer has to notice it
+    ColorPrinter printer = new ColorPrinter(new PrintStream(new TruffulaPrinterTest.FailingStream(100)));
+    printer.println("fits");
+    printer.flush();
+    printer.println("x".repeat(100));
+    assertThrows(UncheckedIOException.class, printer::flush);
+
+    ColorPrinter lines = new ColorPrinter(new PrintStream(new TruffulaPrinterTest.FailingStream(100)));
+    int printed = 0;
+    try {
+      while (true) {
+        lines.println("I speak for the trees");
+        printed++;
+      }
+    } catch (UncheckedIOException e) {
+      assertTrue(printed * 30 <= ColorPrinter.ERROR_CHECK_INTERVAL, "printed " + printed + " lines");
+    }
+  }
 }
@@ -0,0 +1,37 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+
+/**
+ * Lists the children of a single directory for a TruffulaPrinter.
+ *
+ * A lister is responsible for deciding which children are hidden and whether
+ * each child is a directory. Children are returned in the order the filesystem
+ * reports them; sorting is left to the caller.
+ *
+ * Implementations:
+ * - FileDirectoryLister : uses java.io.File (the original behavior).
+ * - NioDirectoryLister  : uses a DirectoryStream and one attribute read per entry.
+ */
+public interface DirectoryLister {
+
+  /**
+   * Opens a listing of the given directory. The caller must close the returned stream.
+   *
+   * @param directory  the directory to list
+   * @param showHidden whether hidden files/folders should be included
+   * @return a stream over the children of the directory
+   * @throws IOException if the directory cannot be opened
+   */
+  DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException;
+
+  /**
+   * Indicates whether a name marks a file as hidden regardless of its attributes.
+   *
+   * @param name the file name to check
+   * @return true if the name starts with a dot; false otherwise
+   */
+  static boolean isHiddenName(String name) {
+    return !name.isEmpty() && name.charAt(0) == '.';
+  }
+}
@@ -0,0 +1,38 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Supplies the sorted, visible children of each directory to a recursive tree walk.
+ *
+ * The walk asks for directories strictly in the order it prints them. A scanner
+ * may list directories ahead of that order (see ScanAheadScanner), but it must
+ * always hand back exactly what a sequential listing would, and it must never
+ * list a directory the walk won't ask for (such as one below the maximum depth).
+ *
+ * Implementations:
+ * - SequentialScanner    : lists each directory when it is asked for.
+ * - ForkJoinScanner      : lists upcoming directories ahead of time on a ForkJoinPool.
+ * - VirtualThreadScanner : lists upcoming directories ahead of time on virtual threads.
+ */
+public interface DirectoryScanner extends AutoCloseable {
+
+  /**
+   * Returns the visible children of a directory, sorted by the options' sort
+   * order and then by AlphabeticalFileSorter.
+   * If the options limit the entries per directory, only the first ones are
+   * returned, followed by a MoreEntries standing for the rest.
+   *
+   * @param directory the directory to list
+   * @param depth     the depth of the directory (the root is at depth 0)
+   * @return the sorted children of the directory
+   * @throws IOException if the directory cannot be listed
+   */
+  List<TreeEntry> children(Path directory, int depth) throws IOException;
+
+  /**
+   * Stops any background work and releases the scanner's resources.
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,482 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DirectoryScannerTest {
+
+  private static final List<ConsoleColor> COLORS = List.of(ConsoleColor.WHITE, ConsoleColor.PURPLE, ConsoleColor.YELLOW);
+
+  @Test
+  void testForkJoinMatchesSequentialOnRandomTrees(@TempDir File tempDir) {
+    Path root = tempDir.toPath();
+
+    for (long seed = 0; seed < 2000; seed++) {
+      FakeDirectoryLister lister = FakeDirectoryLister.random(root, seed, 60);
+      boolean showHidden = seed % 2 == 0;
+
+      String sequential = print(new TruffulaOptions(tempDir, showHidden, true), lister);
+
+      TruffulaOptions parallelOptions = new TruffulaOptions(tempDir, showHidden, true);
+      parallelOptions.setParallelism(4);
+      String parallel = print(parallelOptions, lister);
+
+      assertEquals(sequential, parallel, "seed=" + seed);
+    }
+  }
+
+  @Test
+  void testForkJoinMatchesSequentialOnDisk(@TempDir File tempDir) throws IOException {
+    // Sample Directory:
+    //
+    // folder/
+    //  .hidden/
+    //      a.txt
+    //  B/
+    //      c/
+    //          d.txt
+    //      e.txt
+    //  f.txt
+    File folder = new File(tempDir, "folder");
+    File hidden = new File(folder, ".hidden");
+    File b = new File(folder, "B");
+    File c = new File(b, "c");
+    hidden.mkdirs();
+    c.mkdirs();
+    new File(hidden, "a.txt").createNewFile();
+    new File(c, "d.txt").createNewFile();
+    new File(b, "e.txt").createNewFile();
+    new File(folder, "f.txt").createNewFile();
+
+    for (boolean showHidden : new boolean[] {false, true}) {
+      TruffulaOptions sequentialOptions = new TruffulaOptions(folder, showHidden, true);
+      String sequential = print(sequentialOptions, new NioDirectoryLister());
+
+      TruffulaOptions parallelOptions = new TruffulaOptions(folder, showHidden, true);
+      parallelOptions.setParallelism(3);
+      String parallel = print(parallelOptions, new NioDirectoryLister());
+
+      assertEquals(sequential, parallel, "showHidden=" + showHidden);
+    }
+  }
+
+  @Test
+  void testForkJoinListsEachDirectoryOnce(@TempDir File tempDir) {
+    FakeDirectoryLister lister = FakeDirectoryLister.random(tempDir.toPath(), 42, 500);
+    print(new TruffulaOptions(tempDir, true, true), lister);
+    int sequentialCalls = lister.getListCalls();
+
+    FakeDirectoryLister parallelLister = FakeDirectoryLister.random(tempDir.toPath(), 42, 500);
+    TruffulaOptions parallelOptions = new TruffulaOptions(tempDir, true, true);
+    parallelOptions.setParallelism(4);
+    print(parallelOptions, parallelLister);
+
+    assertEquals(sequentialCalls, parallelLister.getListCalls());
+  }
+
+  @Test
+  void testWideDirectoryQueuesNoMoreThanTheLookahead(@TempDir File tempDir) throws IOException {
+    // 1,000 subdirectories of the root, each holding a file
+    FakeDirectoryLister tree = new FakeDirectoryLister();
+    Path root = tempDir.toPath();
+    tree.addDirectory(root);
+    for (int i = 0; i < 1000; i++) {
+      tree.addDirectory(root.resolve("dir" + i));
+      tree.addFile(root.resolve("dir" + i).resolve("file.txt"));
+    }
+
+    int lookahead = 8;
+    AtomicInteger submitted = new AtomicInteger();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    ScanAheadScanner scanner = new ScanAheadScanner(tree, new TruffulaOptions(tempDir, false, false), lookahead) {
+      @Override
+      protected Future<List<TreeEntry>> submit(Callable<List<TreeEntry>> listing) {
+        submitted.incrementAndGet();
+        return executor.submit(listing);
+      }
+    };
+
+    try {
+      List<TreeEntry> children = scanner.children(root, 0);
+      assertEquals(lookahead, submitted.get());
+      int walked = 0;
+      for (TreeEntry child : children) {
+        List<TreeEntry> files = scanner.children(child.getPath(), 1);
+        assertEquals(1, files.size());
+        assertEquals("file.txt", files.get(0).getName());
+        walked++;
+        assertTrue(submitted.get() <= walked + lookahead, "walked=" + walked + " submitted=" + submitted);
+      }
+      // Every subdirectory was still listed ahead of the walk, and only once
+      assertEquals(1000, submitted.get());
+      assertEquals(1001, tree.getListCalls());
+    } finally {
+      scanner.close();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testForkJoinReportsListingFailure(@TempDir File tempDir) {
+    // "broken" is reported as a directory but can't be listed
+    FakeDirectoryLister lister = new FakeDirectoryLister();
+    Path root = tempDir.toPath();
+    lister.addDirectory(root);
+    lister.addDirectory(root.resolve("ok"));
+    lister.addFile(root.resolve("ok").resolve("file.txt"));
+    lister.addDirectory(root.resolve("zz"));
+    lister.addDirectory(root.resolve("zz").resolve("broken"));
+    lister.addDirectory(root.resolve("zz").resolve("broken").resolve("inner"));
+
+    TruffulaOptions options = new TruffulaOptions(tempDir, false, true);
+    options.setParallelism(2);
+
+    FakeDirectoryLister failing = new FakeDirectoryLister() {
+      @Override
+      public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+        if (directory.getFileName().toString().equals("broken")) {
+          throw new IOException("Permission denied: " + directory);
+        }
+        return lister.list(directory, showHidden);
+      }
+    };
+
+    UncheckedIOException thrown = assertThrows(UncheckedIOException.class, () -> print(options, failing));
+    assertEquals("Permission denied: " + root.resolve("zz").resolve("broken"), thrown.getCause().getMessage());
+  }
+
+  @Test
+  void testVirtualThreadsMatchSequentialOnRandomTrees(@TempDir File tempDir) {
+    Path root = tempDir.toPath();
+
+    for (long seed = 0; seed < 1000; seed++) {
+      FakeDirectoryLister lister = FakeDirectoryLister.random(root, seed, 60);
+      boolean showHidden = seed % 2 == 1;
+
+      String sequential = print(new TruffulaOptions(tempDir, showHidden, true), lister);
+
+      TruffulaOptions virtualOptions = new TruffulaOptions(tempDir, showHidden, true);
+      virtualOptions.setVirtualThreads(16);
+      String virtual = print(virtualOptions, lister);
+
+      assertEquals(sequential, virtual, "seed=" + seed);
+    }
+  }
+
+  @Test
+  void testVirtualThreadsOverlapListings(@TempDir File tempDir) {
+    // 10 directories with 6 subdirectories each, every listing taking 20 ms
+    FakeDirectoryLister tree = new FakeDirectoryLister();
+    Path root = tempDir.toPath();
+    tree.addDirectory(root);
+    for (int i = 0; i < 10; i++) {
+      Path dir = root.resolve("dir" + i);
+      tree.addDirectory(dir);
+      for (int j = 0; j < 6; j++) {
+        tree.addDirectory(dir.resolve("sub" + j));
+        tree.addFile(dir.resolve("sub" + j).resolve("file.txt"));
+      }
+    }
+
+    SlowDirectoryLister sequentialLister = new SlowDirectoryLister(tree, 20);
+    String sequential = print(new TruffulaOptions(tempDir, false, true), sequentialLister);
+    assertEquals(1, sequentialLister.getMaxInFlight());
+
+    // The walking thread lists what isn't queued yet, beside the 4 background listings
+    SlowDirectoryLister virtualLister = new SlowDirectoryLister(tree, 20);
+    TruffulaOptions virtualOptions = new TruffulaOptions(tempDir, false, true);
+    virtualOptions.setVirtualThreads(4);
+    String virtual = print(virtualOptions, virtualLister);
+    assertEquals(sequential, virtual);
+    assertTrue(virtualLister.getMaxInFlight() > 1, "maxInFlight=" + virtualLister.getMaxInFlight());
+    assertTrue(virtualLister.getMaxInFlight() <= 4 + 1, "maxInFlight=" + virtualLister.getMaxInFlight());
+  }
+
+  @Test
+  void testMaxDepthNeverListsBelowTheLimit(@TempDir File tempDir) {
+    Path root = tempDir.toPath();
+    int maxDepth = 2;
+
+    for (int mode = 0; mode < 4; mode++) {
+      FakeDirectoryLister lister = FakeDirectoryLister.random(root, 7, 2000);
+      TruffulaOptions options = new TruffulaOptions(tempDir, true, false);
+      options.setMaxDepth(maxDepth);
+      options.setIterative(mode == 1);
+      options.setParallelism(mode == 2 ? 4 : 1);
+      options.setVirtualThreads(mode == 3 ? 16 : 0);
+
+      String output = stripColor(print(options, lister));
+
+      // Every printed line is within the limit, and only directories above it were listed
+      for (String line : output.split(System.lineSeparator())) {
+        int indent = line.length() - line.stripLeading().length();
+        assertTrue(indent <= maxDepth * 3, "mode=" + mode + ": " + line);
+      }
+      for (Path listed : lister.getListedDirectories()) {
+        assertTrue(root.relativize(listed).getNameCount() < maxDepth || listed.equals(root),
+            "mode=" + mode + " listed " + listed);
+      }
+      assertTrue(output.lines().anyMatch(line -> line.startsWith(" ".repeat(maxDepth * 3))), "mode=" + mode);
+    }
+  }
+
+  @Test
+  void testMaxDepthMatchesUnlimitedOutputTruncated(@TempDir File tempDir) {
+    Path root = tempDir.toPath();
+
+    for (long seed = 0; seed < 500; seed++) {
+      FakeDirectoryLister lister = FakeDirectoryLister.random(root, seed, 60);
+
+      String full = stripColor(print(new TruffulaOptions(tempDir, false, false), lister));
+      StringBuilder truncated = new StringBuilder();
+      for (String line : full.split(System.lineSeparator())) {
+        if (line.length() - line.stripLeading().length() <= 2 * 3) {
+          truncated.append(line).append(System.lineSeparator());
+        }
+      }
+
+      TruffulaOptions parallelOptions = new TruffulaOptions(tempDir, false, false);
+      parallelOptions.setMaxDepth(2);
+      parallelOptions.setParallelism(4);
+      assertEquals(truncated.toString(), stripColor(print(parallelOptions, lister)), "seed=" + seed);
+    }
+  }
+
+  @Test
+  void testVirtualThreadsMustNotBeNegative(@TempDir File tempDir) {
+    TruffulaOptions options = new TruffulaOptions(tempDir, false, true);
+    assertThrows(IllegalArgumentException.class, () -> options.setVirtualThreads(-1));
+  }
+
+  @Test
+  void testParallelismMustBePositive(@TempDir File tempDir) {
+    TruffulaOptions options = new TruffulaOptions(tempDir, false, true);
+    assertThrows(IllegalArgumentException.class, () -> options.setParallelism(0));
+  }
+
+  @Test
+  void testEntryLimitPrintsTheSameOnEveryEngine(@TempDir File tempDir) throws IOException {
+    // folder/
+    //  a.txt
+    //  B/
+    //      x
+    //      y
+    //      z
+    //  c.txt
+    //  d.txt
+    //  e.txt
+    File folder = new File(tempDir, "folder");
+    File b = new File(folder, "B");
+    b.mkdirs();
+    for (String name : List.of("a.txt", "c.txt", "d.txt", "e.txt")) {
+      new File(folder, name).createNewFile();
+    }
+    for (String name : List.of("x", "y", "z")) {
+      new File(b, name).createNewFile();
+    }
+
+    String nl = System.lineSeparator();
+    String expected = "folder/" + nl
+        + "   a.txt" + nl
+        + "   B/" + nl
+        + "      x" + nl
+        + "      y" + nl
+        + "      … 1 more" + nl
+        + "   … 3 more" + nl;
+
+    List<TruffulaOptions> engines = new ArrayList<>();
+    for (int engine = 0; engine < 6; engine++) {
+      TruffulaOptions options = new TruffulaOptions(folder, false, false);
+      options.setEntryLimit(2);
+      if (engine == 1) {
+        options.setParallelism(4);
+      } else if (engine == 2) {
+        options.setVirtualThreads(2);
+      } else if (engine > 2) {
+        options.setIterative(true);
+        options.setWindowSize(engine - 2);
+      }
+      engines.add(options);
+    }
+    for (TruffulaOptions options : engines) {
+      // The ellipsis needs UTF-8 whatever the platform's default charset is
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      new TruffulaPrinter(options, new PrintStream(baos, true, StandardCharsets.UTF_8), COLORS,
+          new NioDirectoryLister()).printTree();
+      assertEquals(expected, stripColor(baos.toString(StandardCharsets.UTF_8)), options.toString());
+    }
+
+    // A limit the directories fit in prints everything
+    TruffulaOptions roomy = new TruffulaOptions(folder, false, false);
+    roomy.setEntryLimit(5);
+    assertEquals(stripColor(print(new TruffulaOptions(folder, false, false), new NioDirectoryLister())),
+        stripColor(print(roomy, new NioDirectoryLister())));
+  }
+
+  @Test
+  void testEntryLimitKeepsTheFirstEntriesOnRandomTrees(@TempDir File tempDir) throws IOException {
+    Path root = tempDir.toPath();
+
+    for (long seed = 0; seed < 300; seed++) {
+      FakeDirectoryLister lister = FakeDirectoryLister.random(root, seed, 60);
+      List<Path> directories = new ArrayList<>(List.of(root));
+      while (!directories.isEmpty()) {
+        Path directory = directories.remove(directories.size() - 1);
+        List<TreeEntry> all = SequentialScanner.listSorted(lister, directory, true);
+        for (TreeEntry entry : all) {
+          if (entry.isDirectory()) {
+            directories.add(entry.getPath());
+          }
+        }
+        for (int limit = 1; limit <= 4; limit++) {
+          List<TreeEntry> first = SequentialScanner.listSorted(lister, directory, true, limit, null);
+          int kept = Math.min(limit, all.size());
+          assertEquals(all.subList(0, kept), first.subList(0, kept), "seed=" + seed);
+          if (all.size() > limit) {
+            assertEquals(kept + 1, first.size(), "seed=" + seed);
+            assertEquals(all.size() - limit, ((MoreEntries) first.get(kept)).getCount(), "seed=" + seed);
+          } else {
+            assertEquals(all.size(), first.size(), "seed=" + seed);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testEntryLimitStreamsThroughAMillionEntries() throws IOException {
+    // A directory of a million files, listed in scrambled order and never held in memory
+    int size = 1_000_000;
+    Path directory = Path.of("spool");
+    DirectoryLister lister = (dir, showHidden) -> new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        return new Iterator<TreeEntry>() {
+          private int i;
+
+          @Override
+          public boolean hasNext() {
+            return i < size;
+          }
+
+          @Override
+          public TreeEntry next() {
+            String name = String.format("f%07d", (i++ * 7919L) % size);
+            return new TreeEntry(directory.resolve(name), name, false);
+          }
+        };
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+
+    List<TreeEntry> first = SequentialScanner.listSorted(lister, directory, false, 3, null);
+    assertEquals(4, first.size());
+    assertEquals("f0000000", first.get(0).getName());
+    assertEquals("f0000001", first.get(1).getName());
+    assertEquals("f0000002", first.get(2).getName());
+    assertEquals("… 999997 more", first.get(3).getName());
+    assertEquals(999_997, ((MoreEntries) first.get(3)).getCount());
+  }
+
+  @Test
+  void testSortKeysPrintTheSameOnEveryEngine(@TempDir File tempDir) throws IOException {
+    // folder/             modified
+    //  big.log    300 B   1000s ago
+    //  Mid.txt     50 B   2000s ago
+    //  notes       50 B   1000s ago
+    //  small.txt    1 B   3000s ago
+    //  sub/                500s ago
+    //      x.bin    7 B    900s ago
+    //      y.bin    7 B    800s ago
+    Path folder = tempDir.toPath().resolve("folder");
+    Path sub = Files.createDirectories(folder.resolve("sub"));
+    long now = System.currentTimeMillis();
+    createFile(folder.resolve("big.log"), 300, now - 1_000_000);
+    createFile(folder.resolve("Mid.txt"), 50, now - 2_000_000);
+    createFile(folder.resolve("notes"), 50, now - 1_000_000);
+    createFile(folder.resolve("small.txt"), 1, now - 3_000_000);
+    createFile(sub.resolve("x.bin"), 7, now - 900_000);
+    createFile(sub.resolve("y.bin"), 7, now - 800_000);
+    Files.setLastModifiedTime(sub, FileTime.fromMillis(now - 500_000));
+
+    String nl = System.lineSeparator();
+    // Directory sizes depend on the filesystem, so sizes are only compared with directories first
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("SIZE -df", "sub/,x.bin,y.bin,big.log,Mid.txt,notes,small.txt");
+    expected.put("TIME", "sub/,y.bin,x.bin,big.log,notes,Mid.txt,small.txt");
+    expected.put("TIME -k2", "sub/,y.bin,x.bin,big.log,… 3 more");
+    expected.put("EXTENSION", "notes,sub/,x.bin,y.bin,big.log,Mid.txt,small.txt");
+    expected.put("NAME -df", "sub/,x.bin,y.bin,big.log,Mid.txt,notes,small.txt");
+
+    for (Map.Entry<String, String> mode : expected.entrySet()) {
+      String[] words = mode.getKey().split(" ");
+      StringBuilder lines = new StringBuilder("folder/" + nl);
+      for (String name : mode.getValue().split(",")) {
+        String indent = name.endsWith(".bin") ? "      " : "   ";
+        lines.append(indent).append(name).append(nl);
+      }
+
+      for (int engine = 0; engine < 6; engine++) {
+        TruffulaOptions options = new TruffulaOptions(folder.toFile(), false, false);
+        options.setSortKey(SortKey.valueOf(words[0]));
+        options.setDirectoriesFirst(mode.getKey().contains("-df"));
+        if (mode.getKey().contains("-k2")) {
+          options.setEntryLimit(2);
+        }
+        if (engine == 1) {
+          options.setParallelism(4);
+        } else if (engine == 2) {
+          options.setVirtualThreads(2);
+        } else if (engine > 2) {
+          options.setIterative(true);
+          options.setWindowSize(engine - 2);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new TruffulaPrinter(options, new PrintStream(baos, true, StandardCharsets.UTF_8)).printTree();
+        assertEquals(lines.toString(), stripColor(baos.toString(StandardCharsets.UTF_8)), options.toString());
+      }
+    }
+  }
+
+  private static String print(TruffulaOptions options, DirectoryLister lister) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos), COLORS, lister).printTree();
+    return baos.toString();
+  }
+
+  private static String stripColor(String output) {
+    return output.replaceAll("\033\\[[0-9;]*m", "");
+  }
+
+  private static void createFile(Path file, int size, long lastModified) throws IOException {
+    Files.write(file, new byte[size]);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+  }
+}
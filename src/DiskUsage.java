@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The total size and file count of every directory in a tree, computed
+ * bottom-up on a ForkJoinPool.
+ *
+ * Each directory is one CountedCompleter: it lists the directory, adds up the
+ * sizes of its files into primitive long fields, and forks one task per
+ * subdirectory without waiting for them. When the last of them completes, the
+ * directory adds their totals in and completes in turn. Nothing waits for a
+ * subtree on the call stack, so a tree of any depth can be added up, the way the
+ * iterative walk can print it.
+ *
+ * Sizes come from the entries' attributes as they were read while listing (see
+ * TreeEntry.getSize()); only entries whose lister didn't read a size are
+ * stat-ed again. Sums of longs don't depend on the order they are added in, so
+ * the totals are the same for any number of threads.
+ *
+ * The sorted listing of every directory is kept, and a DiskUsage is a
+ * DirectoryLister over them: the tree is then printed from memory, so the
+ * filesystem is only walked once. The whole tree below the root is read,
+ * including directories below the maximum depth, since their sizes count
+ * towards the directories that are printed.
+ */
+public class DiskUsage implements DirectoryLister {
+
+  /**
+   * The units sizes are printed in, each 1024 times the one before.
+   */
+  private static final String UNITS = "KMGTPE";
+
+  /**
+   * Every directory of the tree, by path.
+   */
+  private final Map<Path, Node> nodes = new ConcurrentHashMap<>();
+
+  private DiskUsage() {
+  }
+
+  /**
+   * Reads the tree below root and adds up the size of every directory, on
+   * options.getParallelism() threads.
+   *
+   * @param lister  the lister used to read each directory
+   * @param root    the root of the tree
+   * @param options the options that decide which entries are listed
+   * @return the totals of every directory in the tree
+   * @throws UncheckedIOException if a directory can't be listed
+   */
+  public static DiskUsage compute(DirectoryLister lister, Path root, TruffulaOptions options) {
+    DiskUsage usage = new DiskUsage();
+    ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
+    try {
+      pool.invoke(new Node(null, usage, lister, root, options.isShowHidden()));
+    } finally {
+      pool.shutdownNow();
+    }
+    return usage;
+  }
+
+  /**
+   * Returns the total size of the files in a directory and everything below it.
+   *
+   * @param directory a directory of the tree
+   * @return the size in bytes
+   * @throws IllegalArgumentException if the directory is not in the tree
+   */
+  public long getSize(Path directory) {
+    return node(directory).bytes;
+  }
+
+  /**
+   * Returns the number of files in a directory and everything below it.
+   *
+   * @param directory a directory of the tree
+   * @return the number of files
+   * @throws IllegalArgumentException if the directory is not in the tree
+   */
+  public long getFileCount(Path directory) {
+    return node(directory).files;
+  }
+
+  /**
+   * Returns the text appended to a directory's line, such as " (1.5M, 42 files)".
+   *
+   * @param directory a directory of the tree
+   * @return the annotation, starting with a space
+   * @throws IllegalArgumentException if the directory is not in the tree
+   */
+  public String annotation(Path directory) {
+    Node node = node(directory);
+    return " (" + formatSize(node.bytes) + ", " + node.files + (node.files == 1 ? " file)" : " files)");
+  }
+
+  /**
+   * Formats a size the way du -h does, with one decimal below 10 of a unit:
+   * 512B, 1.5K, 12M.
+   *
+   * @param bytes the size in bytes
+   * @return the formatted size
+   */
+  static String formatSize(long bytes) {
+    if (bytes < 1024) {
+      return bytes + "B";
+    }
+    double value = bytes;
+    int unit = -1;
+    while (value >= 1024 && unit < UNITS.length() - 1) {
+      value /= 1024;
+      unit++;
+    }
+    String format = value < 10 ? "%.1f%c" : "%.0f%c";
+    return String.format(Locale.ROOT, format, value, UNITS.charAt(unit));
+  }
+
+  /**
+   * Serves the sorted listings read by compute(), so that the tree can be
+   * printed without reading the filesystem again.
+   */
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    Node node = nodes.get(directory);
+    if (node == null) {
+      throw new IOException("Not in the tree: " + directory);
+    }
+
+    List<TreeEntry> children = node.children;
+    return new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        return children.iterator();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  private Node node(Path directory) {
+    Node node = nodes.get(directory);
+    if (node == null) {
+      throw new IllegalArgumentException("Not in the tree: " + directory);
+    }
+    return node;
+  }
+
+  /**
+   * Returns the size of a file, as read while listing its directory if possible.
+   */
+  private static long sizeOf(TreeEntry entry) {
+    if (entry.getSize() != TreeEntry.UNKNOWN_SIZE) {
+      return entry.getSize();
+    }
+    try {
+      TreeMetrics.global().attributesRead();
+      return Files.size(entry.getPath());
+    } catch (IOException e) {
+      // Deleted since it was listed, or a broken link: it takes no space
+      return 0;
+    }
+  }
+
+  /**
+   * One directory of the tree, and the task that adds it up.
+   */
+  private static class Node extends CountedCompleter<Void> {
+    private static final long serialVersionUID = 1L;
+
+    // ForkJoinTask is Serializable, but a Node never leaves its pool
+    private final transient DiskUsage usage;
+    private final transient DirectoryLister lister;
+    private final transient Path directory;
+    private final boolean showHidden;
+    private transient List<TreeEntry> children;
+    private transient List<Node> subdirectories;
+    private long bytes;
+    private long files;
+
+    private Node(Node parent, DiskUsage usage, DirectoryLister lister, Path directory, boolean showHidden) {
+      super(parent);
+      this.usage = usage;
+      this.lister = lister;
+      this.directory = directory;
+      this.showHidden = showHidden;
+    }
+
+    @Override
+    public void compute() {
+      try {
+        children = SequentialScanner.listSorted(lister, directory, showHidden);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      usage.nodes.put(directory, this);
+
+      subdirectories = new ArrayList<>();
+      for (TreeEntry entry : children) {
+        if (entry.isDirectory()) {
+          subdirectories.add(new Node(this, usage, lister, entry.getPath(), showHidden));
+        } else {
+          bytes += sizeOf(entry);
+          files++;
+        }
+      }
+
+      setPendingCount(subdirectories.size());
+      for (Node subdirectory : subdirectories) {
+        subdirectory.fork();
+      }
+      tryComplete();
+    }
+
+    /**
+     * Adds in the totals of the subdirectories, which have all completed.
+     */
+    @Override
+    public void onCompletion(CountedCompleter<?> caller) {
+      for (Node subdirectory : subdirectories) {
+        bytes += subdirectory.bytes;
+        files += subdirectory.files;
+      }
+      subdirectories = null;
+    }
+  }
+}
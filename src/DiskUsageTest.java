@@ -0,0 +1,165 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DiskUsageTest {
+
+  private static final String NL = System.lineSeparator();
+
+  @Test
+  void testTotalsAreExactForAnyThreadCount() {
+    Path root = Path.of("/fake/root");
+    FakeDirectoryLister lister = new FakeDirectoryLister();
+    lister.addDirectory(root);
+
+    // Random tree with random sizes; the expected totals are kept as it is built
+    Random random = new Random(42);
+    List<Path> directories = new ArrayList<>(List.of(root));
+    long totalBytes = 0;
+    long totalFiles = 0;
+    for (int i = 0; i < 5000; i++) {
+      Path parent = directories.get(random.nextInt(directories.size()));
+      if (random.nextInt(4) == 0) {
+        Path directory = parent.resolve("d" + i);
+        lister.addDirectory(directory);
+        directories.add(directory);
+      } else {
+        long size = random.nextInt(1 << 20) + (random.nextInt(50) == 0 ? (1L << 33) : 0);
+        lister.addFile(parent.resolve("f" + i), size);
+        totalBytes += size;
+        totalFiles++;
+      }
+    }
+
+    for (int threads : new int[] {1, 2, 8}) {
+      TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+      options.setParallelism(threads);
+
+      DiskUsage usage = DiskUsage.compute(lister, root, options);
+
+      assertEquals(totalBytes, usage.getSize(root), "threads=" + threads);
+      assertEquals(totalFiles, usage.getFileCount(root), "threads=" + threads);
+    }
+  }
+
+  @Test
+  void testDirectoryLinesShowTheirSize(@TempDir File tempDir) throws IOException {
+    // tree/
+    //    a/
+    //       b/
+    //          big.bin (3000 bytes)
+    //       x.txt (100 bytes)
+    //    top.txt (24 bytes)
+    Path root = tempDir.toPath().resolve("tree");
+    Files.createDirectories(root.resolve("a/b"));
+    Files.write(root.resolve("a/b/big.bin"), new byte[3000]);
+    Files.write(root.resolve("a/x.txt"), new byte[100]);
+    Files.write(root.resolve("top.txt"), new byte[24]);
+
+    String expected = "tree/ (3.1K, 3 files)" + NL
+        + "   a/ (3.0K, 2 files)" + NL
+        + "      b/ (2.9K, 1 file)" + NL
+        + "         big.bin" + NL
+        + "      x.txt" + NL
+        + "   top.txt" + NL;
+
+    for (int mode = 0; mode < 3; mode++) {
+      TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+      options.setDiskUsage(true);
+      options.setUseNio(mode == 1);
+      options.setIterative(mode == 2);
+      assertEquals(expected, print(options), "mode=" + mode);
+    }
+
+    // Collapsed directories still count everything below them
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+    options.setDiskUsage(true);
+    options.setMaxDepth(1);
+    options.setShowCollapsed(true);
+    assertEquals("tree/ (3.1K, 3 files)" + NL
+        + "   a/ (3.0K, 2 files)" + TruffulaPrinter.COLLAPSED_MARKER + NL
+        + "   top.txt" + NL, print(options));
+  }
+
+  @Test
+  void testEveryDirectoryIsListedOnce() throws IOException {
+    Path root = Path.of("/fake/root");
+    FakeDirectoryLister lister = FakeDirectoryLister.random(root, 7, 2000);
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+    options.setParallelism(4);
+    options.setDiskUsage(true);
+
+    DiskUsage usage = DiskUsage.compute(lister, root, options);
+    int listCalls = lister.getListCalls();
+    assertEquals(lister.getListedDirectories().size(), listCalls);
+
+    // Walking the usage reads nothing more
+    for (Path directory : lister.getListedDirectories()) {
+      assertEquals(SequentialScanner.listSorted(lister, directory, false),
+          SequentialScanner.listSorted(usage, directory, false));
+    }
+    assertEquals(2 * listCalls, lister.getListCalls());
+  }
+
+  @Test
+  void testTenThousandLevelsDontOverflowTheStack() {
+    // One file per level, below a chain of directories named by their level
+    int levels = 12_000;
+    Path root = Path.of("0");
+    DirectoryLister deepLister = (directory, showHidden) -> {
+      int level = Integer.parseInt(directory.getFileName().toString());
+      List<TreeEntry> entries = new ArrayList<>(List.of(new TreeEntry(Path.of("f" + level), "f", false, 1)));
+      if (level < levels) {
+        entries.add(new TreeEntry(Path.of(String.valueOf(level + 1)), "folder", true));
+      }
+      return TruffulaPrinterTest.entries(entries);
+    };
+
+    for (int threads : new int[] {1, 4}) {
+      TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+      options.setParallelism(threads);
+
+      DiskUsage usage = DiskUsage.compute(deepLister, root, options);
+
+      assertEquals(levels + 1, usage.getSize(root), "threads=" + threads);
+      assertEquals(levels + 1, usage.getFileCount(root), "threads=" + threads);
+      assertEquals(1, usage.getFileCount(Path.of(String.valueOf(levels))), "threads=" + threads);
+    }
+  }
+
+  @Test
+  void testFormatSize() {
+    assertEquals("0B", DiskUsage.formatSize(0));
+    assertEquals("1023B", DiskUsage.formatSize(1023));
+    assertEquals("1.0K", DiskUsage.formatSize(1024));
+    assertEquals("1.5K", DiskUsage.formatSize(1536));
+    assertEquals("12M", DiskUsage.formatSize(12L << 20));
+    assertEquals("8.0E", DiskUsage.formatSize(Long.MAX_VALUE));
+  }
+
+  @Test
+  void testDiskUsageFlag(@TempDir File tempDir) throws FileNotFoundException {
+    assertTrue(new TruffulaOptions(new String[] {"-du", tempDir.getAbsolutePath()}).isDiskUsage());
+    assertFalse(new TruffulaOptions(new String[] {tempDir.getAbsolutePath()}).isDiskUsage());
+  }
+
+  private static String print(TruffulaOptions options) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+    return baos.toString().replaceAll("\033\\[[0-9;]*m", "");
+  }
+}
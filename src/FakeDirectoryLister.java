@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A DirectoryLister over an in-memory tree, for tests.
+ *
+ * Directories are added with addDirectory/addFile, or generated with random().
+ * Nothing is read from disk, so trees can be built and listed quickly, and the
+ * number of list() calls and the directories listed are recorded.
+ */
+public class FakeDirectoryLister implements DirectoryLister {
+  private final Map<Path, List<TreeEntry>> directories = new HashMap<>();
+  private final AtomicInteger listCalls = new AtomicInteger();
+  private final Set<Path> listed = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Generates a random tree below root. Names are drawn from a small alphabet in
+   * mixed case, so names that differ only in case and dot-named (hidden) entries
+   * are common.
+   *
+   * @param root     the path of the root directory
+   * @param seed     the seed for the random generator
+   * @param maxNodes roughly the most entries to generate
+   * @return the generated lister
+   */
+  public static FakeDirectoryLister random(Path root, long seed, int maxNodes) {
+    FakeDirectoryLister lister = new FakeDirectoryLister();
+    Random random = new Random(seed);
+    lister.addDirectory(root);
+
+    List<Path> open = new ArrayList<>(List.of(root));
+    int nodes = 0;
+    while (!open.isEmpty() && nodes < maxNodes) {
+      Path directory = open.remove(random.nextInt(open.size()));
+      int children = random.nextInt(8);
+      for (int i = 0; i < children && nodes < maxNodes; i++, nodes++) {
+        Path child = directory.resolve(randomName(random));
+        if (lister.directories.get(directory).stream().anyMatch(e -> e.getPath().equals(child))) continue;
+
+        if (random.nextInt(3) == 0) {
+          lister.addDirectory(child);
+          open.add(child);
+        } else {
+          lister.addFile(child);
+        }
+      }
+    }
+    return lister;
+  }
+
+  private static String randomName(Random random) {
+    StringBuilder name = new StringBuilder();
+    if (random.nextInt(6) == 0) {
+      name.append('.');
+    }
+    int length = 1 + random.nextInt(3);
+    for (int i = 0; i < length; i++) {
+      char c = (char) ('a' + random.nextInt(3));
+      name.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+    }
+    return name.toString();
+  }
+
+  /**
+   * Adds an empty directory, and adds it to its parent's listing if the parent exists.
+   *
+   * @param directory the path of the directory
+   */
+  public void addDirectory(Path directory) {
+    directories.put(directory, new ArrayList<>());
+    addToParent(directory, true);
+  }
+
+  /**
+   * Adds an empty file to its parent's listing.
+   *
+   * @param file the path of the file
+   */
+  public void addFile(Path file) {
+    addFile(file, 0);
+  }
+
+  /**
+   * Adds a file of the given size to its parent's listing.
+   *
+   * @param file the path of the file
+   * @param size the size of the file in bytes
+   */
+  public void addFile(Path file, long size) {
+    addToParent(file, false, size);
+  }
+
+  private void addToParent(Path path, boolean directory) {
+    addToParent(path, directory, 0);
+  }
+
+  private void addToParent(Path path, boolean directory, long size) {
+    List<TreeEntry> siblings = directories.get(path.getParent());
+    if (siblings != null) {
+      siblings.add(new TreeEntry(path, path.getFileName().toString(), directory, size));
+    }
+  }
+
+  /**
+   * Returns how many times list() has been called.
+   *
+   * @return the number of listings
+   */
+  public int getListCalls() {
+    return listCalls.get();
+  }
+
+  /**
+   * Returns every directory list() has been called on.
+   *
+   * @return the listed directories
+   */
+  public Set<Path> getListedDirectories() {
+    return listed;
+  }
+
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    listCalls.incrementAndGet();
+    listed.add(directory);
+    List<TreeEntry> entries = directories.get(directory);
+    if (entries == null) {
+      throw new IOException("Not a directory: " + directory);
+    }
+
+    List<TreeEntry> visible = new ArrayList<>();
+    for (TreeEntry entry : entries) {
+      if (showHidden || !DirectoryLister.isHiddenName(entry.getName())) {
+        visible.add(entry);
+      }
+    }
+
+    return new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        return visible.iterator();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+}
@@ -0,0 +1,51 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A DirectoryLister backed by java.io.File.
+ *
+ * This is the original traversal behavior: the directory is read with listFiles(),
+ * then every child is checked with isHidden() and isDirectory(). Each of those
+ * calls may go to the filesystem separately.
+ */
+public class FileDirectoryLister implements DirectoryLister {
+
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    File[] files = directory.toFile().listFiles();
+    if (files == null) {
+      throw new IOException("Can't list directory: " + directory);
+    }
+
+    TreeMetrics metrics = TreeMetrics.global();
+    metrics.directoryListed();
+    List<TreeEntry> entries = new ArrayList<>(files.length);
+    for (File file : files) {
+      metrics.entrySeen();
+      String name = file.getName();
+      if (!showHidden && (file.isHidden() || DirectoryLister.isHiddenName(name))) {
+        metrics.hiddenEntry();
+        continue;
+      }
+
+      metrics.attributesRead();
+      entries.add(new TreeEntry(file.toPath(), name, file.isDirectory()));
+    }
+
+    return new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        return entries.iterator();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+}
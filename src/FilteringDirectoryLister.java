@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A DirectoryLister that drops the entries rejected by a PathFilter from
+ * another lister's listings.
+ *
+ * Because an excluded directory never appears in its parent's listing, the walk
+ * never asks for it to be listed: excluding "build/" or "node_modules/" saves
+ * reading everything below them, not just printing it.
+ *
+ * The relative path of each listed directory is built once per listing; each
+ * entry is then matched on that path and its name without allocating.
+ */
+public class FilteringDirectoryLister implements DirectoryLister {
+
+  /**
+   * The lister that reads each directory.
+   */
+  private final DirectoryLister lister;
+
+  /**
+   * The root of the tree, which patterns with a '/' are relative to.
+   */
+  private final Path root;
+
+  /**
+   * Decides which entries are kept.
+   */
+  private final PathFilter filter;
+
+  /**
+   * Constructs a FilteringDirectoryLister.
+   *
+   * @param lister the lister that reads each directory
+   * @param root   the root of the tree
+   * @param filter decides which entries are kept
+   */
+  public FilteringDirectoryLister(DirectoryLister lister, Path root, PathFilter filter) {
+    this.lister = lister;
+    this.root = root;
+    this.filter = filter;
+  }
+
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    DirectoryStream<TreeEntry> entries = lister.list(directory, showHidden);
+    String parent = relativePath(root, directory);
+
+    return new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        Iterator<TreeEntry> it = entries.iterator();
+
+        return new Iterator<TreeEntry>() {
+          private TreeEntry next;
+
+          @Override
+          public boolean hasNext() {
+            while (next == null && it.hasNext()) {
+              TreeEntry entry = it.next();
+              if (filter.accepts(parent, entry.getName(), entry.isDirectory())) {
+                next = entry;
+              }
+            }
+            return next != null;
+          }
+
+          @Override
+          public TreeEntry next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            TreeEntry entry = next;
+            next = null;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public void close() throws IOException {
+        entries.close();
+      }
+    };
+  }
+
+  /**
+   * Returns the path of directory relative to root, with every segment followed
+   * by '/' whatever the filesystem's separator ("" for the root itself).
+   *
+   * @param root      the root of the tree
+   * @param directory a directory at or below the root
+   * @return the relative path
+   */
+  static String relativePath(Path root, Path directory) {
+    if (directory.equals(root)) {
+      return "";
+    }
+
+    StringBuilder path = new StringBuilder();
+    for (Path segment : root.relativize(directory)) {
+      path.append(segment).append('/');
+    }
+    return path.toString();
+  }
+}
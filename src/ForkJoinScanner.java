@@ -0,0 +1,44 @@
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A ScanAheadScanner that lists directories on its own ForkJoinPool.
+ *
+ * This suits filesystems where listing a directory is slow because of latency
+ * (network mounts), since many listings can be waiting on the server at once.
+ */
+public class ForkJoinScanner extends ScanAheadScanner {
+  /**
+   * How many listings each worker may have queued ahead of the walk.
+   */
+  private static final int LOOKAHEAD_PER_WORKER = 64;
+
+  /**
+   * The pool the background listings run on.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructs a ForkJoinScanner with options.getParallelism() worker threads.
+   *
+   * @param lister  the lister used to read each directory
+   * @param options the options that decide which entries are listed and how deep
+   */
+  public ForkJoinScanner(DirectoryLister lister, TruffulaOptions options) {
+    super(lister, options, options.getParallelism() * LOOKAHEAD_PER_WORKER);
+    this.pool = new ForkJoinPool(options.getParallelism());
+  }
+
+  @Override
+  protected Future<List<TreeEntry>> submit(Callable<List<TreeEntry>> listing) {
+    return pool.submit(listing);
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    pool.shutdownNow();
+  }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A DirectoryLister that drops the entries ignored by .gitignore files from
+ * another lister's listings, along with the .git directory itself.
+ *
+ * When a directory is listed, its .gitignore (if it has one) is read and
+ * compiled on top of its parent's rules, and the result is cached for the
+ * directory's own subdirectories. Ignored directories never appear in a
+ * listing, so the walk never reads them.
+ *
+ * Only .gitignore files at or below the root are read.
+ */
+public class GitIgnoreLister implements DirectoryLister {
+
+  /**
+   * The name of the files holding ignore rules.
+   */
+  static final String GITIGNORE = ".gitignore";
+
+  /**
+   * The lister that reads each directory.
+   */
+  private final DirectoryLister lister;
+
+  /**
+   * The root of the tree, which the rules' paths are relative to.
+   */
+  private final Path root;
+
+  /**
+   * The rule stack in effect in each listed directory. Directories with no rules
+   * at or above them are left out.
+   */
+  private final Map<Path, GitIgnoreRules> rulesByDirectory = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a GitIgnoreLister.
+   *
+   * @param lister the lister that reads each directory
+   * @param root   the root of the tree
+   */
+  public GitIgnoreLister(DirectoryLister lister, Path root) {
+    this.lister = lister;
+    this.root = root;
+  }
+
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    String relative = FilteringDirectoryLister.relativePath(root, directory);
+    GitIgnoreRules rules = readRules(directory, relative, parentRules(directory));
+    if (rules != null) {
+      rulesByDirectory.put(directory, rules);
+    }
+
+    GitIgnoreRules.Matcher matcher = rules == null ? null : rules.forDirectory(relative);
+    DirectoryStream<TreeEntry> entries = lister.list(directory, showHidden);
+
+    return new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        Iterator<TreeEntry> it = entries.iterator();
+
+        return new Iterator<TreeEntry>() {
+          private TreeEntry next;
+
+          @Override
+          public boolean hasNext() {
+            while (next == null && it.hasNext()) {
+              TreeEntry entry = it.next();
+              if (!isIgnored(matcher, entry)) {
+                next = entry;
+              }
+            }
+            return next != null;
+          }
+
+          @Override
+          public TreeEntry next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            TreeEntry entry = next;
+            next = null;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public void close() throws IOException {
+        entries.close();
+      }
+    };
+  }
+
+  private static boolean isIgnored(GitIgnoreRules.Matcher matcher, TreeEntry entry) {
+    if (entry.isDirectory() && entry.getName().equals(".git")) {
+      return true;
+    }
+    return matcher != null && matcher.isIgnored(entry.getName(), entry.isDirectory());
+  }
+
+  /**
+   * Returns the rules in effect in the directory's parent, or null if there are none
+   * (or the directory is the root).
+   */
+  private GitIgnoreRules parentRules(Path directory) {
+    if (directory.equals(root) || directory.getParent() == null) {
+      return null;
+    }
+    return rulesByDirectory.get(directory.getParent());
+  }
+
+  /**
+   * Reads the directory's .gitignore on top of its parent's rules. A missing or
+   * unreadable .gitignore adds no rules, as in git.
+   */
+  private static GitIgnoreRules readRules(Path directory, String relative, GitIgnoreRules parent) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(directory.resolve(GITIGNORE));
+    } catch (IOException e) {
+      // Usually there is no .gitignore here
+      return parent;
+    }
+    return GitIgnoreRules.parse(lines, relative, parent);
+  }
+}
@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled rules of one .gitignore file, linked to the rules of the
+ * directories above it.
+ *
+ * Each GitIgnoreRules is one level of a stack: a directory's rules are its own
+ * .gitignore (if any) on top of its parent's rules. As in git, the last matching
+ * line of the deepest .gitignore decides, and a line starting with '!' brings
+ * back an entry that an earlier line ignored.
+ *
+ * Lines are compiled with GlobPattern, so a pattern with a '/' before its end
+ * is relative to the directory holding the .gitignore, a pattern without one
+ * matches names at any depth below it, and a trailing '/' matches directories
+ * only. Blank lines and lines starting with '#' are skipped, as are lines that
+ * don't compile.
+ */
+public final class GitIgnoreRules {
+
+  /**
+   * The rules of the enclosing directories, or null at the top of the stack.
+   */
+  private final GitIgnoreRules parent;
+
+  /**
+   * The path of the directory holding this .gitignore relative to the root, empty or ending with '/'.
+   */
+  private final String base;
+
+  /**
+   * Every pattern, in file order.
+   */
+  private final GlobPattern[] patterns;
+
+  /**
+   * Whether each pattern re-includes what it matches.
+   */
+  private final boolean[] negated;
+
+  /**
+   * The index of the last line for each plain name, such as "target", which is
+   * looked up by name instead of being matched.
+   */
+  private final Map<String, Integer> literals;
+
+  /**
+   * The indexes of the patterns that are not plain names, in file order.
+   */
+  private final int[] globs;
+
+  private GitIgnoreRules(GitIgnoreRules parent, String base, List<GlobPattern> patterns, List<Boolean> negated) {
+    this.parent = parent;
+    this.base = base;
+    this.patterns = patterns.toArray(new GlobPattern[0]);
+    this.negated = new boolean[patterns.size()];
+    this.literals = new HashMap<>();
+
+    List<Integer> globs = new ArrayList<>();
+    for (int i = 0; i < this.patterns.length; i++) {
+      this.negated[i] = negated.get(i);
+      GlobPattern pattern = this.patterns[i];
+      if (!pattern.isAnchored() && !pattern.isDirectoryOnly() && isLiteral(pattern.getPattern())) {
+        literals.put(pattern.getPattern(), i);
+      } else {
+        globs.add(i);
+      }
+    }
+    this.globs = globs.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Compiles the lines of a .gitignore file on top of the enclosing rules.
+   *
+   * @param lines  the lines of the file
+   * @param base   the path of the file's directory relative to the root, empty or ending with '/'
+   * @param parent the rules of the enclosing directories, or null
+   * @return the rules, or parent itself if the file has no usable lines
+   */
+  public static GitIgnoreRules parse(List<String> lines, String base, GitIgnoreRules parent) {
+    List<GlobPattern> patterns = new ArrayList<>();
+    List<Boolean> negated = new ArrayList<>();
+
+    for (String line : lines) {
+      String pattern = trimTrailingSpaces(line);
+      if (pattern.isEmpty() || pattern.startsWith("#")) continue;
+
+      boolean negate = pattern.startsWith("!");
+      if (negate) {
+        pattern = pattern.substring(1);
+      } else if (pattern.startsWith("\\#") || pattern.startsWith("\\!")) {
+        pattern = pattern.substring(1);
+      }
+
+      try {
+        patterns.add(GlobPattern.compile(pattern));
+        negated.add(negate);
+      } catch (IllegalArgumentException e) {
+        // Git skips patterns it can't use; so do we
+      }
+    }
+
+    return patterns.isEmpty() ? parent : new GitIgnoreRules(parent, base, patterns, negated);
+  }
+
+  /**
+   * Returns a matcher for the entries of one directory. The matcher is built once
+   * per directory listing, so checking each entry allocates nothing.
+   *
+   * @param directory the path of the directory relative to the root, empty or ending with '/'
+   * @return the matcher for the directory's entries
+   */
+  public Matcher forDirectory(String directory) {
+    return new Matcher(this, directory);
+  }
+
+  /**
+   * Decides this level's verdict for an entry.
+   *
+   * @return 1 if ignored, 0 if re-included, -1 if no line matches
+   */
+  private int verdict(String parentPath, String name, boolean directory) {
+    int literal = literals.getOrDefault(name, -1);
+    for (int i = globs.length - 1; i >= 0 && globs[i] > literal; i--) {
+      int index = globs[i];
+      if (patterns[index].matches(parentPath, name, directory)) {
+        return negated[index] ? 0 : 1;
+      }
+    }
+    if (literal >= 0) {
+      return negated[literal] ? 0 : 1;
+    }
+    return -1;
+  }
+
+  private static boolean isLiteral(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      if ("*?[]{}\\/".indexOf(pattern.charAt(i)) >= 0) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Removes trailing spaces, except a space escaped with '\'.
+   */
+  private static String trimTrailingSpaces(String line) {
+    int end = line.length();
+    while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+      end--;
+    }
+    return line.substring(0, end);
+  }
+
+  /**
+   * The rule stack applied to the entries of one directory, with the
+   * directory's path relative to each level's .gitignore worked out up front.
+   */
+  public static final class Matcher {
+    private final GitIgnoreRules[] levels;
+    private final String[] parents;
+
+    private Matcher(GitIgnoreRules rules, String directory) {
+      int depth = 0;
+      for (GitIgnoreRules level = rules; level != null; level = level.parent) {
+        depth++;
+      }
+
+      levels = new GitIgnoreRules[depth];
+      parents = new String[depth];
+      int i = 0;
+      for (GitIgnoreRules level = rules; level != null; level = level.parent, i++) {
+        levels[i] = level;
+        parents[i] = directory.substring(level.base.length());
+      }
+    }
+
+    /**
+     * Indicates whether an entry of the directory is ignored.
+     *
+     * @param name      the entry's name
+     * @param directory whether the entry is a directory
+     * @return true if the entry is ignored; false otherwise
+     */
+    public boolean isIgnored(String name, boolean directory) {
+      // Deepest .gitignore first; the first level with a matching line decides
+      for (int i = 0; i < levels.length; i++) {
+        int verdict = levels[i].verdict(parents[i], name, directory);
+        if (verdict >= 0) {
+          return verdict == 1;
+        }
+      }
+      return false;
+    }
+  }
+}
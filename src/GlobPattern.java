@@ -0,0 +1,329 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled glob pattern for matching tree entries, such as "*.class",
+ * "node_modules/" or "**\/target".
+ *
+ * Syntax:
+ * - *     : any run of characters within one path segment
+ * - **    : any run of characters across segments; "**\/" matches zero or more whole directories
+ * - ?     : any single character except '/'
+ * - [abc] : one character from the set; ranges (a-z) and negation ([!a] or [^a]) are allowed
+ * - {a,b} : either alternative (alternatives may themselves contain globs)
+ * - \x    : the character x, literally
+ *
+ * A pattern without a '/' (other than a trailing one) matches the entry's name
+ * at any depth. A pattern with a '/' matches the entry's path relative to the
+ * root, always separated by '/', so a leading '/' only anchors the pattern to
+ * the root. A trailing '/' makes the pattern match directories only.
+ *
+ * Matching never allocates: the relative path is passed as the parent's path
+ * and the entry's name, and is read as if they were one string.
+ */
+public final class GlobPattern {
+
+  /**
+   * The pattern as it was given.
+   */
+  private final String pattern;
+
+  /**
+   * The pattern with braces expanded into alternatives, and without leading or trailing '/'.
+   */
+  private final String[] alternatives;
+
+  /**
+   * Whether the pattern is matched against the relative path instead of the name.
+   */
+  private final boolean anchored;
+
+  /**
+   * Whether the pattern only matches directories.
+   */
+  private final boolean directoryOnly;
+
+  private GlobPattern(String pattern, String[] alternatives, boolean anchored, boolean directoryOnly) {
+    this.pattern = pattern;
+    this.alternatives = alternatives;
+    this.anchored = anchored;
+    this.directoryOnly = directoryOnly;
+  }
+
+  /**
+   * Compiles a glob pattern.
+   *
+   * @param pattern the pattern to compile
+   * @return the compiled pattern
+   * @throws IllegalArgumentException if the pattern is empty or malformed
+   */
+  public static GlobPattern compile(String pattern) {
+    String body = pattern;
+    boolean directoryOnly = false;
+    while (body.endsWith("/") && !body.endsWith("\\/")) {
+      body = body.substring(0, body.length() - 1);
+      directoryOnly = true;
+    }
+    boolean anchored = body.startsWith("/");
+    while (body.startsWith("/")) {
+      body = body.substring(1);
+    }
+    if (body.isEmpty()) {
+      throw new IllegalArgumentException("Empty pattern: " + pattern);
+    }
+    anchored |= containsSeparator(body);
+
+    List<String> alternatives = new ArrayList<>();
+    expandBraces(pattern, body, alternatives);
+    for (String alternative : alternatives) {
+      validate(pattern, alternative);
+    }
+    return new GlobPattern(pattern, alternatives.toArray(new String[0]), anchored, directoryOnly);
+  }
+
+  /**
+   * Returns the pattern as it was given.
+   *
+   * @return the pattern
+   */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Indicates whether the pattern is matched against the relative path instead of the name.
+   *
+   * @return true if the pattern contains a '/' before its end; false otherwise
+   */
+  public boolean isAnchored() {
+    return anchored;
+  }
+
+  /**
+   * Indicates whether the pattern only matches directories.
+   *
+   * @return true if the pattern ends with '/'; false otherwise
+   */
+  public boolean isDirectoryOnly() {
+    return directoryOnly;
+  }
+
+  /**
+   * Indicates whether the pattern matches an entry.
+   *
+   * @param parent    the relative path of the entry's parent, empty or ending with '/'
+   * @param name      the entry's name
+   * @param directory whether the entry is a directory
+   * @return true if the entry matches; false otherwise
+   */
+  public boolean matches(CharSequence parent, CharSequence name, boolean directory) {
+    if (directoryOnly && !directory) {
+      return false;
+    }
+
+    CharSequence prefix = anchored ? parent : "";
+    for (String alternative : alternatives) {
+      if (match(alternative, 0, prefix, name, 0)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return pattern;
+  }
+
+  /**
+   * Matches glob[g..] against the text (prefix followed by name) from position t.
+   */
+  private static boolean match(String glob, int g, CharSequence prefix, CharSequence name, int t) {
+    int length = prefix.length() + name.length();
+
+    while (g < glob.length()) {
+      char c = glob.charAt(g);
+
+      if (c == '*') {
+        if (g + 1 < glob.length() && glob.charAt(g + 1) == '*') {
+          if (g + 2 < glob.length() && glob.charAt(g + 2) == '/') {
+            // "**/": zero or more whole directories
+            if (match(glob, g + 3, prefix, name, t)) return true;
+            for (int i = t; i < length; i++) {
+              if (charAt(prefix, name, i) == '/' && match(glob, g + 3, prefix, name, i + 1)) return true;
+            }
+            return false;
+          }
+          for (int i = length; i >= t; i--) {
+            if (match(glob, g + 2, prefix, name, i)) return true;
+          }
+          return false;
+        }
+
+        int end = t;
+        while (end < length && charAt(prefix, name, end) != '/') {
+          end++;
+        }
+        if (g + 1 == glob.length()) {
+          return end == length;
+        }
+        for (int i = end; i >= t; i--) {
+          if (match(glob, g + 1, prefix, name, i)) return true;
+        }
+        return false;
+      }
+
+      if (t >= length) {
+        return false;
+      }
+      char ch = charAt(prefix, name, t);
+
+      if (c == '?') {
+        if (ch == '/') return false;
+        g++;
+      } else if (c == '[') {
+        int close = classEnd(glob, g);
+        if (ch == '/' || !classMatches(glob, g + 1, close, ch)) return false;
+        g = close + 1;
+      } else if (c == '\\') {
+        if (glob.charAt(g + 1) != ch) return false;
+        g += 2;
+      } else {
+        if (c != ch) return false;
+        g++;
+      }
+      t++;
+    }
+    return t == length;
+  }
+
+  private static char charAt(CharSequence prefix, CharSequence name, int i) {
+    int split = prefix.length();
+    return i < split ? prefix.charAt(i) : name.charAt(i - split);
+  }
+
+  /**
+   * Returns the index of the ']' closing the class that opens at glob[open].
+   */
+  private static int classEnd(String glob, int open) {
+    int i = open + 1;
+    if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')) i++;
+    if (i < glob.length() && glob.charAt(i) == ']') i++;
+    while (i < glob.length() && glob.charAt(i) != ']') {
+      if (glob.charAt(i) == '\\') i++;
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean classMatches(String glob, int start, int close, char ch) {
+    boolean negated = glob.charAt(start) == '!' || glob.charAt(start) == '^';
+    int i = negated ? start + 1 : start;
+    boolean found = false;
+
+    while (i < close) {
+      char low = glob.charAt(i);
+      if (low == '\\') {
+        low = glob.charAt(++i);
+      }
+      i++;
+
+      char high = low;
+      if (i + 1 < close && glob.charAt(i) == '-') {
+        high = glob.charAt(i + 1);
+        if (high == '\\') {
+          high = glob.charAt(i + 2);
+          i++;
+        }
+        i += 2;
+      }
+      if (ch >= low && ch <= high) found = true;
+    }
+    return found != negated;
+  }
+
+  private static boolean containsSeparator(String body) {
+    for (int i = 0; i < body.length(); i++) {
+      char c = body.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '/') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Expands the first top-level {a,b} group in glob, recursively, adding every
+   * brace-free alternative to the list.
+   */
+  private static void expandBraces(String pattern, String glob, List<String> alternatives) {
+    int open = -1;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '[') {
+        i = classEnd(glob, i);
+      } else if (c == '{') {
+        open = i;
+        break;
+      } else if (c == '}') {
+        throw new IllegalArgumentException("Unmatched '}' in pattern: " + pattern);
+      }
+    }
+    if (open < 0) {
+      alternatives.add(glob);
+      return;
+    }
+
+    List<Integer> commas = new ArrayList<>();
+    int nesting = 0;
+    int close = -1;
+    for (int i = open + 1; i < glob.length() && close < 0; i++) {
+      char c = glob.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '[') {
+        i = classEnd(glob, i);
+      } else if (c == '{') {
+        nesting++;
+      } else if (c == '}') {
+        if (nesting == 0) close = i;
+        nesting--;
+      } else if (c == ',' && nesting == 0) {
+        commas.add(i);
+      }
+    }
+    if (close < 0) {
+      throw new IllegalArgumentException("Unclosed '{' in pattern: " + pattern);
+    }
+
+    String head = glob.substring(0, open);
+    String tail = glob.substring(close + 1);
+    int start = open + 1;
+    commas.add(close);
+    for (int comma : commas) {
+      expandBraces(pattern, head + glob.substring(start, comma) + tail, alternatives);
+      start = comma + 1;
+    }
+  }
+
+  private static void validate(String pattern, String glob) {
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '\\') {
+        if (i + 1 == glob.length()) {
+          throw new IllegalArgumentException("Trailing '\\' in pattern: " + pattern);
+        }
+        i++;
+      } else if (c == '[') {
+        i = classEnd(glob, i);
+        if (i >= glob.length()) {
+          throw new IllegalArgumentException("Unclosed '[' in pattern: " + pattern);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A TreeVisitor that writes the tree as JSON while it is walked.
+ *
+ * Nothing is kept per entry: a nested document is written by opening a
+ * directory's "contents" array when the directory is visited and closing it
+ * when an entry at the same depth or above comes next, so memory grows with the
+ * depth of the tree and not with its size. Names are escaped straight into the
+ * writer in runs, without building a String per name.
+ *
+ * JSON output (one entry per line, indented two spaces per level):
+ *
+ * {"name":"myFolder","type":"directory","contents":[
+ *   {"name":"Apple.txt","type":"file"},
+ *   {"name":"Documents","type":"directory","contents":[
+ *     {"name":"notes.txt","type":"file"}
+ *   ]}
+ * ]}
+ *
+ * NDJSON output (one object per entry below the root, paths relative to the root):
+ *
+ * {"path":"Apple.txt","depth":1,"type":"file"}
+ * {"path":"Documents","depth":1,"type":"directory"}
+ * {"path":"Documents/notes.txt","depth":2,"type":"file"}
+ *
+ * Directories collapsed by the maximum depth get "collapsed":true, and no contents.
+ * The writer is not flushed or closed.
+ */
+public class JsonTreeWriter implements TreeVisitor {
+
+  /**
+   * The escape sequence of every character that needs one, by character.
+   */
+  private static final String[] ESCAPES = new String['\\' + 1];
+
+  static {
+    for (char c = 0; c < 0x20; c++) {
+      ESCAPES[c] = String.format("\\u%04x", (int) c);
+    }
+    ESCAPES['"'] = "\\\"";
+    ESCAPES['\\'] = "\\\\";
+    ESCAPES['\n'] = "\\n";
+    ESCAPES['\r'] = "\\r";
+    ESCAPES['\t'] = "\\t";
+    ESCAPES['\b'] = "\\b";
+    ESCAPES['\f'] = "\\f";
+  }
+
+  /**
+   * The writer the JSON is written to.
+   */
+  private final Writer out;
+
+  /**
+   * Whether each entry is written on its own line with its full path.
+   */
+  private final boolean lines;
+
+  /**
+   * In JSON, the depth of the innermost directory whose contents are open.
+   */
+  private int openDepth;
+
+  /**
+   * In JSON, whether an entry has been written since the innermost open array began.
+   */
+  private boolean needComma;
+
+  /**
+   * In NDJSON, the escaped path of the last entry visited, relative to the root.
+   */
+  private char[] path = new char[256];
+
+  /**
+   * In NDJSON, the length of the path.
+   */
+  private int pathLength;
+
+  /**
+   * In NDJSON, the length of the path of the directory open at each depth.
+   */
+  private int[] pathLengths = new int[16];
+
+  /**
+   * Constructs a JsonTreeWriter.
+   *
+   * @param out    the writer the JSON is written to
+   * @param format JSON or NDJSON
+   * @throws IllegalArgumentException if the format is not a JSON format
+   */
+  public JsonTreeWriter(Writer out, OutputFormat format) {
+    if (format != OutputFormat.JSON && format != OutputFormat.NDJSON) {
+      throw new IllegalArgumentException("Not a JSON format: " + format);
+    }
+    this.out = out;
+    this.lines = format == OutputFormat.NDJSON;
+  }
+
+  @Override
+  public void start(TreeEntry root) {
+    openDepth = 0;
+    needComma = false;
+    pathLength = 0;
+    if (lines) {
+      return;
+    }
+
+    try {
+      out.write("{\"name\":");
+      writeString(root.getName());
+      out.write(",\"type\":\"directory\",\"contents\":[");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void entry(TreeEntry entry, int depth, boolean collapsed) {
+    try {
+      if (lines) {
+        writeLine(entry, depth, collapsed);
+      } else {
+        writeNested(entry, depth, collapsed);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void end() {
+    if (lines) {
+      return;
+    }
+
+    try {
+      closeTo(0);
+      close();
+      out.write(System.lineSeparator());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void writeNested(TreeEntry entry, int depth, boolean collapsed) throws IOException {
+    closeTo(depth);
+    out.write(needComma ? "," : "");
+    newLine(depth);
+
+    out.write("{\"name\":");
+    writeString(entry.getName());
+    if (!entry.isDirectory()) {
+      out.write(",\"type\":\"file\"}");
+      needComma = true;
+    } else if (collapsed) {
+      out.write(",\"type\":\"directory\",\"collapsed\":true}");
+      needComma = true;
+    } else {
+      out.write(",\"type\":\"directory\",\"contents\":[");
+      openDepth = depth;
+      needComma = false;
+    }
+  }
+
+  /**
+   * Closes the open directories until the innermost one is above the given depth.
+   */
+  private void closeTo(int depth) throws IOException {
+    while (openDepth >= depth && openDepth > 0) {
+      close();
+      openDepth--;
+    }
+  }
+
+  /**
+   * Closes the innermost open directory.
+   */
+  private void close() throws IOException {
+    if (needComma) {
+      newLine(openDepth);
+    }
+    out.write("]}");
+    needComma = true;
+  }
+
+  private void newLine(int depth) throws IOException {
+    out.write(System.lineSeparator());
+    for (int i = 0; i < depth; i++) {
+      out.write("  ");
+    }
+  }
+
+  private void writeLine(TreeEntry entry, int depth, boolean collapsed) throws IOException {
+    if (depth >= pathLengths.length) {
+      pathLengths = Arrays.copyOf(pathLengths, depth * 2);
+    }
+    // The parent's path is a prefix of the last directory's path
+    pathLength = depth == 1 ? 0 : pathLengths[depth - 1];
+    appendEscaped(entry.getName());
+
+    out.write("{\"path\":\"");
+    out.write(path, 0, pathLength);
+    out.write("\",\"depth\":");
+    writeDigits(depth);
+    if (!entry.isDirectory()) {
+      out.write(",\"type\":\"file\"}");
+    } else {
+      out.write(collapsed ? ",\"type\":\"directory\",\"collapsed\":true}" : ",\"type\":\"directory\"}");
+      appendEscaped("/");
+      pathLengths[depth] = pathLength;
+    }
+    out.write(System.lineSeparator());
+  }
+
+  /**
+   * Writes a non-negative number.
+   */
+  private void writeDigits(int value) throws IOException {
+    if (value >= 10) {
+      writeDigits(value / 10);
+    }
+    out.write('0' + value % 10);
+  }
+
+  /**
+   * Writes a quoted JSON string. Runs of characters that need no escaping are
+   * written as they are.
+   */
+  private void writeString(String text) throws IOException {
+    out.write('"');
+    int start = 0;
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c < ESCAPES.length && ESCAPES[c] != null) {
+        out.write(text, start, i - start);
+        out.write(ESCAPES[c]);
+        start = i + 1;
+      }
+    }
+    out.write(text, start, length - start);
+    out.write('"');
+  }
+
+  /**
+   * Appends a name to the NDJSON path, escaped.
+   */
+  private void appendEscaped(String name) {
+    int length = name.length();
+    for (int i = 0; i < length; i++) {
+      char c = name.charAt(i);
+      String escape = c < ESCAPES.length ? ESCAPES[c] : null;
+      if (escape == null) {
+        ensurePathCapacity(1);
+        path[pathLength++] = c;
+      } else {
+        ensurePathCapacity(escape.length());
+        escape.getChars(0, escape.length(), path, pathLength);
+        pathLength += escape.length();
+      }
+    }
+  }
+
+  private void ensurePathCapacity(int extra) {
+    if (pathLength + extra > path.length) {
+      path = Arrays.copyOf(path, Math.max(path.length * 2, pathLength + extra));
+    }
+  }
+}
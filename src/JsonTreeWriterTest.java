@@ -0,0 +1,164 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JsonTreeWriterTest {
+
+  private static final String NL = System.lineSeparator();
+
+  @Test
+  void testNestedJson(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+
+    String expected = "{\"name\":\"tree\",\"type\":\"directory\",\"contents\":[" + NL
+        + "  {\"name\":\"a\",\"type\":\"directory\",\"contents\":[" + NL
+        + "    {\"name\":\"b\",\"type\":\"directory\",\"contents\":[" + NL
+        + "      {\"name\":\"y.txt\",\"type\":\"file\"}" + NL
+        + "    ]}," + NL
+        + "    {\"name\":\"empty\",\"type\":\"directory\",\"contents\":[]}," + NL
+        + "    {\"name\":\"x.txt\",\"type\":\"file\"}" + NL
+        + "  ]}," + NL
+        + "  {\"name\":\"say \\\"hi\\\"\\\\\\ttab\",\"type\":\"file\"}," + NL
+        + "  {\"name\":\"top.txt\",\"type\":\"file\"}" + NL
+        + "]}" + NL;
+
+    for (boolean iterative : new boolean[] {false, true}) {
+      TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+      options.setIterative(iterative);
+      assertEquals(expected, write(options, OutputFormat.JSON), "iterative=" + iterative);
+    }
+  }
+
+  @Test
+  void testNdjson(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), true, false);
+
+    String expected = "{\"path\":\".hidden\",\"depth\":1,\"type\":\"file\"}" + NL
+        + "{\"path\":\"a\",\"depth\":1,\"type\":\"directory\"}" + NL
+        + "{\"path\":\"a/b\",\"depth\":2,\"type\":\"directory\"}" + NL
+        + "{\"path\":\"a/b/y.txt\",\"depth\":3,\"type\":\"file\"}" + NL
+        + "{\"path\":\"a/empty\",\"depth\":2,\"type\":\"directory\"}" + NL
+        + "{\"path\":\"a/x.txt\",\"depth\":2,\"type\":\"file\"}" + NL
+        + "{\"path\":\"say \\\"hi\\\"\\\\\\ttab\",\"depth\":1,\"type\":\"file\"}" + NL
+        + "{\"path\":\"top.txt\",\"depth\":1,\"type\":\"file\"}" + NL;
+
+    assertEquals(expected, write(options, OutputFormat.NDJSON));
+  }
+
+  @Test
+  void testCollapsedDirectories(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+    options.setMaxDepth(1);
+
+    assertEquals("{\"name\":\"tree\",\"type\":\"directory\",\"contents\":[" + NL
+        + "  {\"name\":\"a\",\"type\":\"directory\",\"collapsed\":true}," + NL
+        + "  {\"name\":\"say \\\"hi\\\"\\\\\\ttab\",\"type\":\"file\"}," + NL
+        + "  {\"name\":\"top.txt\",\"type\":\"file\"}" + NL
+        + "]}" + NL, write(options, OutputFormat.JSON));
+    assertEquals("{\"path\":\"a\",\"depth\":1,\"type\":\"directory\",\"collapsed\":true}",
+        write(options, OutputFormat.NDJSON).split(NL)[0]);
+  }
+
+  @Test
+  void testArchiveRootIsNamedAfterTheArchive(@TempDir File tempDir) throws IOException {
+    Path zip = tempDir.toPath().resolve("tree.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      out.putNextEntry(new ZipEntry("a/x.txt"));
+      out.closeEntry();
+    }
+
+    TruffulaOptions options = new TruffulaOptions(new String[] {zip.toString()});
+    try {
+      assertEquals("{\"name\":\"tree.zip\",\"type\":\"directory\",\"contents\":[" + NL
+          + "  {\"name\":\"a\",\"type\":\"directory\",\"contents\":[" + NL
+          + "    {\"name\":\"x.txt\",\"type\":\"file\"}" + NL
+          + "  ]}" + NL
+          + "]}" + NL, write(options, OutputFormat.JSON));
+    } finally {
+      options.getRootPath().getFileSystem().close();
+    }
+  }
+
+  @Test
+  void testNdjsonFollowsTextOrder(@TempDir File tempDir) throws IOException {
+    Path root = tempDir.toPath();
+    FakeDirectoryLister lister = FakeDirectoryLister.random(root, 11, 3000);
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), true, false);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos), List.of(ConsoleColor.WHITE), lister).printTree();
+    String[] text = baos.toString().replaceAll("\033\\[[0-9;]*m", "").split(NL);
+
+    StringWriter json = new StringWriter();
+    new TruffulaPrinter(options, new PrintStream(new ByteArrayOutputStream()), List.of(ConsoleColor.WHITE), lister)
+        .walkTree(new JsonTreeWriter(json, OutputFormat.NDJSON));
+    String[] lines = json.toString().split(NL);
+
+    // Every text line below the root is the last path element of the NDJSON line, at the same depth
+    assertEquals(text.length - 1, lines.length);
+    List<String> fromJson = new ArrayList<>();
+    for (String line : lines) {
+      String path = line.substring("{\"path\":\"".length(), line.indexOf("\",\"depth\""));
+      int depth = Integer.parseInt(line.replaceAll(".*\"depth\":(\\d+).*", "$1"));
+      boolean directory = line.contains("\"type\":\"directory\"");
+      fromJson.add("   ".repeat(depth) + path.substring(path.lastIndexOf('/') + 1) + (directory ? "/" : ""));
+    }
+    assertEquals(List.of(text).subList(1, text.length), fromJson);
+  }
+
+  @Test
+  void testOutputFormatFlag(@TempDir File tempDir) throws FileNotFoundException {
+    String path = tempDir.getAbsolutePath();
+
+    assertEquals(OutputFormat.TEXT, new TruffulaOptions(new String[] {path}).getOutputFormat());
+    assertEquals(OutputFormat.JSON, new TruffulaOptions(new String[] {"-o", "json", path}).getOutputFormat());
+    assertEquals(OutputFormat.NDJSON, new TruffulaOptions(new String[] {"-o", "NDJSON", path}).getOutputFormat());
+    assertThrows(IllegalArgumentException.class, () -> new TruffulaOptions(new String[] {"-o", "xml", path}));
+  }
+
+  /**
+   * Creates:
+   *
+   * tree/
+   *  .hidden
+   *  a/
+   *      b/
+   *          y.txt
+   *      empty/
+   *      x.txt
+   *  say "hi"\	tab
+   *  top.txt
+   */
+  private static Path createTree(File tempDir) throws IOException {
+    Path root = tempDir.toPath().resolve("tree");
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createDirectories(root.resolve("a/empty"));
+    for (String file : List.of(".hidden", "a/b/y.txt", "a/x.txt", "say \"hi\"\\\ttab", "top.txt")) {
+      Files.createFile(root.resolve(file));
+    }
+    return root;
+  }
+
+  private static String write(TruffulaOptions options, OutputFormat format) {
+    StringWriter out = new StringWriter();
+    new TruffulaPrinter(options).walkTree(new JsonTreeWriter(out, format));
+    return out.toString();
+  }
+}
@@ -0,0 +1,748 @@
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A java.nio FileSystem held entirely in memory, for tests.
+ *
+ * Supports what the printer and the tests use: creating, listing, reading,
+ * writing and deleting files and directories, and reading their basic
+ * attributes. Paths look like Unix paths, and names starting with a dot are
+ * hidden. Nothing is read from or written to disk, so large trees can be built
+ * and printed quickly.
+ *
+ * Each call to newFileSystem() returns a separate, empty filesystem. It can be
+ * used from several threads at once. It counts the directories it lists and the
+ * attribute reads it serves, so tests can see exactly what a walk asked of it.
+ */
+public class MemoryFileSystem extends FileSystem {
+
+  private final Provider provider = new Provider();
+  private final Node rootNode = new Node(true);
+  private final MemoryPath root = new MemoryPath(this, true, new String[0]);
+  private volatile boolean open = true;
+  private final LongAdder listings = new LongAdder();
+  private final LongAdder attributeReads = new LongAdder();
+
+  /**
+   * Creates an empty filesystem.
+   *
+   * @return the filesystem
+   */
+  public static MemoryFileSystem newFileSystem() {
+    return new MemoryFileSystem();
+  }
+
+  private MemoryFileSystem() {
+  }
+
+  /**
+   * Returns how many directory streams have been opened since the last resetCounts().
+   *
+   * @return the number of directory listings
+   */
+  public long getListings() {
+    return listings.sum();
+  }
+
+  /**
+   * Returns how many times the attributes or existence of a path have been read
+   * since the last resetCounts().
+   *
+   * @return the number of attribute reads
+   */
+  public long getAttributeReads() {
+    return attributeReads.sum();
+  }
+
+  /**
+   * Sets the listing and attribute read counts back to zero.
+   */
+  public void resetCounts() {
+    listings.reset();
+    attributeReads.reset();
+  }
+
+  @Override
+  public FileSystemProvider provider() {
+    return provider;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return false;
+  }
+
+  @Override
+  public String getSeparator() {
+    return "/";
+  }
+
+  @Override
+  public Iterable<Path> getRootDirectories() {
+    return List.of(root);
+  }
+
+  @Override
+  public Iterable<FileStore> getFileStores() {
+    return List.of();
+  }
+
+  @Override
+  public Set<String> supportedFileAttributeViews() {
+    return Set.of("basic");
+  }
+
+  @Override
+  public Path getPath(String first, String... more) {
+    String joined = more.length == 0 ? first : first + "/" + String.join("/", more);
+    String[] names = Arrays.stream(joined.split("/")).filter(name -> !name.isEmpty()).toArray(String[]::new);
+    return new MemoryPath(this, joined.startsWith("/"), names);
+  }
+
+  @Override
+  public PathMatcher getPathMatcher(String syntaxAndPattern) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public UserPrincipalLookupService getUserPrincipalLookupService() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public WatchService newWatchService() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Finds the node at a path, or returns null if there is none.
+   */
+  private Node find(Path path) {
+    MemoryPath absolute = toMemoryPath(path.toAbsolutePath().normalize());
+    Node node = rootNode;
+    for (String name : absolute.names) {
+      if (!node.directory) {
+        return null;
+      }
+      Node child;
+      synchronized (node) {
+        child = node.children.get(name);
+      }
+      if (child == null) {
+        return null;
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  private Node get(Path path) throws NoSuchFileException {
+    Node node = find(path);
+    if (node == null) {
+      throw new NoSuchFileException(path.toString());
+    }
+    return node;
+  }
+
+  /**
+   * Adds a node to its parent directory.
+   */
+  private Node create(Path path, boolean directory, boolean replace) throws IOException {
+    Path absolute = path.toAbsolutePath().normalize();
+    Path parentPath = absolute.getParent();
+    if (parentPath == null) {
+      throw new FileAlreadyExistsException(path.toString());
+    }
+    Node parent = get(parentPath);
+    if (!parent.directory) {
+      throw new NotDirectoryException(parentPath.toString());
+    }
+
+    String name = absolute.getFileName().toString();
+    synchronized (parent) {
+      Node existing = parent.children.get(name);
+      if (existing != null) {
+        if (!replace || existing.directory) {
+          throw new FileAlreadyExistsException(path.toString());
+        }
+        return existing;
+      }
+      Node node = new Node(directory);
+      parent.children.put(name, node);
+      parent.touch();
+      return node;
+    }
+  }
+
+  private static MemoryPath toMemoryPath(Path path) {
+    if (!(path instanceof MemoryPath)) {
+      throw new ProviderMismatchException();
+    }
+    return (MemoryPath) path;
+  }
+
+  /**
+   * A file or directory.
+   */
+  private static class Node {
+    private final boolean directory;
+    private final Map<String, Node> children;
+    private byte[] content = new byte[0];
+    private volatile long modified = System.currentTimeMillis();
+
+    private Node(boolean directory) {
+      this.directory = directory;
+      this.children = directory ? new HashMap<>() : null;
+    }
+
+    private void touch() {
+      modified = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * The basic attributes of a node, read when they are asked for.
+   */
+  private static class Attributes implements BasicFileAttributes {
+    private final Node node;
+    private final long size;
+
+    private Attributes(Node node) {
+      this.node = node;
+      synchronized (node) {
+        this.size = node.directory ? 0 : node.content.length;
+      }
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+      return FileTime.fromMillis(node.modified);
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+      return lastModifiedTime();
+    }
+
+    @Override
+    public FileTime creationTime() {
+      return lastModifiedTime();
+    }
+
+    @Override
+    public boolean isRegularFile() {
+      return !node.directory;
+    }
+
+    @Override
+    public boolean isDirectory() {
+      return node.directory;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+      return false;
+    }
+
+    @Override
+    public boolean isOther() {
+      return false;
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+
+    @Override
+    public Object fileKey() {
+      return node;
+    }
+  }
+
+  /**
+   * Reads and writes the content of a file.
+   */
+  private static class Channel implements SeekableByteChannel {
+    private final Node node;
+    private long position;
+    private boolean open = true;
+
+    private Channel(Node node, boolean append) {
+      this.node = node;
+      if (append) {
+        synchronized (node) {
+          position = node.content.length;
+        }
+      }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      checkOpen();
+      synchronized (node) {
+        if (position >= node.content.length) {
+          return -1;
+        }
+        int count = (int) Math.min(dst.remaining(), node.content.length - position);
+        dst.put(node.content, (int) position, count);
+        position += count;
+        return count;
+      }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      checkOpen();
+      synchronized (node) {
+        int count = src.remaining();
+        long end = position + count;
+        if (end > node.content.length) {
+          node.content = Arrays.copyOf(node.content, (int) end);
+        }
+        src.get(node.content, (int) position, count);
+        position = end;
+        node.touch();
+        return count;
+      }
+    }
+
+    @Override
+    public long position() {
+      return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) {
+      position = newPosition;
+      return this;
+    }
+
+    @Override
+    public long size() {
+      synchronized (node) {
+        return node.content.length;
+      }
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+      synchronized (node) {
+        if (size < node.content.length) {
+          node.content = Arrays.copyOf(node.content, (int) size);
+          node.touch();
+        }
+      }
+      position = Math.min(position, size);
+      return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+      if (!open) {
+        throw new ClosedChannelException();
+      }
+    }
+  }
+
+  /**
+   * The operations behind java.nio.file.Files.
+   */
+  private class Provider extends FileSystemProvider {
+
+    @Override
+    public String getScheme() {
+      return "memory";
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
+        FileAttribute<?>... attrs) throws IOException {
+      boolean write = options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND);
+      Node node;
+      if (options.contains(StandardOpenOption.CREATE_NEW)) {
+        node = create(path, false, false);
+      } else if (options.contains(StandardOpenOption.CREATE) && write) {
+        node = create(path, false, true);
+      } else {
+        node = get(path);
+      }
+      if (node.directory) {
+        throw new IOException("Is a directory: " + path);
+      }
+
+      Channel channel = new Channel(node, options.contains(StandardOpenOption.APPEND));
+      if (write && options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+        channel.truncate(0);
+      }
+      return channel;
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter)
+        throws IOException {
+      listings.increment();
+      Node node = get(dir);
+      if (!node.directory) {
+        throw new NotDirectoryException(dir.toString());
+      }
+      List<String> names;
+      synchronized (node) {
+        names = new ArrayList<>(node.children.keySet());
+      }
+
+      return new DirectoryStream<Path>() {
+        @Override
+        public Iterator<Path> iterator() {
+          List<Path> paths = new ArrayList<>(names.size());
+          for (String name : names) {
+            Path path = dir.resolve(name);
+            try {
+              if (filter.accept(path)) {
+                paths.add(path);
+              }
+            } catch (IOException e) {
+              throw new DirectoryIteratorException(e);
+            }
+          }
+          return paths.iterator();
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+      create(dir, true, false);
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+      Path absolute = path.toAbsolutePath().normalize();
+      if (absolute.getParent() == null) {
+        throw new IOException("Can't delete the root");
+      }
+      Node node = get(absolute);
+      Node parent = get(absolute.getParent());
+      synchronized (node) {
+        if (node.directory && !node.children.isEmpty()) {
+          throw new DirectoryNotEmptyException(path.toString());
+        }
+      }
+      synchronized (parent) {
+        parent.children.remove(absolute.getFileName().toString());
+        parent.touch();
+      }
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+      return get(path) == get(path2);
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+      Path name = path.toAbsolutePath().normalize().getFileName();
+      return name != null && name.toString().startsWith(".");
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+      attributeReads.increment();
+      get(path);
+    }
+
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+      return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options)
+        throws IOException {
+      if (type != BasicFileAttributes.class) {
+        throw new UnsupportedOperationException("Only basic attributes are supported");
+      }
+      attributeReads.increment();
+      return (A) new Attributes(get(path));
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A Unix-style path: '/'-separated names, absolute if it starts with '/'.
+   */
+  private static class MemoryPath implements Path {
+    private final MemoryFileSystem fileSystem;
+    private final boolean absolute;
+    private final String[] names;
+
+    private MemoryPath(MemoryFileSystem fileSystem, boolean absolute, String[] names) {
+      this.fileSystem = fileSystem;
+      this.absolute = absolute;
+      this.names = names;
+    }
+
+    @Override
+    public FileSystem getFileSystem() {
+      return fileSystem;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+      return absolute;
+    }
+
+    @Override
+    public Path getRoot() {
+      return absolute ? fileSystem.root : null;
+    }
+
+    @Override
+    public Path getFileName() {
+      return names.length == 0 ? null : new MemoryPath(fileSystem, false, new String[] {names[names.length - 1]});
+    }
+
+    @Override
+    public Path getParent() {
+      if (names.length == 0 || (names.length == 1 && !absolute)) {
+        return null;
+      }
+      return new MemoryPath(fileSystem, absolute, Arrays.copyOf(names, names.length - 1));
+    }
+
+    @Override
+    public int getNameCount() {
+      return names.length;
+    }
+
+    @Override
+    public Path getName(int index) {
+      return new MemoryPath(fileSystem, false, new String[] {names[index]});
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+      return new MemoryPath(fileSystem, false, Arrays.copyOfRange(names, beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+      MemoryPath path = toMemoryPath(other);
+      if (path.absolute != absolute || path.names.length > names.length) {
+        return false;
+      }
+      return Arrays.equals(names, 0, path.names.length, path.names, 0, path.names.length);
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+      MemoryPath path = toMemoryPath(other);
+      if (path.absolute) {
+        return equals(path);
+      }
+      int offset = names.length - path.names.length;
+      return offset >= 0 && Arrays.equals(names, offset, names.length, path.names, 0, path.names.length);
+    }
+
+    @Override
+    public Path normalize() {
+      List<String> normalized = new ArrayList<>();
+      for (String name : names) {
+        if (name.equals(".")) {
+          continue;
+        }
+        if (name.equals("..") && !normalized.isEmpty() && !normalized.get(normalized.size() - 1).equals("..")) {
+          normalized.remove(normalized.size() - 1);
+        } else if (!(name.equals("..") && absolute)) {
+          normalized.add(name);
+        }
+      }
+      return new MemoryPath(fileSystem, absolute, normalized.toArray(new String[0]));
+    }
+
+    @Override
+    public Path resolve(Path other) {
+      MemoryPath path = toMemoryPath(other);
+      if (path.absolute) {
+        return path;
+      }
+      if (path.names.length == 0) {
+        return this;
+      }
+      String[] resolved = Arrays.copyOf(names, names.length + path.names.length);
+      System.arraycopy(path.names, 0, resolved, names.length, path.names.length);
+      return new MemoryPath(fileSystem, absolute, resolved);
+    }
+
+    @Override
+    public Path resolve(String other) {
+      if (!other.isEmpty() && other.indexOf('/') < 0 && !other.equals(".") && !other.equals("..")) {
+        String[] resolved = Arrays.copyOf(names, names.length + 1);
+        resolved[names.length] = other;
+        return new MemoryPath(fileSystem, absolute, resolved);
+      }
+      return resolve(fileSystem.getPath(other));
+    }
+
+    @Override
+    public Path relativize(Path other) {
+      MemoryPath path = toMemoryPath(other);
+      if (path.absolute != absolute) {
+        throw new IllegalArgumentException("Can't relativize " + other + " against " + this);
+      }
+      int common = 0;
+      while (common < names.length && common < path.names.length && names[common].equals(path.names[common])) {
+        common++;
+      }
+      List<String> relative = new ArrayList<>();
+      for (int i = common; i < names.length; i++) {
+        relative.add("..");
+      }
+      relative.addAll(Arrays.asList(path.names).subList(common, path.names.length));
+      return new MemoryPath(fileSystem, false, relative.toArray(new String[0]));
+    }
+
+    @Override
+    public URI toUri() {
+      return URI.create("memory:" + toAbsolutePath());
+    }
+
+    @Override
+    public Path toAbsolutePath() {
+      return absolute ? this : new MemoryPath(fileSystem, true, names);
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... options) throws IOException {
+      Path real = toAbsolutePath().normalize();
+      fileSystem.get(real);
+      return real;
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int compareTo(Path other) {
+      return toString().compareTo(other.toString());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof MemoryPath && ((MemoryPath) other).fileSystem == fileSystem
+          && ((MemoryPath) other).absolute == absolute && Arrays.equals(((MemoryPath) other).names, names);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(names) * 31 + (absolute ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+      String joined = String.join("/", names);
+      return absolute ? "/" + joined : joined;
+    }
+  }
+}
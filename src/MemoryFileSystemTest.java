@@ -0,0 +1,153 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MemoryFileSystemTest {
+
+  @Test
+  void testPrintsLikeTheSameTreeOnDisk(@TempDir File tempDir) throws IOException {
+    Path onDisk = tempDir.toPath().resolve("tree");
+    Path inMemory = MemoryFileSystem.newFileSystem().getPath("/tree");
+    createTree(onDisk);
+    createTree(inMemory);
+
+    for (boolean showHidden : new boolean[] {false, true}) {
+      TruffulaOptions disk = new TruffulaOptions(onDisk.toFile(), showHidden, false);
+      TruffulaOptions memory = new TruffulaOptions(inMemory, showHidden, false);
+      assertEquals(print(disk), print(memory));
+
+      // With the size of each directory as well
+      disk.setDiskUsage(true);
+      memory.setDiskUsage(true);
+      assertEquals(print(disk), print(memory));
+    }
+  }
+
+  @Test
+  void testRootOnAnotherFileSystem() throws IOException {
+    Path root = MemoryFileSystem.newFileSystem().getPath("/tree");
+    Files.createDirectory(root);
+    TruffulaOptions options = new TruffulaOptions(root, false, false);
+
+    // java.io.File can't reach it, so it is listed with java.nio whatever the options say
+    assertEquals(root, options.getRootPath());
+    assertThrows(UnsupportedOperationException.class, options::getRoot);
+    assertTrue(TruffulaPrinter.defaultLister(options) instanceof NioDirectoryLister);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> print(new TruffulaOptions(root.resolve("missing"), false, false)));
+  }
+
+  @Test
+  void testMillionEntriesWithoutTouchingTheDisk(@TempDir File tempDir) throws IOException {
+    // 100 x 100 directories of 100 files: 1,010,100 entries
+    MemoryFileSystem fileSystem = MemoryFileSystem.newFileSystem();
+    Path inMemory = fileSystem.getPath("/big");
+    long entries = createWideTree(inMemory, 100);
+    assertEquals(1_010_100, entries);
+
+    TreeMetrics metrics = TreeMetrics.global();
+    metrics.reset();
+    fileSystem.resetCounts();
+    assertEquals(entries + 1, countLines(new TruffulaOptions(inMemory, false, false)));
+
+    // Every listing and attribute read the walk made was served from memory; the
+    // one extra read is the printer checking that the root is a directory
+    assertEquals(10_101, fileSystem.getListings());
+    assertEquals(metrics.getDirectoriesListed(), fileSystem.getListings());
+    assertEquals(entries, metrics.getAttributesRead());
+    assertEquals(entries + 1, fileSystem.getAttributeReads());
+
+    // The same shape on disk, at a size a test can afford, prints the same
+    Path onDisk = tempDir.toPath().resolve("small");
+    Path smallInMemory = fileSystem.getPath("/small");
+    createWideTree(onDisk, 20);
+    createWideTree(smallInMemory, 20);
+    assertEquals(print(new TruffulaOptions(onDisk.toFile(), false, false)),
+        print(new TruffulaOptions(smallInMemory, false, false)));
+  }
+
+  /**
+   * Creates:
+   *
+   * root/
+   *  .hidden
+   *  a/
+   *      .git/
+   *          config (100 bytes)
+   *      b/
+   *          y.txt (2,000 bytes)
+   *      X.txt
+   *  c/
+   *  top.txt (10 bytes)
+   */
+  private static void createTree(Path root) throws IOException {
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createDirectories(root.resolve("a/.git"));
+    Files.createDirectories(root.resolve("c"));
+    Files.createFile(root.resolve(".hidden"));
+    Files.createFile(root.resolve("a/X.txt"));
+    Files.write(root.resolve("a/.git/config"), new byte[100]);
+    Files.write(root.resolve("a/b/y.txt"), new byte[2000]);
+    Files.write(root.resolve("top.txt"), new byte[10]);
+  }
+
+  /**
+   * Creates fanout directories, each holding fanout directories of fanout files.
+   *
+   * @return the number of entries created
+   */
+  private static long createWideTree(Path root, int fanout) throws IOException {
+    long count = 0;
+    Files.createDirectory(root);
+    for (int i = 0; i < fanout; i++) {
+      Path outer = Files.createDirectory(root.resolve("dir" + i));
+      count++;
+      for (int j = 0; j < fanout; j++) {
+        Path inner = Files.createDirectory(outer.resolve("sub" + j));
+        count++;
+        for (int k = 0; k < fanout; k++) {
+          Files.createFile(inner.resolve("file" + k + ".txt"));
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private static String print(TruffulaOptions options) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+    return baos.toString().replaceAll("\033\\[[0-9;]*m", "");
+  }
+
+  private static long countLines(TruffulaOptions options) {
+    long[] lines = new long[1];
+    OutputStream counter = new OutputStream() {
+      @Override
+      public void write(int b) {
+        if (b == '\n') lines[0]++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+          if (b[i] == '\n') lines[0]++;
+        }
+      }
+    };
+    new TruffulaPrinter(options, new PrintStream(counter)).printTree();
+    return lines[0];
+  }
+}
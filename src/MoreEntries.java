@@ -0,0 +1,36 @@
+import java.nio.file.Path;
+
+/**
+ * Stands in for the entries of a directory that were left out because the
+ * options limit how many entries are printed per directory. It comes last in
+ * the directory's listing, after the entries that were kept, and is printed
+ * as "… N more".
+ */
+public class MoreEntries extends TreeEntry {
+  private final long count;
+
+  /**
+   * Constructs a MoreEntries.
+   *
+   * @param directory the directory the entries were left out of
+   * @param count     how many entries were left out
+   */
+  public MoreEntries(Path directory, long count) {
+    super(directory, "… " + count + " more", false);
+    this.count = count;
+  }
+
+  /**
+   * Returns how many entries were left out.
+   *
+   * @return the number of entries
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return "MoreEntries [directory=" + getPath() + ", count=" + count + "]";
+  }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A DirectoryLister backed by a java.nio DirectoryStream.
+ *
+ * Entries are streamed from the directory rather than collected up front.
+ * Dot-named entries are dropped by name before any attribute is read, and every
+ * remaining entry costs exactly one attribute read, which answers "is it a
+ * directory", "how big is it", "when was it modified" and (on DOS-style
+ * filesystems) "is it hidden". The answers are kept in the entry, so sorting by
+ * size or time never goes back to the filesystem.
+ */
+public class NioDirectoryLister implements DirectoryLister {
+
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    DirectoryStream<Path> paths = Files.newDirectoryStream(directory);
+    TreeMetrics.global().directoryListed();
+    boolean readDosHidden = !showHidden && usesDosHiddenAttribute(directory.getFileSystem());
+
+    return new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        Iterator<Path> it = paths.iterator();
+
+        return new Iterator<TreeEntry>() {
+          private TreeEntry next;
+
+          @Override
+          public boolean hasNext() {
+            while (next == null && it.hasNext()) {
+              next = toEntry(it.next(), showHidden, readDosHidden);
+            }
+            return next != null;
+          }
+
+          @Override
+          public TreeEntry next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            TreeEntry entry = next;
+            next = null;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public void close() throws IOException {
+        paths.close();
+      }
+    };
+  }
+
+  /**
+   * Converts a listed path to an entry, or returns null if the entry is hidden and
+   * hidden files are not shown.
+   */
+  private static TreeEntry toEntry(Path path, boolean showHidden, boolean readDosHidden) {
+    TreeMetrics metrics = TreeMetrics.global();
+    metrics.entrySeen();
+    String name = path.getFileName().toString();
+    if (!showHidden && DirectoryLister.isHiddenName(name)) {
+      metrics.hiddenEntry();
+      return null;
+    }
+
+    try {
+      metrics.attributesRead();
+      if (readDosHidden) {
+        DosFileAttributes attributes = Files.readAttributes(path, DosFileAttributes.class);
+        if (attributes.isHidden()) {
+          metrics.hiddenEntry();
+          return null;
+        }
+        return toEntry(path, name, attributes);
+      }
+
+      return toEntry(path, name, Files.readAttributes(path, BasicFileAttributes.class));
+    } catch (IOException e) {
+      // Matches java.io.File: an entry we can't stat (e.g. a broken link) is a plain file
+      return new TreeEntry(path, name, false);
+    }
+  }
+
+  private static TreeEntry toEntry(Path path, String name, BasicFileAttributes attributes) {
+    return new TreeEntry(path, name, attributes.isDirectory(), attributes.size(),
+        attributes.lastModifiedTime().toMillis());
+  }
+
+  /**
+   * Indicates whether hidden files on this filesystem are marked by a DOS attribute
+   * (Windows) rather than only by a leading dot. This mirrors java.io.File.isHidden().
+   */
+  private static boolean usesDosHiddenAttribute(FileSystem fileSystem) {
+    return fileSystem.supportedFileAttributeViews().contains("dos")
+        && !fileSystem.supportedFileAttributeViews().contains("posix");
+  }
+}
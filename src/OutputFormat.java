@@ -0,0 +1,19 @@
+/**
+ * The formats a tree can be printed in.
+ */
+public enum OutputFormat {
+  /**
+   * Indented lines, optionally in color (the default).
+   */
+  TEXT,
+
+  /**
+   * One JSON document, with every directory's entries nested in it.
+   */
+  JSON,
+
+  /**
+   * One JSON object per line for every entry, with its path, depth and type.
+   */
+  NDJSON
+}
@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which entries of the tree are shown, from include and exclude glob
+ * patterns (see GlobPattern for the syntax).
+ *
+ * - An entry matching any exclude pattern is dropped. An excluded directory is
+ *   dropped with everything below it, and is never listed.
+ * - If there are include patterns, a file is only shown if it matches one of them.
+ *   Directories are always walked (unless excluded), so included files are found
+ *   at any depth.
+ *
+ * Each pattern is compiled once when it is added. Plain names ("node_modules")
+ * are looked up in a hash set and simple extensions ("*.class") are checked
+ * with endsWith; everything else goes through the glob matcher.
+ */
+public class PathFilter {
+
+  private final PatternSet includes = new PatternSet();
+  private final PatternSet excludes = new PatternSet();
+
+  /**
+   * Adds a pattern that files must match to be shown.
+   *
+   * @param pattern the glob pattern
+   * @throws IllegalArgumentException if the pattern is malformed
+   */
+  public void include(String pattern) {
+    includes.add(pattern);
+  }
+
+  /**
+   * Adds a pattern for entries to leave out of the tree.
+   *
+   * @param pattern the glob pattern
+   * @throws IllegalArgumentException if the pattern is malformed
+   */
+  public void exclude(String pattern) {
+    excludes.add(pattern);
+  }
+
+  /**
+   * Returns the include patterns, in the order they were added.
+   *
+   * @return the include patterns
+   */
+  public List<String> getIncludes() {
+    return Collections.unmodifiableList(includes.patterns);
+  }
+
+  /**
+   * Returns the exclude patterns, in the order they were added.
+   *
+   * @return the exclude patterns
+   */
+  public List<String> getExcludes() {
+    return Collections.unmodifiableList(excludes.patterns);
+  }
+
+  /**
+   * Indicates whether the filter has no patterns, and so accepts every entry.
+   *
+   * @return true if no patterns were added; false otherwise
+   */
+  public boolean isEmpty() {
+    return includes.patterns.isEmpty() && excludes.patterns.isEmpty();
+  }
+
+  /**
+   * Indicates whether an entry is shown.
+   *
+   * @param parent    the path of the entry's parent relative to the root, empty or ending with '/'
+   * @param name      the entry's name
+   * @param directory whether the entry is a directory
+   * @return true if the entry is shown; false otherwise
+   */
+  public boolean accepts(CharSequence parent, String name, boolean directory) {
+    if (excludes.matches(parent, name, directory)) {
+      return false;
+    }
+    return directory || includes.patterns.isEmpty() || includes.matches(parent, name, false);
+  }
+
+  @Override
+  public String toString() {
+    return "PathFilter [includes=" + includes.patterns + ", excludes=" + excludes.patterns + "]";
+  }
+
+  /**
+   * A set of compiled patterns, with plain names and extensions split out.
+   */
+  private static class PatternSet {
+    private final List<String> patterns = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final List<String> suffixes = new ArrayList<>();
+    private final List<GlobPattern> globs = new ArrayList<>();
+
+    private void add(String pattern) {
+      GlobPattern glob = GlobPattern.compile(pattern);
+      patterns.add(pattern);
+
+      if (!glob.isAnchored() && !glob.isDirectoryOnly()) {
+        if (isLiteral(pattern, 0)) {
+          names.add(pattern);
+          return;
+        }
+        if (pattern.startsWith("*") && isLiteral(pattern, 1)) {
+          suffixes.add(pattern.substring(1));
+          return;
+        }
+      }
+      globs.add(glob);
+    }
+
+    private boolean matches(CharSequence parent, String name, boolean directory) {
+      if (names.contains(name)) {
+        return true;
+      }
+      for (String suffix : suffixes) {
+        if (name.endsWith(suffix)) return true;
+      }
+      for (GlobPattern glob : globs) {
+        if (glob.matches(parent, name, directory)) return true;
+      }
+      return false;
+    }
+
+    private static boolean isLiteral(String pattern, int start) {
+      for (int i = start; i < pattern.length(); i++) {
+        if ("*?[]{}\\/".indexOf(pattern.charAt(i)) >= 0) return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,201 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PathFilterTest {
+
+  @Test
+  void testNamePatternsMatchAtAnyDepth() {
+    GlobPattern pattern = GlobPattern.compile("*.class");
+
+    assertFalse(pattern.isAnchored());
+    assertTrue(pattern.matches("", "App.class", false));
+    assertTrue(pattern.matches("a/b/", "App.class", false));
+    assertFalse(pattern.matches("", "App.java", false));
+    assertFalse(pattern.matches("x.class/", "App", false));
+  }
+
+  @Test
+  void testPathPatterns() {
+    GlobPattern anyTarget = GlobPattern.compile("**/target");
+    assertTrue(anyTarget.isAnchored());
+    assertTrue(anyTarget.matches("", "target", true));
+    assertTrue(anyTarget.matches("a/b/", "target", true));
+    assertFalse(anyTarget.matches("a/", "targets", true));
+
+    GlobPattern rootOnly = GlobPattern.compile("/build");
+    assertTrue(rootOnly.matches("", "build", true));
+    assertFalse(rootOnly.matches("module/", "build", true));
+
+    GlobPattern moduleBuild = GlobPattern.compile("modules/*/build");
+    assertTrue(moduleBuild.matches("modules/core/", "build", true));
+    assertFalse(moduleBuild.matches("modules/core/sub/", "build", true));
+
+    GlobPattern deep = GlobPattern.compile("src/**");
+    assertTrue(deep.matches("src/a/b/", "c.txt", false));
+    assertFalse(deep.matches("lib/", "c.txt", false));
+  }
+
+  @Test
+  void testDirectoryOnlyPatterns() {
+    GlobPattern pattern = GlobPattern.compile("node_modules/");
+
+    assertTrue(pattern.isDirectoryOnly());
+    assertFalse(pattern.isAnchored());
+    assertTrue(pattern.matches("web/", "node_modules", true));
+    assertFalse(pattern.matches("web/", "node_modules", false));
+  }
+
+  @Test
+  void testClassesBracesAndEscapes() {
+    assertTrue(GlobPattern.compile("[a-c]?.txt").matches("", "bx.txt", false));
+    assertFalse(GlobPattern.compile("[!a-c]?.txt").matches("", "bx.txt", false));
+    assertTrue(GlobPattern.compile("*.{java,class}").matches("", "App.class", false));
+    assertFalse(GlobPattern.compile("*.{java,class}").matches("", "App.jar", false));
+    assertTrue(GlobPattern.compile("\\*.txt").matches("", "*.txt", false));
+    assertFalse(GlobPattern.compile("\\*.txt").matches("", "a.txt", false));
+  }
+
+  @Test
+  void testMalformedPatterns() {
+    assertThrows(IllegalArgumentException.class, () -> GlobPattern.compile(""));
+    assertThrows(IllegalArgumentException.class, () -> GlobPattern.compile("/"));
+    assertThrows(IllegalArgumentException.class, () -> GlobPattern.compile("[abc"));
+    assertThrows(IllegalArgumentException.class, () -> GlobPattern.compile("{a,b"));
+    assertThrows(IllegalArgumentException.class, () -> GlobPattern.compile("a\\"));
+  }
+
+  @Test
+  void testMatchesJavaGlobOnRandomPaths() {
+    // Anchored patterns without "**/" or trailing '/' should agree with the JDK's glob syntax
+    Random random = new Random(3);
+    String[] patterns = {"*", "a*", "*b", "a?c", "*/*", "a*/b*", "**", "**c", "[ab]*", "[!a]*/?", "{a,bc}*/c"};
+    for (String pattern : patterns) {
+      GlobPattern glob = GlobPattern.compile("/" + pattern);
+      PathMatcher jdk = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+      for (int i = 0; i < 2000; i++) {
+        StringBuilder parent = new StringBuilder();
+        int segments = random.nextInt(3);
+        for (int s = 0; s < segments; s++) {
+          parent.append(randomName(random)).append('/');
+        }
+        String name = randomName(random);
+
+        boolean expected = jdk.matches(Path.of(parent + name));
+        assertEquals(expected, glob.matches(parent, name, false), pattern + " vs " + parent + name);
+      }
+    }
+  }
+
+  @Test
+  void testIncludesOnlyApplyToFiles() {
+    PathFilter filter = new PathFilter();
+    filter.include("*.java");
+
+    assertTrue(filter.accepts("", "App.java", false));
+    assertFalse(filter.accepts("", "App.class", false));
+    assertTrue(filter.accepts("", "src", true));
+  }
+
+  @Test
+  void testExcludesWinOverIncludes() {
+    PathFilter filter = new PathFilter();
+    filter.include("*.java");
+    filter.exclude("**/generated/*");
+    filter.exclude("build");
+
+    assertTrue(filter.accepts("src/", "App.java", false));
+    assertFalse(filter.accepts("src/generated/", "R.java", false));
+    assertFalse(filter.accepts("", "build", true));
+    assertFalse(filter.accepts("module/", "build", true));
+    assertEquals(List.of("*.java"), filter.getIncludes());
+    assertEquals(List.of("**/generated/*", "build"), filter.getExcludes());
+  }
+
+  @Test
+  void testExcludedDirectoriesAreNeverListed(@TempDir File tempDir) {
+    // root/
+    //  app/
+    //      build/
+    //          out.class
+    //      Main.java
+    //  node_modules/
+    //      lib/
+    //          index.js
+    //  README.md
+    Path root = tempDir.toPath();
+
+    for (int mode = 0; mode < 3; mode++) {
+      FakeDirectoryLister lister = new FakeDirectoryLister();
+      lister.addDirectory(root);
+      lister.addDirectory(root.resolve("app"));
+      lister.addDirectory(root.resolve("app/build"));
+      lister.addFile(root.resolve("app/build/out.class"));
+      lister.addFile(root.resolve("app/Main.java"));
+      lister.addDirectory(root.resolve("node_modules"));
+      lister.addDirectory(root.resolve("node_modules/lib"));
+      lister.addFile(root.resolve("node_modules/lib/index.js"));
+      lister.addFile(root.resolve("README.md"));
+
+      TruffulaOptions options = new TruffulaOptions(tempDir, false, false);
+      options.setIterative(mode == 1);
+      options.setParallelism(mode == 2 ? 4 : 1);
+      options.getPathFilter().exclude("build/");
+      options.getPathFilter().exclude("node_modules");
+
+      String output = print(options, lister);
+
+      String nl = System.lineSeparator();
+      assertEquals(tempDir.getName() + "/" + nl + "   app/" + nl + "      Main.java" + nl + "   README.md" + nl,
+          output, "mode=" + mode);
+      assertEquals(Set.of(root, root.resolve("app")), lister.getListedDirectories(), "mode=" + mode);
+    }
+  }
+
+  @Test
+  void testPatternFlags(@TempDir File tempDir) throws FileNotFoundException {
+    String[] args = {"-I", "build|node_modules", "-P", "*.java", "-I", "*.class", tempDir.getAbsolutePath()};
+
+    TruffulaOptions options = new TruffulaOptions(args);
+
+    assertEquals(List.of("*.java"), options.getPathFilter().getIncludes());
+    assertEquals(List.of("build", "node_modules", "*.class"), options.getPathFilter().getExcludes());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-I", tempDir.getAbsolutePath()});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-I", "[oops", tempDir.getAbsolutePath()});
+    });
+  }
+
+  private static String randomName(Random random) {
+    StringBuilder name = new StringBuilder();
+    int length = 1 + random.nextInt(3);
+    for (int i = 0; i < length; i++) {
+      name.append((char) ('a' + random.nextInt(3)));
+    }
+    return name.toString();
+  }
+
+  private static String print(TruffulaOptions options, DirectoryLister lister) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos), List.of(ConsoleColor.WHITE), lister).printTree();
+    return baos.toString().replaceAll("\033\\[[0-9;]*m", "");
+  }
+}
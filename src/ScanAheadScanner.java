@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A DirectoryScanner that lists directories in the background, ahead of the walk.
+ *
+ * Whenever the walk receives a directory's children, its child directories are
+ * queued for listing, since the walk will ask for each of them next. Background
+ * listings queue their own child directories too. Either way, no more than
+ * lookahead listings wait to be picked up at once, so that deep trees keep the
+ * workers busy without the scan racing through the whole tree, and a directory
+ * with 100,000 subdirectories doesn't hold 100,000 listings in memory. Child
+ * directories the walk couldn't queue yet are queued as it picks up listings,
+ * in the order it will ask for them.
+ *
+ * The walk still receives directories one at a time in its own order, so the
+ * output is exactly the same as with a SequentialScanner. Subclasses only decide
+ * where the background listings run.
+ *
+ * When the walk ends early, for instance because the output it was printing to
+ * was closed, close() cancels the queued listings, and background listings that
+ * are already running neither queue more nor start listing after that.
+ */
+public abstract class ScanAheadScanner implements DirectoryScanner {
+  /**
+   * The lister used to read each directory.
+   */
+  private final DirectoryLister lister;
+
+  /**
+   * The options that decide which entries are listed and how deep.
+   */
+  private final TruffulaOptions options;
+
+  /**
+   * Whether hidden files/folders are included in listings.
+   */
+  private final boolean showHidden;
+
+  /**
+   * The most listings that may be queued by other background listings.
+   */
+  private final int lookahead;
+
+  /**
+   * The order entries are sorted in before their names, or null.
+   */
+  private final Comparator<TreeEntry> sortOrder;
+
+  /**
+   * Listings that have been started but not yet handed to the walk.
+   */
+  private final ConcurrentHashMap<Path, Future<List<TreeEntry>>> pending = new ConcurrentHashMap<>();
+
+  /**
+   * The child directories of the directories the walk is in that were not
+   * queued yet, the innermost directory's on top. Only the walk uses it.
+   */
+  private final Deque<Upcoming> upcoming = new ArrayDeque<>();
+
+  /**
+   * Set by close(), so that background listings stop queueing and listing.
+   */
+  private volatile boolean closed;
+
+  /**
+   * Constructs a ScanAheadScanner.
+   *
+   * @param lister    the lister used to read each directory
+   * @param options   the options that decide which entries are listed and how deep
+   * @param lookahead the most listings that may be queued by other background listings
+   */
+  protected ScanAheadScanner(DirectoryLister lister, TruffulaOptions options, int lookahead) {
+    this.lister = lister;
+    this.options = options;
+    this.showHidden = options.isShowHidden();
+    this.lookahead = lookahead;
+    this.sortOrder = options.getSortOrder();
+  }
+
+  /**
+   * Starts a listing in the background.
+   *
+   * @param listing the listing to run
+   * @return a future for the listing's result
+   */
+  protected abstract Future<List<TreeEntry>> submit(Callable<List<TreeEntry>> listing);
+
+  @Override
+  public List<TreeEntry> children(Path directory, int depth) throws IOException {
+    reach(directory, depth);
+    Future<List<TreeEntry>> listing = pending.remove(directory);
+    List<TreeEntry> children = listing == null
+        ? SequentialScanner.listSorted(lister, directory, showHidden, options.getEntryLimit(), sortOrder)
+        : await(listing);
+
+    if (options.isListedAtDepth(depth + 1)) {
+      List<Path> directories = new ArrayList<>();
+      for (TreeEntry child : children) {
+        if (child.isDirectory()) {
+          directories.add(child.getPath());
+        }
+      }
+      if (!directories.isEmpty()) {
+        upcoming.push(new Upcoming(directories, depth + 1));
+      }
+    }
+    queueUpcoming();
+    return children;
+  }
+
+  /**
+   * Cancels every listing that has not been handed to the walk yet.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    upcoming.clear();
+    for (Future<List<TreeEntry>> listing : pending.values()) {
+      listing.cancel(true);
+    }
+    pending.clear();
+  }
+
+  /**
+   * Forgets the upcoming directories the walk has gone past on its way to a
+   * directory: those of deeper directories, which it has finished, and the
+   * directory's earlier siblings.
+   */
+  private void reach(Path directory, int depth) {
+    while (!upcoming.isEmpty() && upcoming.peek().depth > depth) {
+      upcoming.pop();
+    }
+    Upcoming siblings = upcoming.peek();
+    if (siblings != null && siblings.depth == depth) {
+      siblings.reach(directory);
+    }
+  }
+
+  /**
+   * Queues upcoming directories, the next one the walk will ask for first, until
+   * the lookahead is full.
+   */
+  private void queueUpcoming() {
+    while (!upcoming.isEmpty() && pending.size() < lookahead && !closed) {
+      Upcoming top = upcoming.peek();
+      if (top.queued == top.directories.size()) {
+        upcoming.pop();
+      } else {
+        prefetch(top.directories.get(top.queued++), top.depth);
+      }
+    }
+  }
+
+  /**
+   * Queues a directory for background listing unless it is already queued or
+   * the scanner has been closed.
+   */
+  private void prefetch(Path directory, int depth) {
+    if (closed) return;
+    pending.computeIfAbsent(directory, d -> submit(() -> scanAhead(d, depth)));
+  }
+
+  /**
+   * Lists a directory in the background and queues its child directories while
+   * there is room in the lookahead. Failures are wrapped so that every executor
+   * hands them back unchanged.
+   */
+  private List<TreeEntry> scanAhead(Path directory, int depth) {
+    if (closed) {
+      return List.of();
+    }
+
+    List<TreeEntry> children;
+    try {
+      children = SequentialScanner.listSorted(lister, directory, showHidden, options.getEntryLimit(), sortOrder);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    if (!options.isListedAtDepth(depth + 1)) {
+      return children;
+    }
+
+    for (TreeEntry child : children) {
+      if (pending.size() >= lookahead) break;
+      if (child.isDirectory()) {
+        prefetch(child.getPath(), depth + 1);
+      }
+    }
+    return children;
+  }
+
+  /**
+   * The child directories of one directory, in the order the walk will ask for
+   * them, with how far the walk and the queueing have got through them.
+   */
+  private static class Upcoming {
+    private final List<Path> directories;
+    private final int depth;
+    private int reached;
+    private int queued;
+
+    private Upcoming(List<Path> directories, int depth) {
+      this.directories = directories;
+      this.depth = depth;
+    }
+
+    /**
+     * Moves past a directory the walk has asked for, and the ones before it.
+     */
+    private void reach(Path directory) {
+      while (reached < directories.size() && !directories.get(reached).equals(directory)) {
+        reached++;
+      }
+      reached = Math.min(reached + 1, directories.size());
+      queued = Math.max(queued, reached);
+    }
+  }
+
+  /**
+   * Waits for a background listing and rethrows its failure on the walking thread.
+   */
+  private static List<TreeEntry> await(Future<List<TreeEntry>> listing) throws IOException {
+    try {
+      return listing.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a directory listing", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
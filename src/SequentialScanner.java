@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A DirectoryScanner that lists each directory on the calling thread, at the
+ * moment the walk asks for it.
+ */
+public class SequentialScanner implements DirectoryScanner {
+  /**
+   * The lister used to read each directory.
+   */
+  private final DirectoryLister lister;
+
+  /**
+   * Whether hidden files/folders are included in listings.
+   */
+  private final boolean showHidden;
+
+  /**
+   * How many entries of each directory are kept, or 0 for all of them.
+   */
+  private final int entryLimit;
+
+  /**
+   * The order entries are sorted in before their names, or null.
+   */
+  private final Comparator<TreeEntry> sortOrder;
+
+  /**
+   * Constructs a SequentialScanner.
+   *
+   * @param lister  the lister used to read each directory
+   * @param options the options that decide which entries are listed, how many, and in what order
+   */
+  public SequentialScanner(DirectoryLister lister, TruffulaOptions options) {
+    this.lister = lister;
+    this.showHidden = options.isShowHidden();
+    this.entryLimit = options.getEntryLimit();
+    this.sortOrder = options.getSortOrder();
+  }
+
+  @Override
+  public List<TreeEntry> children(Path directory, int depth) throws IOException {
+    return listSorted(lister, directory, showHidden, entryLimit, sortOrder);
+  }
+
+  @Override
+  public void close() {
+  }
+
+  /**
+   * Lists the visible children of a directory and sorts them alphabetically.
+   *
+   * @param lister     the lister used to read the directory
+   * @param directory  the directory to list
+   * @param showHidden whether hidden files/folders should be included
+   * @return the sorted children of the directory
+   * @throws IOException if the directory cannot be listed
+   */
+  static List<TreeEntry> listSorted(DirectoryLister lister, Path directory, boolean showHidden)
+      throws IOException {
+    return listSorted(lister, directory, showHidden, 0, null);
+  }
+
+  /**
+   * Lists the visible children of a directory and returns the first limit of them
+   * in sorted order, followed by a MoreEntries for the rest if there are any.
+   * Entries are sorted by sortOrder, then alphabetically (see
+   * AlphabeticalFileSorter.sort(List, Comparator)).
+   *
+   * The listing streams through a heap that holds at most limit entries, with the
+   * one that sorts last on top, so the directory is never held in full: this takes
+   * O(n log limit) time and O(limit) memory for a directory of n entries.
+   *
+   * @param lister     the lister used to read the directory
+   * @param directory  the directory to list
+   * @param showHidden whether hidden files/folders should be included
+   * @param limit      how many entries to keep, or 0 for all of them
+   * @param sortOrder  the order to sort by before the name, or null to sort by name only
+   * @return the first limit children of the directory, sorted, and a MoreEntries if any were left out
+   * @throws IOException if the directory cannot be listed
+   */
+  static List<TreeEntry> listSorted(DirectoryLister lister, Path directory, boolean showHidden, int limit,
+      Comparator<TreeEntry> sortOrder) throws IOException {
+    Comparator<TreeEntry> order = AlphabeticalFileSorter.entryOrder(sortOrder);
+    List<TreeEntry> children = new ArrayList<>();
+    PriorityQueue<TreeEntry> first = limit > 0 ? new PriorityQueue<>(order.reversed()) : null;
+    long listed = 0;
+
+    TreeEvents.DirectoryScan scan = new TreeEvents.DirectoryScan();
+    scan.begin();
+    try (DirectoryStream<TreeEntry> stream = lister.list(directory, showHidden)) {
+      for (TreeEntry entry : stream) {
+        listed++;
+        if (first == null) {
+          children.add(entry);
+        } else if (first.size() < limit) {
+          first.add(entry);
+        } else if (order.compare(entry, first.peek()) < 0) {
+          first.poll();
+          first.add(entry);
+        }
+      }
+    } catch (DirectoryIteratorException e) {
+      throw e.getCause();
+    }
+    scan.end();
+    if (scan.shouldCommit()) {
+      scan.directory = directory.toString();
+      scan.entries = (int) Math.min(listed, Integer.MAX_VALUE);
+      scan.commit();
+    }
+
+    if (first == null) {
+      return AlphabeticalFileSorter.sort(children, sortOrder);
+    }
+    children.addAll(first);
+    AlphabeticalFileSorter.sort(children, sortOrder);
+    if (listed > limit) {
+      children.add(new MoreEntries(directory, listed - limit));
+    }
+    return children;
+  }
+}
@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A DirectoryLister that adds a fixed delay to every listing of another lister, for tests.
+ *
+ * This stands in for a high-latency filesystem (such as a network mount) so the
+ * effect of listing directories in the background can be observed locally. It
+ * counts how many listings are waiting out their delay at the same time.
+ */
+public class SlowDirectoryLister implements DirectoryLister {
+  private final DirectoryLister delegate;
+  private final long latencyMillis;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  /**
+   * Constructs a SlowDirectoryLister.
+   *
+   * @param delegate      the lister that does the actual listing
+   * @param latencyMillis the delay added to every listing, in milliseconds
+   */
+  public SlowDirectoryLister(DirectoryLister delegate, long latencyMillis) {
+    this.delegate = delegate;
+    this.latencyMillis = latencyMillis;
+  }
+
+  /**
+   * Returns the most listings that have been in progress at the same time.
+   *
+   * @return the highest number of concurrent listings seen
+   */
+  public int getMaxInFlight() {
+    return maxInFlight.get();
+  }
+
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    try {
+      Thread.sleep(latencyMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while listing " + directory);
+    } finally {
+      inFlight.decrementAndGet();
+    }
+    return delegate.list(directory, showHidden);
+  }
+}
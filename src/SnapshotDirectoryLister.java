@@ -0,0 +1,401 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A DirectoryLister that reuses the listings saved by an earlier run for every
+ * directory whose modification time hasn't changed since.
+ *
+ * Adding, removing or renaming an entry updates its directory's modification
+ * time, so a directory with the same mtime as in the snapshot still has the same
+ * entries, and costs one stat instead of a listing. Directories whose mtime
+ * changed are listed again.
+ *
+ * The snapshot holds, for every directory listed in a run, its path relative to
+ * the root, its mtime, and the name and type of each child; it is gzipped and
+ * replaced atomically by save(). Sizes and times are not saved: writing to or
+ * touching a file doesn't change its directory's mtime, so they could be stale
+ * while the listing is still current. A lister that needs them, to add up sizes
+ * or to sort by size or time, reads each reused entry's attributes again, which
+ * still spares the listing itself. A missing,
+ * unreadable, or mismatched snapshot (another root or another hidden-files
+ * setting) is ignored, and the run is a cold scan.
+ *
+ * A directory modified within RACY_NANOS of being listed is not saved: a second
+ * change in the same clock tick would leave its mtime unchanged. Changes that
+ * don't touch the directory's mtime, such as a file's DOS hidden attribute, are
+ * not picked up.
+ */
+public class SnapshotDirectoryLister implements DirectoryLister {
+
+  /**
+   * Identifies a snapshot file, and its format version.
+   */
+  private static final int MAGIC = 0x54524653;
+  private static final int VERSION = 5;
+
+  /**
+   * How recently a directory may have changed and still be saved.
+   */
+  static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  /**
+   * The lister that reads directories that changed.
+   */
+  private final DirectoryLister lister;
+
+  /**
+   * The root of the tree, which the saved paths are relative to.
+   */
+  private final Path root;
+
+  /**
+   * The file the snapshot is loaded from and saved to.
+   */
+  private final Path file;
+
+  /**
+   * Whether reused listings read the attributes of their entries again.
+   */
+  private final boolean readsAttributes;
+
+  /**
+   * The listings loaded from the snapshot, by relative path.
+   */
+  private Map<String, Listing> previous = new HashMap<>();
+
+  /**
+   * The listings of this run, by relative path.
+   */
+  private final Map<String, Listing> current = new ConcurrentHashMap<>();
+
+  /**
+   * Whether hidden files/folders are included in the listings of this run.
+   */
+  private boolean showHidden;
+
+  private final AtomicInteger reused = new AtomicInteger();
+  private final AtomicInteger listed = new AtomicInteger();
+
+  /**
+   * Constructs a SnapshotDirectoryLister. Call load() before the walk and save() after it.
+   *
+   * @param lister the lister that reads directories that changed
+   * @param root   the root of the tree
+   * @param file   the snapshot file
+   */
+  public SnapshotDirectoryLister(DirectoryLister lister, Path root, Path file) {
+    this(lister, root, file, false);
+  }
+
+  /**
+   * Constructs a SnapshotDirectoryLister. Call load() before the walk and save() after it.
+   *
+   * @param lister          the lister that reads directories that changed
+   * @param root            the root of the tree
+   * @param file            the snapshot file
+   * @param readsAttributes whether entries of reused listings have their size and
+   *                        modification time read again, for one attribute read each
+   */
+  public SnapshotDirectoryLister(DirectoryLister lister, Path root, Path file, boolean readsAttributes) {
+    this.lister = lister;
+    this.root = root;
+    this.file = file;
+    this.readsAttributes = readsAttributes;
+  }
+
+  /**
+   * Loads the snapshot saved by an earlier run, if there is a usable one.
+   *
+   * @param showHidden whether hidden files/folders will be listed in this run
+   * @return true if a snapshot was loaded; false if the run is a cold scan
+   */
+  public boolean load(boolean showHidden) {
+    this.showHidden = showHidden;
+    previous = new HashMap<>();
+    current.clear();
+    reused.set(0);
+    listed.set(0);
+    if (!Files.isRegularFile(file)) {
+      return false;
+    }
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) return false;
+      if (!in.readUTF().equals(root.toAbsolutePath().toString())) return false;
+      if (in.readBoolean() != showHidden) return false;
+
+      Map<String, Listing> listings = new HashMap<>();
+      int directories = in.readInt();
+      for (int d = 0; d < directories; d++) {
+        String path = in.readUTF();
+        long mtime = in.readLong();
+        int count = in.readInt();
+        String[] names = new String[count];
+        boolean[] isDirectory = new boolean[count];
+        for (int i = 0; i < count; i++) {
+          names[i] = in.readUTF();
+          isDirectory[i] = in.readBoolean();
+        }
+        listings.put(path, new Listing(mtime, names, isDirectory, null, null, false));
+      }
+      previous = listings;
+      return true;
+    } catch (IOException | RuntimeException e) {
+      // A damaged snapshot only costs a cold scan
+      previous = new HashMap<>();
+      return false;
+    }
+  }
+
+  /**
+   * Saves the listings of this run, replacing the snapshot file.
+   *
+   * @throws IOException if the snapshot can't be written
+   */
+  public void save() throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(root.toAbsolutePath().toString());
+        out.writeBoolean(showHidden);
+
+        List<Map.Entry<String, Listing>> saved = new ArrayList<>();
+        for (Map.Entry<String, Listing> entry : current.entrySet()) {
+          if (!entry.getValue().racy) {
+            saved.add(entry);
+          }
+        }
+
+        out.writeInt(saved.size());
+        for (Map.Entry<String, Listing> entry : saved) {
+          Listing listing = entry.getValue();
+          out.writeUTF(entry.getKey());
+          out.writeLong(listing.mtime);
+          out.writeInt(listing.names.length);
+          for (int i = 0; i < listing.names.length; i++) {
+            out.writeUTF(listing.names[i]);
+            out.writeBoolean(listing.isDirectory[i]);
+          }
+        }
+      }
+
+      try {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Returns how many directories were served from the snapshot in this run.
+   *
+   * @return the number of reused listings
+   */
+  public int getReusedListings() {
+    return reused.get();
+  }
+
+  /**
+   * Returns how many directories were listed from the filesystem in this run.
+   *
+   * @return the number of fresh listings
+   */
+  public int getFreshListings() {
+    return listed.get();
+  }
+
+  /**
+   * Returns a lister over the loaded snapshot itself: every directory is listed as
+   * it was when the snapshot was saved, whatever it holds now.
+   *
+   * @return the saved listings, as a DirectoryLister that throws IOException for
+   *         directories the snapshot doesn't have
+   */
+  public DirectoryLister saved() {
+    return (directory, showHidden) -> {
+      Listing listing = previous.get(FilteringDirectoryLister.relativePath(root, directory));
+      if (listing == null) {
+        throw new IOException("Not in the snapshot: " + directory);
+      }
+      return listing.stream(directory, false);
+    };
+  }
+
+  /**
+   * Indicates whether a directory still has the modification time it had when the
+   * snapshot was saved, and so still has the same entries.
+   *
+   * @param directory a directory of the tree
+   * @return true if its saved listing is current; false otherwise
+   */
+  public boolean isUnchanged(Path directory) {
+    Listing listing = previous.get(FilteringDirectoryLister.relativePath(root, directory));
+    if (listing == null) {
+      return false;
+    }
+    try {
+      return Files.getLastModifiedTime(directory).to(TimeUnit.NANOSECONDS) == listing.mtime;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    String path = FilteringDirectoryLister.relativePath(root, directory);
+    long now = System.currentTimeMillis();
+    long mtime = Files.getLastModifiedTime(directory).to(TimeUnit.NANOSECONDS);
+
+    Listing listing = previous.get(path);
+    if (listing != null && listing.mtime == mtime) {
+      reused.incrementAndGet();
+      current.put(path, listing);
+      return listing.stream(directory, readsAttributes);
+    }
+
+    boolean racy = TimeUnit.MILLISECONDS.toNanos(now) - mtime < RACY_NANOS;
+    listing = read(directory, showHidden, mtime, racy);
+    listed.incrementAndGet();
+    current.put(path, listing);
+    return listing.stream(directory, false);
+  }
+
+  private Listing read(Path directory, boolean showHidden, long mtime, boolean racy) throws IOException {
+    List<TreeEntry> entries = new ArrayList<>();
+    try (DirectoryStream<TreeEntry> stream = lister.list(directory, showHidden)) {
+      for (TreeEntry entry : stream) {
+        entries.add(entry);
+      }
+    } catch (DirectoryIteratorException e) {
+      throw e.getCause();
+    }
+
+    String[] names = new String[entries.size()];
+    boolean[] isDirectory = new boolean[entries.size()];
+    long[] sizes = new long[entries.size()];
+    long[] times = new long[entries.size()];
+    for (int i = 0; i < names.length; i++) {
+      TreeEntry entry = entries.get(i);
+      names[i] = entry.getName();
+      isDirectory[i] = entry.isDirectory();
+      sizes[i] = entry.getSize();
+      times[i] = entry.getLastModified();
+    }
+    return new Listing(mtime, names, isDirectory, sizes, times, racy);
+  }
+
+  /**
+   * Returns a saved entry with its current size and modification time. An entry
+   * that can't be read any more keeps its name and type, with neither.
+   */
+  private static TreeEntry readEntry(Path path, String name, boolean isDirectory) {
+    try {
+      TreeMetrics.global().attributesRead();
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return new TreeEntry(path, name, isDirectory, attributes.size(), attributes.lastModifiedTime().toMillis());
+    } catch (IOException e) {
+      return new TreeEntry(path, name, isDirectory);
+    }
+  }
+
+  /**
+   * The children of one directory, as of its modification time.
+   */
+  private static class Listing {
+    private final long mtime;
+    private final String[] names;
+    private final boolean[] isDirectory;
+
+    /**
+     * The sizes and times the children were listed with, or null for a listing
+     * loaded from the snapshot, which doesn't save them.
+     */
+    private final long[] sizes;
+    private final long[] times;
+
+    /**
+     * Whether the directory changed too close to when it was listed for its mtime
+     * to be trusted next time.
+     */
+    private final boolean racy;
+
+    private Listing(long mtime, String[] names, boolean[] isDirectory, long[] sizes, long[] times,
+        boolean racy) {
+      this.mtime = mtime;
+      this.names = names;
+      this.isDirectory = isDirectory;
+      this.sizes = sizes;
+      this.times = times;
+      this.racy = racy;
+    }
+
+    /**
+     * Streams the entries, with the sizes and times they were listed with if
+     * they are known, or with their current ones if readAttributes is set.
+     */
+    private DirectoryStream<TreeEntry> stream(Path directory, boolean readAttributes) {
+      return new DirectoryStream<TreeEntry>() {
+        @Override
+        public Iterator<TreeEntry> iterator() {
+          return new Iterator<TreeEntry>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+              return next < names.length;
+            }
+
+            @Override
+            public TreeEntry next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              int i = next++;
+              Path path = directory.resolve(names[i]);
+              if (readAttributes) {
+                return readEntry(path, names[i], isDirectory[i]);
+              }
+              if (sizes == null) {
+                return new TreeEntry(path, names[i], isDirectory[i]);
+              }
+              return new TreeEntry(path, names[i], isDirectory[i], sizes[i], times[i]);
+            }
+          };
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+  }
+}
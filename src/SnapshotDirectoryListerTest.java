@@ -0,0 +1,250 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotDirectoryListerTest {
+
+  @Test
+  void testUnchangedTreeIsNotListedAgain(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    ageDirectories(root);
+
+    Set<Path> listed = ConcurrentHashMap.newKeySet();
+    String first = print(root, snapshot, listed, false);
+    assertEquals(4, listed.size());
+    assertTrue(Files.exists(snapshot));
+
+    listed.clear();
+    String second = print(root, snapshot, listed, false);
+    assertEquals(Set.of(), listed);
+    assertEquals(first, second);
+    assertEquals(coldScan(root), second);
+  }
+
+  @Test
+  void testAddsDeletesAndRenamesAreSeen(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    ageDirectories(root);
+    Set<Path> listed = ConcurrentHashMap.newKeySet();
+    print(root, snapshot, listed, false);
+
+    // Add: only a/b changes
+    Files.createFile(root.resolve("a/b/new.txt"));
+    listed.clear();
+    assertEquals(coldScan(root), print(root, snapshot, listed, false));
+    assertEquals(Set.of(root.resolve("a/b")), listed);
+
+    // Delete: only c changes (a/b changed too recently to have been saved, so it is listed again)
+    Files.delete(root.resolve("c/z.txt"));
+    listed.clear();
+    assertEquals(coldScan(root), print(root, snapshot, listed, false));
+    assertEquals(Set.of(root.resolve("a/b"), root.resolve("c")), listed);
+
+    // Rename a file in a, and move c to d: the root changes, and d is new
+    ageDirectories(root);
+    print(root, snapshot, listed, false);
+    Files.move(root.resolve("a/x.txt"), root.resolve("a/X2.txt"));
+    Files.move(root.resolve("c"), root.resolve("d"));
+    listed.clear();
+    String output = print(root, snapshot, listed, false);
+    assertEquals(coldScan(root), output);
+    assertEquals(Set.of(root, root.resolve("a"), root.resolve("d")), listed);
+    assertTrue(output.contains("X2.txt") && !output.contains("x.txt") && output.contains("d/"));
+  }
+
+  @Test
+  void testSnapshotIsParallelAndIterativeSafe(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    ageDirectories(root);
+    print(root, snapshot, ConcurrentHashMap.newKeySet(), false);
+
+    for (int mode = 0; mode < 2; mode++) {
+      TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+      options.setSnapshotFile(snapshot);
+      options.setIterative(mode == 0);
+      options.setParallelism(mode == 1 ? 4 : 1);
+
+      Set<Path> listed = ConcurrentHashMap.newKeySet();
+      assertEquals(coldScan(root), print(options, listed));
+      assertEquals(Set.of(), listed, "mode=" + mode);
+    }
+  }
+
+  @Test
+  void testReusedListingsSortByCurrentSizesAndTimes(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    Files.write(root.resolve("a/x.txt"), new byte[10]);
+    Files.setLastModifiedTime(root.resolve("top.txt"), FileTime.fromMillis(System.currentTimeMillis()));
+    ageDirectories(root);
+    print(root, snapshot, ConcurrentHashMap.newKeySet(), false);
+
+    // Saved by a run sorted by name, then reused by runs sorted by time and size
+    for (SortKey key : List.of(SortKey.TIME, SortKey.SIZE)) {
+      TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+      options.setSnapshotFile(snapshot);
+      options.setSortKey(key);
+      options.setDirectoriesFirst(key == SortKey.SIZE);
+
+      Set<Path> listed = ConcurrentHashMap.newKeySet();
+      String output = print(options, listed);
+      assertEquals(Set.of(), listed, key.name());
+      options.setSnapshotFile(null);
+      assertEquals(print(options, ConcurrentHashMap.newKeySet()), output, key.name());
+    }
+
+    TruffulaOptions byTime = new TruffulaOptions(root.toFile(), false, false);
+    byTime.setSnapshotFile(snapshot);
+    byTime.setSortKey(SortKey.TIME);
+    String output = print(byTime, ConcurrentHashMap.newKeySet());
+    assertTrue(output.indexOf("top.txt") < output.indexOf("a/"), output);
+
+    // Touching or growing a file leaves its directory's listing reused, but reorders it
+    Files.setLastModifiedTime(root.resolve("top.txt"), FileTime.fromMillis(0));
+    Set<Path> listed = ConcurrentHashMap.newKeySet();
+    output = print(byTime, listed);
+    assertEquals(Set.of(), listed);
+    assertTrue(output.indexOf("a/") < output.indexOf("top.txt"), output);
+
+    TruffulaOptions bySize = new TruffulaOptions(root.toFile(), false, false);
+    bySize.setSnapshotFile(snapshot);
+    bySize.setSortKey(SortKey.SIZE);
+    Files.write(root.resolve("top.txt"), new byte[20]);
+    listed.clear();
+    output = print(bySize, listed);
+    assertEquals(Set.of(), listed);
+    bySize.setSnapshotFile(null);
+    assertEquals(print(bySize, ConcurrentHashMap.newKeySet()), output);
+  }
+
+  @Test
+  void testAppendedFileIsSeenByDiskUsage(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    Files.write(root.resolve("a/b/y.txt"), new byte[1]);
+    ageDirectories(root);
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+    options.setSnapshotFile(snapshot);
+    options.setDiskUsage(true);
+    print(options, ConcurrentHashMap.newKeySet());
+
+    // Writing to a file leaves its directory's mtime alone, so a/b is reused
+    Files.write(root.resolve("a/b/y.txt"), new byte[110], StandardOpenOption.APPEND);
+    Set<Path> listed = ConcurrentHashMap.newKeySet();
+    String output = print(options, listed);
+    assertEquals(Set.of(), listed);
+    assertTrue(output.contains("b/ (111B, 1 file)"), output);
+
+    options.setSnapshotFile(null);
+    assertEquals(print(options, ConcurrentHashMap.newKeySet()), output);
+  }
+
+  @Test
+  void testHiddenSettingOrDamageForcesColdScan(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    ageDirectories(root);
+    Set<Path> listed = ConcurrentHashMap.newKeySet();
+    print(root, snapshot, listed, false);
+
+    // Saved without hidden files, so it can't be used to show them
+    listed.clear();
+    String withHidden = print(root, snapshot, listed, true);
+    assertEquals(4, listed.size());
+    assertTrue(withHidden.contains(".hidden"));
+
+    Files.write(snapshot, new byte[] {1, 2, 3});
+    listed.clear();
+    assertEquals(coldScan(root), print(root, snapshot, listed, false));
+    assertEquals(4, listed.size());
+  }
+
+  @Test
+  void testSnapshotFlag(@TempDir File tempDir) throws FileNotFoundException {
+    String[] args = {"-s", "tree.snapshot", tempDir.getAbsolutePath()};
+
+    TruffulaOptions options = new TruffulaOptions(args);
+
+    assertEquals(Path.of("tree.snapshot"), options.getSnapshotFile());
+  }
+
+  /**
+   * Creates:
+   *
+   * tree/
+   *  .hidden
+   *  a/
+   *      b/
+   *          y.txt
+   *      x.txt
+   *  c/
+   *      z.txt
+   *  top.txt
+   */
+  private static Path createTree(File tempDir) throws IOException {
+    Path root = tempDir.toPath().resolve("tree");
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createDirectories(root.resolve("c"));
+    for (String file : List.of(".hidden", "a/b/y.txt", "a/x.txt", "c/z.txt", "top.txt")) {
+      Files.createFile(root.resolve(file));
+    }
+    return root;
+  }
+
+  /**
+   * Moves every directory's mtime an hour back, so it is old enough to be saved.
+   */
+  private static void ageDirectories(Path root) throws IOException {
+    FileTime old = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        if (Files.isDirectory(path)) {
+          Files.setLastModifiedTime(path, old);
+        }
+      }
+    }
+  }
+
+  private static String print(Path root, Path snapshot, Set<Path> listed, boolean showHidden) {
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), showHidden, false);
+    options.setSnapshotFile(snapshot);
+    return print(options, listed);
+  }
+
+  private static String print(TruffulaOptions options, Set<Path> listed) {
+    DirectoryLister recording = (directory, showHidden) -> {
+      listed.add(directory);
+      return new NioDirectoryLister().list(directory, showHidden);
+    };
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos), List.of(ConsoleColor.WHITE), recording).printTree();
+    return baos.toString();
+  }
+
+  private static String coldScan(Path root) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(new TruffulaOptions(root.toFile(), false, false), new PrintStream(baos),
+        List.of(ConsoleColor.WHITE), new NioDirectoryLister()).printTree();
+    return baos.toString();
+  }
+}
@@ -0,0 +1,96 @@
+import java.util.Comparator;
+
+/**
+ * The keys the entries of a directory can be sorted by. Entries with equal keys
+ * are sorted by name, the way AlphabeticalFileSorter sorts them.
+ *
+ * Every key is read from the entry itself: sizes and modification times are
+ * the attributes its lister read while listing the directory, so comparing two
+ * entries never goes to the filesystem.
+ */
+public enum SortKey {
+  /**
+   * By name, ignoring case (the default).
+   */
+  NAME(null, false),
+
+  /**
+   * Largest first, like ls -S. Entries whose size wasn't read come last.
+   */
+  SIZE((a, b) -> Long.compare(b.getSize(), a.getSize()), true),
+
+  /**
+   * Most recently modified first, like ls -t. Entries whose time wasn't read come last.
+   */
+  TIME((a, b) -> Long.compare(b.getLastModified(), a.getLastModified()), true),
+
+  /**
+   * By extension, ignoring case, like ls -X. Names without an extension come first;
+   * a dot that starts the name doesn't begin an extension.
+   */
+  EXTENSION((a, b) -> compareExtensions(a.getName(), b.getName()), false);
+
+  /**
+   * Directories before files; entries of the same kind keep their order.
+   */
+  static final Comparator<TreeEntry> DIRECTORIES_FIRST =
+      (a, b) -> Boolean.compare(b.isDirectory(), a.isDirectory());
+
+  private final Comparator<TreeEntry> order;
+
+  private final boolean readsAttributes;
+
+  private SortKey(Comparator<TreeEntry> order, boolean readsAttributes) {
+    this.order = order;
+    this.readsAttributes = readsAttributes;
+  }
+
+  /**
+   * Returns the order of the key alone, without the name order that breaks ties.
+   *
+   * @return the comparator, or null for NAME
+   */
+  public Comparator<TreeEntry> getOrder() {
+    return order;
+  }
+
+  /**
+   * Indicates whether the key needs attributes beyond an entry's name and type,
+   * which only some listers read.
+   *
+   * @return true if the key is a size or a time; false otherwise
+   */
+  public boolean readsAttributes() {
+    return readsAttributes;
+  }
+
+  /**
+   * Compares the extensions of two names the way compareToIgnoreCase compares
+   * strings, without copying them out of the names.
+   */
+  static int compareExtensions(String a, String b) {
+    int i = extensionStart(a);
+    int j = extensionStart(b);
+    while (i < a.length() && j < b.length()) {
+      char c1 = a.charAt(i++);
+      char c2 = b.charAt(j++);
+      if (c1 != c2) {
+        c1 = Character.toLowerCase(Character.toUpperCase(c1));
+        c2 = Character.toLowerCase(Character.toUpperCase(c2));
+        if (c1 != c2) {
+          return c1 - c2;
+        }
+      }
+    }
+    return (a.length() - i) - (b.length() - j);
+  }
+
+  /**
+   * Returns the index just past the last dot of a name, or the name's length if
+   * it has no extension.
+   */
+  private static int extensionStart(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot > 0 ? dot + 1 : name.length();
+  }
+}
@@ -0,0 +1,210 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The entries of one directory, sorted on disk, for an iterative walk of a
+ * directory larger than its window.
+ *
+ * The directory is listed once. Every window-sized run of entries is sorted in
+ * memory and appended to a temporary file; the runs are then merged, handing
+ * out the entries in order a window at a time. Memory holds one run while the
+ * directory is listed, and one buffered entry per run while it is merged, so it
+ * grows with the window and the number of runs, never with the whole directory.
+ *
+ * Each entry is saved with its name, type, size and modification time; its path
+ * is the directory's path resolved against the name, as the listers build it.
+ * The file is deleted by close(), or once the last entry has been handed out.
+ */
+public final class SortedRuns implements AutoCloseable {
+
+  /**
+   * How much of each run is read from the file at a time while merging.
+   */
+  private static final int RUN_BUFFER_SIZE = 512;
+
+  private final Path directory;
+  private final Comparator<TreeEntry> order;
+  private final Path file;
+  private final FileChannel channel;
+  private final DataOutputStream out;
+
+  /**
+   * Where each run starts in the file.
+   */
+  private final List<Long> starts = new ArrayList<>();
+
+  /**
+   * The next entry of every run that hasn't run out, smallest first.
+   */
+  private PriorityQueue<Run> heads;
+
+  private boolean closed;
+
+  /**
+   * Creates the temporary file for a directory's runs.
+   *
+   * @param directory the directory the entries belong to
+   * @param order     the order the entries are handed out in
+   * @throws IOException if the file can't be created
+   */
+  public SortedRuns(Path directory, Comparator<TreeEntry> order) throws IOException {
+    this.directory = directory;
+    this.order = order;
+    this.file = Files.createTempFile("truffula", ".runs");
+    this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+  }
+
+  /**
+   * Sorts a run of entries and appends it to the file.
+   *
+   * @param run the entries, which are sorted in place
+   * @throws IOException if the run can't be written
+   */
+  public void add(List<TreeEntry> run) throws IOException {
+    run.sort(order);
+    out.flush();
+    starts.add(channel.position());
+    for (TreeEntry entry : run) {
+      out.writeUTF(entry.getName());
+      out.writeBoolean(entry.isDirectory());
+      out.writeLong(entry.getSize());
+      out.writeLong(entry.getLastModified());
+    }
+  }
+
+  /**
+   * Returns up to count of the next entries in order, or fewer once the runs
+   * run out, deleting the file then. The first call ends the writing of runs.
+   *
+   * @param count the most entries to return
+   * @return the entries, empty once every entry has been handed out
+   * @throws IOException if the file can't be read
+   */
+  public List<TreeEntry> next(int count) throws IOException {
+    if (heads == null) {
+      startMerge();
+    }
+
+    List<TreeEntry> entries = new ArrayList<>();
+    while (entries.size() < count && !heads.isEmpty()) {
+      Run run = heads.poll();
+      entries.add(run.head);
+      if (run.advance()) {
+        heads.add(run);
+      }
+    }
+    if (heads.isEmpty()) {
+      close();
+    }
+    return entries;
+  }
+
+  /**
+   * Deletes the file.
+   *
+   * @throws IOException if the file can't be closed or deleted
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    try {
+      channel.close();
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private void startMerge() throws IOException {
+    out.flush();
+    long end = channel.position();
+    heads = new PriorityQueue<>(Math.max(1, starts.size()), (a, b) -> order.compare(a.head, b.head));
+    for (int i = 0; i < starts.size(); i++) {
+      long runEnd = i + 1 < starts.size() ? starts.get(i + 1) : end;
+      Run run = new Run(starts.get(i), runEnd);
+      if (run.advance()) {
+        heads.add(run);
+      }
+    }
+  }
+
+  /**
+   * One run of the file, read from its own position.
+   */
+  private class Run {
+    private final DataInputStream in;
+    private TreeEntry head;
+
+    private Run(long start, long end) {
+      this.in = new DataInputStream(new BufferedInputStream(new RunStream(start, end), RUN_BUFFER_SIZE));
+    }
+
+    /**
+     * Reads the run's next entry into head.
+     *
+     * @return false if the run has run out
+     */
+    private boolean advance() throws IOException {
+      String name;
+      try {
+        name = in.readUTF();
+      } catch (EOFException e) {
+        head = null;
+        return false;
+      }
+      boolean isDirectory = in.readBoolean();
+      long size = in.readLong();
+      long lastModified = in.readLong();
+      head = new TreeEntry(directory.resolve(name), name, isDirectory, size, lastModified);
+      return true;
+    }
+  }
+
+  /**
+   * Reads a range of the file with positional reads, so the runs don't share a position.
+   */
+  private class RunStream extends InputStream {
+    private long position;
+    private final long end;
+
+    private RunStream(long start, long end) {
+      this.position = start;
+      this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (position >= end) {
+        return -1;
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position));
+      int read = channel.read(buffer, position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+}
@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Compares two trees and reports the entries that were added, removed, or
+ * turned from a file into a directory (or back).
+ *
+ * Both trees are walked together, one directory at a time. The sorted listings
+ * of a directory on each side are merged in a single pass on
+ * AlphabeticalFileSorter.ENTRY_ORDER, the order the tree is printed in, so
+ * changes come out in that order too. Only the listings of the open directories
+ * are held, so memory grows with the depth of the trees, not with their size.
+ * An added or removed directory is reported once, without walking its contents.
+ *
+ * The "before" tree is either another directory, or the snapshot saved by a run
+ * with -s. Against a snapshot, a directory whose modification time is unchanged
+ * still has the entries the snapshot saved, so it is not listed at all: only its
+ * subdirectories are visited. Directories the snapshot didn't save (because they
+ * changed while it was taken, or were below the maximum depth) are reported as
+ * not compared.
+ */
+public class TreeDiff {
+
+  /**
+   * The kinds of difference between the trees.
+   */
+  public enum Change {
+    /** The entry is only in the after tree. */
+    ADDED,
+    /** The entry is only in the before tree. */
+    REMOVED,
+    /** The entry is a file in one tree and a directory in the other. */
+    TYPE_CHANGED,
+    /** The directory is not in the snapshot, so its contents were not compared. */
+    NOT_COMPARED
+  }
+
+  /**
+   * Receives the differences as they are found.
+   */
+  public interface Listener {
+    /**
+     * Called for every difference, in the order the after tree is printed in.
+     *
+     * @param change   the kind of difference
+     * @param relative the path of the entry relative to the roots, with '/' separators
+     * @param entry    the entry in the after tree, or in the before tree if it was removed
+     */
+    void changed(Change change, String relative, TreeEntry entry);
+  }
+
+  private final DirectoryLister before;
+  private final Path beforeRoot;
+  private final DirectoryLister after;
+  private final Path afterRoot;
+  private final TruffulaOptions options;
+
+  /**
+   * The snapshot the before tree was loaded from, or null if it is a directory.
+   */
+  private final SnapshotDirectoryLister snapshot;
+
+  private int listings;
+  private int skipped;
+
+  /**
+   * Compares two directories.
+   *
+   * @param before     lists the before tree
+   * @param beforeRoot the root of the before tree
+   * @param after      lists the after tree
+   * @param afterRoot  the root of the after tree
+   * @param options    the options that decide which entries are listed and how deep
+   */
+  public TreeDiff(DirectoryLister before, Path beforeRoot, DirectoryLister after, Path afterRoot,
+      TruffulaOptions options) {
+    this(before, beforeRoot, after, afterRoot, options, null);
+  }
+
+  private TreeDiff(DirectoryLister before, Path beforeRoot, DirectoryLister after, Path afterRoot,
+      TruffulaOptions options, SnapshotDirectoryLister snapshot) {
+    this.before = before;
+    this.beforeRoot = beforeRoot;
+    this.after = after;
+    this.afterRoot = afterRoot;
+    this.options = options;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Compares the options' root with the directory or snapshot file they name with -d.
+   *
+   * @param options the options, with getDiffAgainst() set
+   * @return the comparison
+   * @throws IllegalArgumentException if the file is not a usable snapshot of the root
+   */
+  public static TreeDiff fromOptions(TruffulaOptions options) {
+    Path root = options.getRootPath();
+    Path other = options.getDiffAgainst();
+    DirectoryLister lister = TruffulaPrinter.defaultLister(options);
+    if (!Files.isDirectory(other)) {
+      return againstSnapshot(lister, root, other, options);
+    }
+    return new TreeDiff(TruffulaPrinter.filteredLister(lister, other, options), other,
+        TruffulaPrinter.filteredLister(lister, root, options), root, options);
+  }
+
+  /**
+   * Compares a directory with the snapshot saved for it by an earlier run.
+   *
+   * @param lister   lists the directory as it is now
+   * @param root     the directory
+   * @param file     the snapshot file
+   * @param options  the options that decide which entries are listed and how deep
+   * @return the comparison
+   * @throws IllegalArgumentException if the file is not a usable snapshot of the directory
+   */
+  public static TreeDiff againstSnapshot(DirectoryLister lister, Path root, Path file, TruffulaOptions options) {
+    SnapshotDirectoryLister snapshot = new SnapshotDirectoryLister(lister, root, file);
+    if (!snapshot.load(options.isShowHidden())) {
+      throw new IllegalArgumentException("Not a snapshot of this directory.");
+    }
+    return new TreeDiff(TruffulaPrinter.filteredLister(snapshot.saved(), root, options), root,
+        TruffulaPrinter.filteredLister(lister, root, options), root, options, snapshot);
+  }
+
+  /**
+   * Walks both trees and reports every difference to the listener.
+   *
+   * @param listener receives the differences
+   * @return the number of differences
+   * @throws UncheckedIOException if a directory can't be listed
+   */
+  public int run(Listener listener) {
+    Comparator<TreeEntry> order = AlphabeticalFileSorter.ENTRY_ORDER;
+    int changes = 0;
+    listings = 0;
+    skipped = 0;
+
+    Deque<Frame> stack = new ArrayDeque<>();
+    stack.push(open(beforeRoot, afterRoot, "", 0));
+
+    while (!stack.isEmpty()) {
+      Frame frame = stack.peek();
+      if (frame.notCompared) {
+        stack.pop();
+        if (frame.depth > 0) {
+          listener.changed(Change.NOT_COMPARED, frame.relative, frame.entry);
+          changes++;
+        }
+        continue;
+      }
+
+      TreeEntry left = frame.i < frame.before.size() ? frame.before.get(frame.i) : null;
+      TreeEntry right = frame.j < frame.after.size() ? frame.after.get(frame.j) : null;
+      if (left == null && right == null) {
+        stack.pop();
+        continue;
+      }
+
+      int compare = left == null ? 1 : right == null ? -1 : order.compare(left, right);
+      if (compare < 0) {
+        frame.i++;
+        listener.changed(Change.REMOVED, frame.relative + name(left), left);
+        changes++;
+      } else if (compare > 0) {
+        frame.j++;
+        listener.changed(Change.ADDED, frame.relative + name(right), right);
+        changes++;
+      } else {
+        frame.i++;
+        frame.j++;
+        if (left.isDirectory() != right.isDirectory()) {
+          listener.changed(Change.TYPE_CHANGED, frame.relative + name(right), right);
+          changes++;
+        } else if (right.isDirectory() && options.isListedAtDepth(frame.depth + 1)) {
+          Frame child = open(left.getPath(), right.getPath(), frame.relative + name(right), frame.depth + 1);
+          child.entry = right;
+          stack.push(child);
+        }
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Returns how many directories were listed by the last run; a directory listed
+   * on both sides counts once.
+   *
+   * @return the number of listings
+   */
+  public int getListings() {
+    return listings;
+  }
+
+  /**
+   * Returns how many directories the last run didn't list because their snapshot
+   * listing was still current.
+   *
+   * @return the number of skipped directories
+   */
+  public int getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Prints each difference on its own line: "+ " for added, "- " for removed,
+   * "~ " for changed type and "? " for not compared, in green, red, yellow and
+   * cyan if color is used.
+   *
+   * @param out      the printer to print to
+   * @param useColor whether each kind of difference is printed in its own color
+   * @return a listener that prints the differences
+   */
+  public static Listener printer(ColorPrinter out, boolean useColor) {
+    return (change, relative, entry) -> {
+      switch (change) {
+        case ADDED:
+          out.setCurrentColor(useColor ? ConsoleColor.GREEN : ConsoleColor.WHITE);
+          out.println("+ " + relative);
+          break;
+        case REMOVED:
+          out.setCurrentColor(useColor ? ConsoleColor.RED : ConsoleColor.WHITE);
+          out.println("- " + relative);
+          break;
+        case TYPE_CHANGED:
+          out.setCurrentColor(useColor ? ConsoleColor.YELLOW : ConsoleColor.WHITE);
+          out.println("~ " + relative + (entry.isDirectory() ? " (was a file)" : " (was a directory)"));
+          break;
+        default:
+          out.setCurrentColor(useColor ? ConsoleColor.CYAN : ConsoleColor.WHITE);
+          out.println("? " + relative + " (not in the snapshot)");
+      }
+    };
+  }
+
+  /**
+   * Lists a directory on both sides. Against a snapshot, an unchanged directory is
+   * only read from the snapshot, for both sides.
+   */
+  private Frame open(Path beforeDirectory, Path afterDirectory, String relative, int depth) {
+    Frame frame = new Frame(relative, depth);
+    boolean showHidden = options.isShowHidden();
+    try {
+      if (snapshot != null && snapshot.isUnchanged(afterDirectory)) {
+        frame.before = SequentialScanner.listSorted(before, beforeDirectory, showHidden);
+        frame.after = frame.before;
+        skipped++;
+        return frame;
+      }
+
+      try {
+        frame.before = SequentialScanner.listSorted(before, beforeDirectory, showHidden);
+      } catch (IOException e) {
+        if (snapshot == null) throw e;
+        frame.notCompared = true;
+        return frame;
+      }
+      frame.after = SequentialScanner.listSorted(after, afterDirectory, showHidden);
+      listings++;
+      return frame;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String name(TreeEntry entry) {
+    return entry.isDirectory() ? entry.getName() + "/" : entry.getName();
+  }
+
+  /**
+   * One directory open on both sides, and how far its listings have been merged.
+   */
+  private static class Frame {
+    private final String relative;
+    private final int depth;
+    private TreeEntry entry;
+    private List<TreeEntry> before;
+    private List<TreeEntry> after;
+    private int i;
+    private int j;
+    private boolean notCompared;
+
+    private Frame(String relative, int depth) {
+      this.relative = relative;
+      this.depth = depth;
+    }
+  }
+}
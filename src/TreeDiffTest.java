@@ -0,0 +1,177 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeDiffTest {
+
+  private static final String NL = System.lineSeparator();
+
+  @Test
+  void testTwoDirectories(@TempDir File tempDir) throws IOException {
+    Path before = createTree(tempDir.toPath().resolve("before"));
+    Path after = createTree(tempDir.toPath().resolve("after"));
+    Files.createFile(after.resolve("a/b/new.txt"));
+    Files.delete(after.resolve("c/z.txt"));
+    Files.delete(after.resolve("c"));
+    Files.delete(after.resolve("top.txt"));
+    Files.createDirectory(after.resolve("top.txt"));
+    Files.createFile(after.resolve("A.txt"));
+    Files.createFile(after.resolve(".hidden2"));
+
+    TruffulaOptions options = new TruffulaOptions(after.toFile(), false, false);
+    options.setDiffAgainst(before);
+
+    assertEquals("+ a/b/new.txt" + NL
+        + "+ A.txt" + NL
+        + "- c/" + NL
+        + "~ top.txt/ (was a file)" + NL, print(options));
+
+    // Hidden entries are compared when they are shown
+    TruffulaOptions hidden = new TruffulaOptions(after.toFile(), true, false);
+    hidden.setDiffAgainst(before);
+    List<String> changes = changes(TreeDiff.fromOptions(hidden));
+    assertEquals(List.of("ADDED .hidden2", "ADDED a/b/new.txt", "ADDED A.txt", "REMOVED c/",
+        "TYPE_CHANGED top.txt/"), changes);
+
+    // Identical trees have no differences
+    options.setDiffAgainst(after);
+    assertEquals("", print(options));
+  }
+
+  @Test
+  void testDepthLimitAndFilters(@TempDir File tempDir) throws IOException {
+    Path before = createTree(tempDir.toPath().resolve("before"));
+    Path after = createTree(tempDir.toPath().resolve("after"));
+    Files.createFile(after.resolve("a/b/new.txt"));
+    Files.createFile(after.resolve("a/new.log"));
+
+    TruffulaOptions options = new TruffulaOptions(after.toFile(), false, false);
+    options.setDiffAgainst(before);
+    options.setMaxDepth(1);
+    assertEquals(List.of(), changes(TreeDiff.fromOptions(options)));
+
+    options.setMaxDepth(2);
+    assertEquals(List.of("ADDED a/new.log"), changes(TreeDiff.fromOptions(options)));
+
+    options.setMaxDepth(0);
+    options.getPathFilter().exclude("*.log");
+    assertEquals(List.of("ADDED a/b/new.txt"), changes(TreeDiff.fromOptions(options)));
+  }
+
+  @Test
+  void testAgainstSnapshot(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir.toPath().resolve("tree"));
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    ageDirectories(root);
+    TruffulaOptions saving = new TruffulaOptions(root.toFile(), false, false);
+    saving.setSnapshotFile(snapshot);
+    new TruffulaPrinter(saving, new PrintStream(new ByteArrayOutputStream())).printTree();
+
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+    options.setDiffAgainst(snapshot);
+
+    // Nothing changed: nothing is listed, every directory comes from the snapshot
+    TreeDiff unchanged = TreeDiff.fromOptions(options);
+    assertEquals(List.of(), changes(unchanged));
+    assertEquals(0, unchanged.getListings());
+    assertEquals(4, unchanged.getSkipped());
+
+    Files.createFile(root.resolve("a/b/new.txt"));
+    Files.delete(root.resolve("c/z.txt"));
+    TreeDiff changed = TreeDiff.fromOptions(options);
+    assertEquals(List.of("ADDED a/b/new.txt", "REMOVED c/z.txt"), changes(changed));
+    assertEquals(2, changed.getListings());
+    assertEquals(2, changed.getSkipped());
+
+    // A new directory's contents aren't in the snapshot, but it is reported as added
+    Files.createDirectories(root.resolve("a/d/e"));
+    assertEquals(List.of("ADDED a/b/new.txt", "ADDED a/d/", "REMOVED c/z.txt"),
+        changes(TreeDiff.fromOptions(options)));
+  }
+
+  @Test
+  void testSnapshotOfAnotherTreeIsRejected(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir.toPath().resolve("tree"));
+    Path other = createTree(tempDir.toPath().resolve("other"));
+    Path snapshot = tempDir.toPath().resolve("tree.snapshot");
+    TruffulaOptions saving = new TruffulaOptions(root.toFile(), false, false);
+    saving.setSnapshotFile(snapshot);
+    new TruffulaPrinter(saving, new PrintStream(new ByteArrayOutputStream())).printTree();
+
+    TruffulaOptions options = new TruffulaOptions(other.toFile(), false, false);
+    options.setDiffAgainst(snapshot);
+    assertThrows(IllegalArgumentException.class, () -> TreeDiff.fromOptions(options));
+  }
+
+  @Test
+  void testDiffFlag(@TempDir File tempDir) throws FileNotFoundException {
+    TruffulaOptions options = new TruffulaOptions(new String[] {"-d", "old", tempDir.getAbsolutePath()});
+
+    assertEquals(Path.of("old"), options.getDiffAgainst());
+  }
+
+  /**
+   * Creates:
+   *
+   * root/
+   *  .hidden
+   *  a/
+   *      b/
+   *          y.txt
+   *      x.txt
+   *  c/
+   *      z.txt
+   *  top.txt
+   */
+  private static Path createTree(Path root) throws IOException {
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createDirectories(root.resolve("c"));
+    for (String file : List.of(".hidden", "a/b/y.txt", "a/x.txt", "c/z.txt", "top.txt")) {
+      Files.createFile(root.resolve(file));
+    }
+    return root;
+  }
+
+  /**
+   * Moves every directory's mtime an hour back, so it is old enough to be saved.
+   */
+  private static void ageDirectories(Path root) throws IOException {
+    FileTime old = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        if (Files.isDirectory(path)) {
+          Files.setLastModifiedTime(path, old);
+        }
+      }
+    }
+  }
+
+  private static List<String> changes(TreeDiff diff) {
+    List<String> changes = new ArrayList<>();
+    diff.run((change, relative, entry) -> changes.add(change + " " + relative));
+    return changes;
+  }
+
+  private static String print(TruffulaOptions options) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ColorPrinter out = new ColorPrinter(new PrintStream(baos));
+    TreeDiff.fromOptions(options).run(TreeDiff.printer(out, false));
+    out.flush();
+    return baos.toString().replaceAll("\033\\[[0-9;]*m", "");
+  }
+}
@@ -0,0 +1,138 @@
+import java.nio.file.Path;
+
+/**
+ * A single file or directory discovered while listing a directory.
+ *
+ * Entries are produced by a DirectoryLister and carry everything the printer
+ * needs to know about a child, so no further filesystem calls are made for it
+ * once its parent has been listed.
+ */
+public class TreeEntry {
+  /**
+   * The location of the entry.
+   */
+  private final Path path;
+
+  /**
+   * The file name of the entry, without any parent directories.
+   */
+  private final String name;
+
+  /**
+   * Whether the entry is a directory.
+   */
+  private final boolean directory;
+
+  /**
+   * The size of the entry in bytes, or UNKNOWN_SIZE if the lister didn't read it.
+   */
+  private final long size;
+
+  /**
+   * The modification time of the entry in milliseconds since the epoch, or
+   * UNKNOWN_TIME if the lister didn't read it.
+   */
+  private final long lastModified;
+
+  /**
+   * The size of an entry whose lister didn't read its attributes.
+   */
+  public static final long UNKNOWN_SIZE = -1;
+
+  /**
+   * The modification time of an entry whose lister didn't read its attributes.
+   */
+  public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+  /**
+   * Constructs a TreeEntry whose size is unknown.
+   *
+   * @param path      the location of the entry
+   * @param name      the file name of the entry
+   * @param directory whether the entry is a directory
+   */
+  public TreeEntry(Path path, String name, boolean directory) {
+    this(path, name, directory, UNKNOWN_SIZE);
+  }
+
+  /**
+   * Constructs a TreeEntry.
+   *
+   * @param path      the location of the entry
+   * @param name      the file name of the entry
+   * @param directory whether the entry is a directory
+   * @param size      the size of the entry in bytes, or UNKNOWN_SIZE
+   */
+  public TreeEntry(Path path, String name, boolean directory, long size) {
+    this(path, name, directory, size, UNKNOWN_TIME);
+  }
+
+  /**
+   * Constructs a TreeEntry.
+   *
+   * @param path         the location of the entry
+   * @param name         the file name of the entry
+   * @param directory    whether the entry is a directory
+   * @param size         the size of the entry in bytes, or UNKNOWN_SIZE
+   * @param lastModified the modification time of the entry in milliseconds since the epoch, or UNKNOWN_TIME
+   */
+  public TreeEntry(Path path, String name, boolean directory, long size, long lastModified) {
+    this.path = path;
+    this.name = name;
+    this.directory = directory;
+    this.size = size;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Returns the location of the entry.
+   *
+   * @return the path of the entry
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the file name of the entry.
+   *
+   * @return the name of the entry
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Indicates whether the entry is a directory.
+   *
+   * @return true if the entry is a directory; false otherwise
+   */
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the size of the entry, as read with its other attributes while
+   * listing its parent.
+   *
+   * @return the size in bytes, or UNKNOWN_SIZE if the lister didn't read it
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the modification time of the entry, as read with its other
+   * attributes while listing its parent.
+   *
+   * @return the time in milliseconds since the epoch, or UNKNOWN_TIME if the lister didn't read it
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  @Override
+  public String toString() {
+    return "TreeEntry [path=" + path + ", directory=" + directory + "]";
+  }
+}
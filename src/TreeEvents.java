@@ -0,0 +1,61 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JDK Flight Recorder events emitted while a tree is walked and printed.
+ *
+ * Record a run with -XX:StartFlightRecording=filename=truffula.jfr and look
+ * for the events under "Truffula" to see whether listing, sorting or writing
+ * the output is where the time goes. When no recording is running, an event
+ * costs little more than allocating it, which the JIT usually removes.
+ */
+final class TreeEvents {
+
+  private TreeEvents() {
+  }
+
+  /**
+   * Listing one directory, from opening it to reading its last entry.
+   */
+  @Name("truffula.DirectoryScan")
+  @Label("Directory Scan")
+  @Category("Truffula")
+  @Description("Listing one directory")
+  static final class DirectoryScan extends Event {
+    @Label("Directory")
+    String directory;
+
+    @Label("Entries")
+    @Description("The entries listed, after hidden entries and filters are left out")
+    int entries;
+  }
+
+  /**
+   * Sorting one directory's listing.
+   */
+  @Name("truffula.Sort")
+  @Label("Sort")
+  @Category("Truffula")
+  @Description("Sorting one directory's listing")
+  static final class Sort extends Event {
+    @Label("Entries")
+    int entries;
+  }
+
+  /**
+   * Writing buffered output to the underlying stream.
+   */
+  @Name("truffula.OutputFlush")
+  @Label("Output Flush")
+  @Category("Truffula")
+  @Description("Writing buffered output to the underlying stream")
+  static final class OutputFlush extends Event {
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+  }
+}
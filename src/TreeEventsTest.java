@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class TreeEventsTest {
+
+  @Test
+  void testEventsAreRecorded(@TempDir File tempDir) throws IOException {
+    Path root = tempDir.toPath().resolve("tree");
+    Files.createDirectories(root.resolve("a/b"));
+    for (String file : List.of("a/b/y.txt", "a/x.txt", "top.txt", ".hidden")) {
+      Files.createFile(root.resolve(file));
+    }
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    Path file = tempDir.toPath().resolve("events.jfr");
+    try (Recording recording = new Recording()) {
+      for (String event : List.of("truffula.DirectoryScan", "truffula.Sort", "truffula.OutputFlush")) {
+        recording.enable(event).withoutThreshold();
+      }
+      recording.start();
+      new TruffulaPrinter(options, new BufferedColorPrinter(out)).printTree();
+      recording.stop();
+      recording.dump(file);
+    }
+
+    Set<String> scanned = new TreeSet<>();
+    int sorts = 0;
+    long flushed = 0;
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      switch (event.getEventType().getName()) {
+        case "truffula.DirectoryScan":
+          scanned.add(root.relativize(Path.of(event.getString("directory"))) + "=" + event.getInt("entries"));
+          break;
+        case "truffula.Sort":
+          sorts++;
+          break;
+        case "truffula.OutputFlush":
+          flushed += event.getLong("bytes");
+          break;
+        default:
+      }
+    }
+
+    // One scan and one sort per directory; hidden entries aren't in the count
+    assertEquals(Set.of("=2", "a=2", Path.of("a/b") + "=1"), scanned);
+    assertEquals(3, sorts);
+    assertTrue(out.size() > 0);
+    assertEquals(out.size(), flushed);
+  }
+}
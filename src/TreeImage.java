@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A tree saved by TreeImageWriter, memory-mapped for reading.
+ *
+ * Nothing is loaded up front: entries are read straight from the mapping as
+ * they are walked, and a name is only decoded when its entry is visited. Any
+ * subtree can be walked on its own, so an image of a huge tree can be saved
+ * once and printed, or sliced, many times.
+ *
+ * Layout (big-endian):
+ *
+ * header  (64 bytes): magic, version, entry count, name count, name index offset
+ * records (24 bytes each, in walk order, the root first):
+ *         parent index (long), index past the last descendant (long),
+ *         name index (int), depth | flags << 30 (int)
+ * names   : per distinct name, its UTF-8 length (unsigned short) and bytes
+ * name index: the offset of every name (long)
+ *
+ * The file is mapped in chunks of at most 1 GB, since a single MappedByteBuffer
+ * can't address more than 2 GB. Consecutive chunks overlap by more than the
+ * longest field or name, so every read falls within a single chunk.
+ *
+ * A TreeImage may be read from several threads at once.
+ */
+public class TreeImage implements AutoCloseable {
+
+  static final int MAGIC = 0x54524249;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int RECORD_SIZE = 24;
+  static final int FLAGS_SHIFT = 30;
+  static final int DIRECTORY = 1;
+  static final int COLLAPSED = 2;
+  static final int MAX_NAME_LENGTH = 0xFFFF;
+
+  /**
+   * How far each chunk's mapping reaches past the chunk, so that no read spans two mappings.
+   */
+  private static final int DEFAULT_OVERLAP = 1 << 17;
+
+  private static final int DEFAULT_CHUNK_BITS = 30;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] chunks;
+  private final int chunkBits;
+  private final long chunkMask;
+
+  private final long entryCount;
+  private final long nameCount;
+  private final long nameIndexOffset;
+
+  /**
+   * Maps an image file.
+   *
+   * @param file the image file
+   * @return the mapped image
+   * @throws IOException if the file can't be mapped or is not a tree image
+   */
+  public static TreeImage open(Path file) throws IOException {
+    return new TreeImage(file, DEFAULT_CHUNK_BITS, DEFAULT_OVERLAP);
+  }
+
+  /**
+   * Maps an image file in chunks of 2^chunkBits bytes, each mapped with the
+   * given number of bytes past its end. The overlap must be at least the length
+   * of the longest name in the image, and at least 8.
+   */
+  TreeImage(Path file, int chunkBits, int overlap) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.chunkBits = chunkBits;
+    this.chunkMask = (1L << chunkBits) - 1;
+    try {
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Not a tree image: " + file);
+      }
+
+      int count = (int) ((size + chunkMask) >>> chunkBits);
+      chunks = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long start = (long) i << chunkBits;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkMask + 1 + overlap, size - start));
+      }
+
+      if (getInt(0) != MAGIC || getInt(4) != VERSION) {
+        throw new IOException("Not a tree image: " + file);
+      }
+      entryCount = getLong(8);
+      nameCount = getLong(16);
+      nameIndexOffset = getLong(24);
+      if (entryCount < 1 || HEADER_SIZE + entryCount * RECORD_SIZE > size
+          || nameIndexOffset + nameCount * 8 > size) {
+        throw new IOException("Damaged tree image: " + file);
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of entries in the image, including the root.
+   *
+   * @return the number of entries
+   */
+  public long getEntryCount() {
+    return entryCount;
+  }
+
+  /**
+   * Returns the number of distinct names in the image.
+   *
+   * @return the number of names
+   */
+  public long getNameCount() {
+    return nameCount;
+  }
+
+  /**
+   * Returns the index of an entry's parent.
+   *
+   * @param index the index of an entry
+   * @return the index of its parent, or -1 for the root
+   */
+  public long parent(long index) {
+    return getLong(record(index));
+  }
+
+  /**
+   * Returns the index just past an entry's last descendant. The entries below
+   * a directory are the ones between its index and this one.
+   *
+   * @param index the index of an entry
+   * @return the index past its subtree
+   */
+  public long end(long index) {
+    return getLong(record(index) + 8);
+  }
+
+  /**
+   * Returns the depth of an entry; the root is at depth 0.
+   *
+   * @param index the index of an entry
+   * @return its depth
+   */
+  public int depth(long index) {
+    return getInt(record(index) + 20) & ((1 << FLAGS_SHIFT) - 1);
+  }
+
+  /**
+   * Indicates whether an entry is a directory.
+   *
+   * @param index the index of an entry
+   * @return true if it is a directory; false otherwise
+   */
+  public boolean isDirectory(long index) {
+    return (flags(index) & DIRECTORY) != 0;
+  }
+
+  /**
+   * Indicates whether an entry is a directory that was not listed because of the
+   * maximum depth when the image was written.
+   *
+   * @param index the index of an entry
+   * @return true if it was collapsed; false otherwise
+   */
+  public boolean isCollapsed(long index) {
+    return (flags(index) & COLLAPSED) != 0;
+  }
+
+  /**
+   * Returns the name of an entry.
+   *
+   * @param index the index of an entry
+   * @return its name
+   */
+  public String name(long index) {
+    long offset = nameOffset(index);
+    int length = getShort(offset) & 0xFFFF;
+    byte[] bytes = new byte[length];
+    chunk(offset + 2).get(offsetInChunk(offset + 2), bytes, 0, length);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Finds a directory or file by its path relative to the root of the image,
+   * skipping over the subtree of every sibling on the way.
+   *
+   * @param relative the path relative to the root; empty for the root
+   * @return the index of the entry, or -1 if there is none
+   */
+  public long find(Path relative) {
+    long index = 0;
+    for (Path part : relative) {
+      String name = part.toString();
+      if (name.isEmpty() || name.equals(".")) continue;
+
+      byte[] wanted = name.getBytes(StandardCharsets.UTF_8);
+      long child = index + 1;
+      long end = end(index);
+      while (child < end && !nameEquals(child, wanted)) {
+        child = end(child);
+      }
+      if (child >= end) {
+        return -1;
+      }
+      index = child;
+    }
+    return index;
+  }
+
+  /**
+   * Walks the subtree of an entry in the order it was saved, which is the order it
+   * was printed in, handing every entry below it to the visitor.
+   *
+   * @param index    the index of the entry whose subtree is walked
+   * @param root     the path the entry is given; the visited entries' paths are resolved against it
+   * @param maxDepth the most levels below the entry to visit, or 0 for all of them
+   * @param visitor  receives the entry and everything below it
+   */
+  public void walk(long index, Path root, int maxDepth, TreeVisitor visitor) {
+    int baseDepth = depth(index);
+    Path[] directories = new Path[16];
+    directories[0] = root;
+    visitor.start(new TreeEntry(root, name(index), true));
+
+    long end = end(index);
+    long i = index + 1;
+    while (i < end) {
+      int depth = depth(i) - baseDepth;
+      String name = name(i);
+      boolean directory = isDirectory(i);
+      Path path = directories[depth - 1].resolve(name);
+      boolean collapsed = directory && (isCollapsed(i) || depth == maxDepth);
+
+      visitor.entry(new TreeEntry(path, name, directory), depth, collapsed);
+      if (collapsed) {
+        i = end(i);
+        continue;
+      }
+      if (directory) {
+        if (depth >= directories.length) {
+          directories = Arrays.copyOf(directories, depth * 2);
+        }
+        directories[depth] = path;
+      }
+      i++;
+    }
+    visitor.end();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private boolean nameEquals(long index, byte[] wanted) {
+    long offset = nameOffset(index);
+    int length = getShort(offset) & 0xFFFF;
+    if (length != wanted.length) {
+      return false;
+    }
+    MappedByteBuffer chunk = chunk(offset + 2);
+    int position = offsetInChunk(offset + 2);
+    for (int i = 0; i < length; i++) {
+      if (chunk.get(position + i) != wanted[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long nameOffset(long index) {
+    long name = getInt(record(index) + 16) & 0xFFFFFFFFL;
+    return getLong(nameIndexOffset + name * 8);
+  }
+
+  private int flags(long index) {
+    return getInt(record(index) + 20) >>> FLAGS_SHIFT;
+  }
+
+  private long record(long index) {
+    if (index < 0 || index >= entryCount) {
+      throw new IndexOutOfBoundsException("No entry " + index + " in an image of " + entryCount);
+    }
+    return HEADER_SIZE + index * RECORD_SIZE;
+  }
+
+  private MappedByteBuffer chunk(long position) {
+    return chunks[(int) (position >>> chunkBits)];
+  }
+
+  private int offsetInChunk(long position) {
+    return (int) (position & chunkMask);
+  }
+
+  private long getLong(long position) {
+    return chunk(position).getLong(offsetInChunk(position));
+  }
+
+  private int getInt(long position) {
+    return chunk(position).getInt(offsetInChunk(position));
+  }
+
+  private short getShort(long position) {
+    return chunk(position).getShort(offsetInChunk(position));
+  }
+}
@@ -0,0 +1,184 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeImageTest {
+
+  @Test
+  void testImagePrintsLikeTheTree(@TempDir File tempDir) throws IOException {
+    Path root = tempDir.toPath().resolve("root");
+    Files.createDirectory(root);
+    Path file = tempDir.toPath().resolve("tree.img");
+    // Enough entries for the record buffer to be flushed while directories are open,
+    // with the same file names in every directory
+    FakeDirectoryLister lister = new FakeDirectoryLister();
+    lister.addDirectory(root);
+    for (int i = 0; i < 40; i++) {
+      Path outer = root.resolve("Dir" + i);
+      lister.addDirectory(outer);
+      for (int j = 0; j < 10; j++) {
+        Path inner = outer.resolve("sub" + j);
+        lister.addDirectory(inner);
+        for (int k = 0; k < 20; k++) {
+          lister.addFile(inner.resolve(k % 2 == 0 ? "file" + k : ".hidden" + k));
+        }
+      }
+      lister.addFile(outer.resolve("README.md"));
+    }
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), true, false);
+
+    try (TreeImageWriter writer = new TreeImageWriter(file)) {
+      new TruffulaPrinter(options, new PrintStream(new ByteArrayOutputStream()), List.of(ConsoleColor.WHITE), lister)
+          .walkTree(writer);
+    }
+    String expected = print(options, lister);
+
+    // Tiny chunks, overlapping by little more than the longest name, so that
+    // names and name offsets regularly straddle chunk boundaries
+    for (int chunkBits : new int[] {30, 10, 5}) {
+      try (TreeImage image = new TreeImage(file, chunkBits, 12)) {
+        assertEquals(expected, print(options, image, Path.of("")), "chunkBits=" + chunkBits);
+        assertEquals(1 + 40 * (1 + 10 * (1 + 20) + 1), image.getEntryCount());
+        assertEquals(1 + 40 + 10 + 20 + 1, image.getNameCount());
+      }
+    }
+  }
+
+  @Test
+  void testSlicesAndDepthLimit(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Path file = tempDir.toPath().resolve("tree.img");
+    try (TreeImageWriter writer = new TreeImageWriter(file)) {
+      new TruffulaPrinter(new TruffulaOptions(root.toFile(), false, false)).walkTree(writer);
+    }
+
+    try (TreeImage image = TreeImage.open(file)) {
+      // A slice prints like the directory itself
+      TruffulaOptions sliceOptions = new TruffulaOptions(root.resolve("a").toFile(), false, false);
+      assertEquals(print(sliceOptions, null), print(sliceOptions, image, Path.of("a")));
+      assertEquals(print(new TruffulaOptions(root.resolve("a/b").toFile(), false, false), null),
+          print(sliceOptions, image, Path.of("a/b")));
+
+      // As does a depth limit
+      TruffulaOptions limited = new TruffulaOptions(root.toFile(), false, false);
+      limited.setMaxDepth(1);
+      limited.setShowCollapsed(true);
+      assertEquals(print(limited, null), print(limited, image, Path.of(".")));
+
+      assertEquals(-1, image.find(Path.of("a/missing")));
+      assertEquals(-1, image.find(Path.of(".hidden")));
+      assertThrows(IllegalArgumentException.class, () -> print(limited, image, Path.of("top.txt")));
+    }
+  }
+
+  @Test
+  void testArchiveRootIsNamedAfterTheArchive(@TempDir File tempDir) throws IOException {
+    Path zip = tempDir.toPath().resolve("tree.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      out.putNextEntry(new ZipEntry("a/x.txt"));
+      out.closeEntry();
+    }
+    Path file = tempDir.toPath().resolve("tree.img");
+
+    TruffulaOptions options = new TruffulaOptions(new String[] {"-nc", zip.toString()});
+    try (TreeImageWriter writer = new TreeImageWriter(file)) {
+      new TruffulaPrinter(options).walkTree(writer);
+    } finally {
+      options.getRootPath().getFileSystem().close();
+    }
+
+    try (TreeImage image = TreeImage.open(file)) {
+      assertEquals("tree.zip", image.name(0));
+      assertEquals(TruffulaPrinterTest.printArchive("-nc", zip.toString()), print(options, image, Path.of(""))
+          .replaceAll("\033\\[[0-9;]*m", ""));
+    }
+  }
+
+  @Test
+  void testDamagedImageIsRejected(@TempDir File tempDir) throws IOException {
+    Path file = tempDir.toPath().resolve("tree.img");
+    Files.write(file, new byte[100]);
+
+    assertThrows(IOException.class, () -> TreeImage.open(file));
+  }
+
+  @Test
+  void testUnfinishedImageIsDeleted(@TempDir File tempDir) throws IOException {
+    Path file = tempDir.toPath().resolve("tree.img");
+    TruffulaOptions options = new TruffulaOptions(tempDir.toPath().resolve("missing").toFile(), false, false);
+
+    try (TreeImageWriter writer = new TreeImageWriter(file)) {
+      assertThrows(IllegalArgumentException.class, () -> new TruffulaPrinter(options).walkTree(writer));
+    }
+    assertFalse(Files.exists(file));
+    try (var files = Files.list(tempDir.toPath())) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  void testImageFlags(@TempDir File tempDir) throws FileNotFoundException {
+    TruffulaOptions write = new TruffulaOptions(new String[] {"-wi", "tree.img", tempDir.getAbsolutePath()});
+    assertEquals(Path.of("tree.img"), write.getWriteImage());
+
+    // The path names a directory in the image, so it doesn't have to exist
+    TruffulaOptions read = new TruffulaOptions(new String[] {"-ri", "tree.img", "no/such/dir"});
+    assertEquals(Path.of("tree.img"), read.getReadImage());
+    assertEquals(new File("no/such/dir"), read.getRoot());
+    assertThrows(FileNotFoundException.class, () -> new TruffulaOptions(new String[] {"no/such/dir"}));
+  }
+
+  /**
+   * Creates:
+   *
+   * tree/
+   *  .hidden
+   *  a/
+   *      b/
+   *          y.txt
+   *      x.txt
+   *  c/
+   *      z.txt
+   *  top.txt
+   */
+  private static Path createTree(File tempDir) throws IOException {
+    Path root = tempDir.toPath().resolve("tree");
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createDirectories(root.resolve("c"));
+    for (String file : List.of(".hidden", "a/b/y.txt", "a/x.txt", "c/z.txt", "top.txt")) {
+      Files.createFile(root.resolve(file));
+    }
+    return root;
+  }
+
+  private static String print(TruffulaOptions options, DirectoryLister lister) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(baos);
+    if (lister == null) {
+      new TruffulaPrinter(options, out).printTree();
+    } else {
+      new TruffulaPrinter(options, out, List.of(ConsoleColor.WHITE), lister).printTree();
+    }
+    return baos.toString();
+  }
+
+  private static String print(TruffulaOptions options, TreeImage image, Path slice) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos)).printTree(image, slice);
+    return baos.toString();
+  }
+}
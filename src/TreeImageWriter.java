@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A TreeVisitor that saves the tree in the binary format read by TreeImage.
+ *
+ * Entries are written as fixed-size records in the order they are visited,
+ * which is the order they are printed in. Each record holds the index of its
+ * parent, the index just past its last descendant (patched in when the
+ * directory ends), the index of its name in the name table, and its depth and
+ * type. Names are deduplicated: each distinct name is written once, to a side
+ * file that is appended after the records when the walk ends.
+ *
+ * Memory grows with the depth of the tree and the number of distinct names, not
+ * with the number of entries.
+ *
+ * See TreeImage for the layout.
+ */
+public class TreeImageWriter implements TreeVisitor, AutoCloseable {
+
+  /**
+   * How many records are buffered before they are written.
+   */
+  private static final int BUFFERED_RECORDS = 4096;
+
+  /**
+   * The image file.
+   */
+  private final Path file;
+
+  /**
+   * The image, written from the start of the records onwards.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The side file the names are written to until the records are complete.
+   */
+  private final Path namesFile;
+  private final FileChannel names;
+
+  /**
+   * The records that haven't been written yet.
+   */
+  private final ByteBuffer records = ByteBuffer.allocate(BUFFERED_RECORDS * TreeImage.RECORD_SIZE);
+
+  /**
+   * The index of the first record in the buffer.
+   */
+  private long bufferedFrom;
+
+  /**
+   * The number of records so far.
+   */
+  private long count;
+
+  /**
+   * The index of every distinct name, and where each one starts in the names section.
+   */
+  private final Map<String, Integer> nameIndexes = new HashMap<>();
+  private long[] nameOffsets = new long[1024];
+  private long namesLength;
+  private ByteBuffer nameBuffer = ByteBuffer.allocate(256);
+
+  /**
+   * The index of the open directory at each depth.
+   */
+  private long[] open = new long[64];
+
+  /**
+   * The depth of the innermost open directory, or -1 before start().
+   */
+  private int openDepth = -1;
+
+  private boolean finished;
+
+  /**
+   * Creates (or replaces) an image file.
+   *
+   * @param file the file to write the image to
+   * @throws IOException if the file can't be created
+   */
+  public TreeImageWriter(Path file) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    Path parent = file.toAbsolutePath().getParent();
+    this.namesFile = Files.createTempFile(parent, file.getFileName().toString(), ".names");
+    this.names = FileChannel.open(namesFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  @Override
+  public void start(TreeEntry root) {
+    record(-1, root.getName(), 0, TreeImage.DIRECTORY);
+    openDepth = 0;
+    open[0] = 0;
+  }
+
+  @Override
+  public void entry(TreeEntry entry, int depth, boolean collapsed) {
+    closeTo(depth);
+    int flags = entry.isDirectory() ? TreeImage.DIRECTORY : 0;
+    if (collapsed) {
+      flags |= TreeImage.COLLAPSED;
+    }
+
+    long index = record(open[depth - 1], entry.getName(), depth, flags);
+    if (entry.isDirectory() && !collapsed) {
+      if (depth >= open.length) {
+        open = Arrays.copyOf(open, depth * 2);
+      }
+      open[depth] = index;
+      openDepth = depth;
+    }
+  }
+
+  /**
+   * Ends every open directory, then writes the names and the header.
+   */
+  @Override
+  public void end() {
+    try {
+      closeTo(0);
+      flushRecords();
+
+      long namesOffset = TreeImage.HEADER_SIZE + count * TreeImage.RECORD_SIZE;
+      long copied = 0;
+      while (copied < namesLength) {
+        copied += names.transferTo(copied, namesLength - copied, channel.position(namesOffset + copied));
+      }
+
+      int nameCount = nameIndexes.size();
+      long indexOffset = namesOffset + namesLength;
+      ByteBuffer offsets = ByteBuffer.allocate(8 * 1024);
+      channel.position(indexOffset);
+      for (int i = 0; i < nameCount; i++) {
+        if (!offsets.hasRemaining()) {
+          write(offsets.flip(), channel);
+          offsets.clear();
+        }
+        offsets.putLong(namesOffset + nameOffsets[i]);
+      }
+      write(offsets.flip(), channel);
+
+      ByteBuffer header = ByteBuffer.allocate(TreeImage.HEADER_SIZE);
+      header.putInt(TreeImage.MAGIC).putInt(TreeImage.VERSION)
+          .putLong(count).putLong(nameCount).putLong(indexOffset);
+      header.position(0);
+      channel.write(header, 0);
+      finished = true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Closes the image. An image whose walk didn't end is deleted.
+   *
+   * @throws IOException if a file can't be closed or deleted
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      channel.close();
+      names.close();
+    } finally {
+      Files.deleteIfExists(namesFile);
+      if (!finished) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  /**
+   * Ends the open directories at the given depth and below, recording where their
+   * descendants stop.
+   */
+  private void closeTo(int depth) {
+    while (openDepth >= depth) {
+      patchEnd(open[openDepth], count);
+      openDepth--;
+    }
+  }
+
+  private long record(long parent, String name, int depth, int flags) {
+    if (!records.hasRemaining()) {
+      flushRecords();
+    }
+    records.putLong(parent).putLong(count + 1).putInt(nameIndex(name))
+        .putInt(depth | (flags << TreeImage.FLAGS_SHIFT));
+    return count++;
+  }
+
+  private void patchEnd(long index, long end) {
+    if (index >= bufferedFrom) {
+      records.putLong((int) (index - bufferedFrom) * TreeImage.RECORD_SIZE + 8, end);
+      return;
+    }
+    try {
+      ByteBuffer value = ByteBuffer.allocate(8).putLong(0, end);
+      channel.write(value, TreeImage.HEADER_SIZE + index * TreeImage.RECORD_SIZE + 8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void flushRecords() {
+    try {
+      channel.position(TreeImage.HEADER_SIZE + bufferedFrom * TreeImage.RECORD_SIZE);
+      write(records.flip(), channel);
+      records.clear();
+      bufferedFrom = count;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the index of a name, writing it to the names section the first time it is seen.
+   */
+  private int nameIndex(String name) {
+    Integer index = nameIndexes.get(name);
+    if (index != null) {
+      return index;
+    }
+
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > TreeImage.MAX_NAME_LENGTH) {
+      throw new IllegalArgumentException("Name too long for a tree image: " + name);
+    }
+    if (nameBuffer.capacity() < bytes.length + 2) {
+      nameBuffer = ByteBuffer.allocate(bytes.length + 2);
+    }
+    nameBuffer.clear();
+    nameBuffer.putShort((short) bytes.length).put(bytes).flip();
+    try {
+      write(nameBuffer, names);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    int next = nameIndexes.size();
+    if (next == nameOffsets.length) {
+      nameOffsets = Arrays.copyOf(nameOffsets, next * 2);
+    }
+    nameOffsets[next] = namesLength;
+    namesLength += bytes.length + 2;
+    nameIndexes.put(name, next);
+    return next;
+  }
+
+  private static void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the work done by every tree printed in this process: directories
+ * listed, entries seen, entries left out as hidden, attribute reads, and bytes
+ * written.
+ *
+ * The counters are LongAdders, so the listers and printers on every thread can
+ * update them without contending. They are read with the getters, or all at
+ * once with summary(), which App prints at the end of a run with -stats.
+ */
+public final class TreeMetrics {
+
+  private static final TreeMetrics GLOBAL = new TreeMetrics();
+
+  private final LongAdder directoriesListed = new LongAdder();
+  private final LongAdder entriesSeen = new LongAdder();
+  private final LongAdder hiddenEntries = new LongAdder();
+  private final LongAdder attributesRead = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+
+  private TreeMetrics() {
+  }
+
+  /**
+   * Returns the counters shared by everything in this process.
+   *
+   * @return the metrics
+   */
+  public static TreeMetrics global() {
+    return GLOBAL;
+  }
+
+  /**
+   * Counts a directory read from the filesystem.
+   */
+  void directoryListed() {
+    directoriesListed.increment();
+  }
+
+  /**
+   * Counts an entry read from a directory, whether or not it is shown.
+   */
+  void entrySeen() {
+    entriesSeen.increment();
+  }
+
+  /**
+   * Counts an entry left out because it is hidden.
+   */
+  void hiddenEntry() {
+    hiddenEntries.increment();
+  }
+
+  /**
+   * Counts a read of an entry's attributes from the filesystem.
+   */
+  void attributesRead() {
+    attributesRead.increment();
+  }
+
+  /**
+   * Counts bytes written to the output.
+   *
+   * @param bytes the number of bytes
+   */
+  void bytesWritten(long bytes) {
+    bytesWritten.add(bytes);
+  }
+
+  /**
+   * Returns the number of directories read from the filesystem. Directories
+   * whose listing came from a snapshot are not counted.
+   *
+   * @return the number of directories listed
+   */
+  public long getDirectoriesListed() {
+    return directoriesListed.sum();
+  }
+
+  /**
+   * Returns the number of entries read from the listed directories, hidden or not.
+   *
+   * @return the number of entries seen
+   */
+  public long getEntriesSeen() {
+    return entriesSeen.sum();
+  }
+
+  /**
+   * Returns the number of entries left out because they are hidden.
+   *
+   * @return the number of hidden entries
+   */
+  public long getHiddenEntries() {
+    return hiddenEntries.sum();
+  }
+
+  /**
+   * Returns the number of times an entry's attributes were read from the
+   * filesystem. Listers read them at most once per entry, while listing the
+   * entry's directory.
+   *
+   * @return the number of attribute reads
+   */
+  public long getAttributesRead() {
+    return attributesRead.sum();
+  }
+
+  /**
+   * Returns the number of bytes written by color printers, color codes included.
+   *
+   * @return the number of bytes written
+   */
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  /**
+   * Sets every counter back to zero.
+   */
+  public void reset() {
+    directoriesListed.reset();
+    entriesSeen.reset();
+    hiddenEntries.reset();
+    attributesRead.reset();
+    bytesWritten.reset();
+  }
+
+  /**
+   * Returns the counters on one line, e.g. "12 directories listed, 340 entries
+   * seen, 25 hidden, 315 attribute reads, 10.2K written".
+   *
+   * @return the summary
+   */
+  public String summary() {
+    return getDirectoriesListed() + " directories listed, " + getEntriesSeen() + " entries seen, "
+        + getHiddenEntries() + " hidden, " + getAttributesRead() + " attribute reads, " + DiskUsage.formatSize(getBytesWritten()) + " written";
+  }
+
+  @Override
+  public String toString() {
+    return "TreeMetrics [" + summary() + "]";
+  }
+}
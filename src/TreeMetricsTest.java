@@ -0,0 +1,147 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeMetricsTest {
+
+  @Test
+  void testCountsListingsEntriesAndBytes(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    TreeMetrics metrics = TreeMetrics.global();
+
+    for (boolean useNio : new boolean[] {false, true}) {
+      TruffulaOptions options = new TruffulaOptions(root.toFile(), false, true);
+      options.setUseNio(useNio);
+
+      metrics.reset();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new TruffulaPrinter(options, new PrintStream(out)).printTree();
+      assertEquals(2, metrics.getDirectoriesListed(), "useNio=" + useNio);
+      assertEquals(5, metrics.getEntriesSeen(), "useNio=" + useNio);
+      assertEquals(2, metrics.getHiddenEntries(), "useNio=" + useNio);
+      assertEquals(out.size(), metrics.getBytesWritten(), "useNio=" + useNio);
+
+      // The buffered printer counts exactly what it writes too
+      metrics.reset();
+      out.reset();
+      new TruffulaPrinter(options, new BufferedColorPrinter(out)).printTree();
+      assertEquals(out.size(), metrics.getBytesWritten(), "useNio=" + useNio);
+    }
+
+    // Hidden entries that are shown aren't counted as hidden
+    metrics.reset();
+    new TruffulaPrinter(new TruffulaOptions(root.toFile(), true, false), new PrintStream(new ByteArrayOutputStream()))
+        .printTree();
+    assertEquals(3, metrics.getDirectoriesListed());
+    assertEquals(6, metrics.getEntriesSeen());
+    assertEquals(0, metrics.getHiddenEntries());
+  }
+
+  @Test
+  void testSortingReadsAttributesOncePerEntry(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    TreeMetrics metrics = TreeMetrics.global();
+
+    for (SortKey key : SortKey.values()) {
+      for (int engine = 0; engine < 4; engine++) {
+        TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+        options.setSortKey(key);
+        options.setDirectoriesFirst(true);
+        if (engine == 1) {
+          options.setParallelism(4);
+        } else if (engine == 2) {
+          options.setIterative(true);
+        } else if (engine == 3) {
+          options.setDiskUsage(true);
+        }
+
+        metrics.reset();
+        new TruffulaPrinter(options, new PrintStream(new ByteArrayOutputStream())).printTree();
+        // Every visible entry listed is read once; dot-named ones aren't read at all
+        assertEquals(3, metrics.getAttributesRead(), options.toString());
+        assertEquals(metrics.getEntriesSeen() - metrics.getHiddenEntries(), metrics.getAttributesRead(),
+            options.toString());
+      }
+    }
+  }
+
+  @Test
+  void testSummary() {
+    TreeMetrics metrics = TreeMetrics.global();
+    metrics.reset();
+    metrics.directoryListed();
+    metrics.entrySeen();
+    metrics.entrySeen();
+    metrics.hiddenEntry();
+    metrics.attributesRead();
+    metrics.bytesWritten(1536);
+
+    assertEquals("1 directories listed, 2 entries seen, 1 hidden, 1 attribute reads, 1.5K written", metrics.summary());
+    metrics.reset();
+    assertEquals("0 directories listed, 0 entries seen, 0 hidden, 0 attribute reads, 0B written", metrics.summary());
+  }
+
+  @Test
+  void testUtf8Length() {
+    for (String text : List.of("", "plain", "café", "日本", "🌳 tree", "lone \ud83c")) {
+      assertEquals(text.getBytes(java.nio.charset.StandardCharsets.UTF_8).length, ColorPrinter.utf8Length(text), text);
+    }
+  }
+
+  @Test
+  void testBytesAreCountedInTheStreamsCharset() {
+    for (Charset charset : List.of(StandardCharsets.UTF_8, StandardCharsets.UTF_16BE, StandardCharsets.ISO_8859_1)) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ColorPrinter printer = new ColorPrinter(new PrintStream(baos, false, charset));
+      printer.setRunLength(true);
+      TreeMetrics.global().reset();
+
+      printer.println("café");
+      printer.println("🌳 tree");
+      printer.flush();
+
+      assertEquals(baos.size(), TreeMetrics.global().getBytesWritten(), charset.name());
+    }
+  }
+
+  @Test
+  void testStatsFlag(@TempDir File tempDir) throws FileNotFoundException {
+    assertTrue(new TruffulaOptions(new String[] {"-stats", tempDir.getAbsolutePath()}).isPrintStats());
+    assertFalse(new TruffulaOptions(new String[] {tempDir.getAbsolutePath()}).isPrintStats());
+  }
+
+  /**
+   * Creates:
+   *
+   * tree/
+   *  .git/
+   *      config
+   *  a/
+   *      .h2
+   *      x.txt
+   *  b.txt
+   */
+  private static Path createTree(File tempDir) throws IOException {
+    Path root = tempDir.toPath().resolve("tree");
+    Files.createDirectories(root.resolve(".git"));
+    Files.createDirectories(root.resolve("a"));
+    for (String file : List.of(".git/config", "a/.h2", "a/x.txt", "b.txt")) {
+      Files.createFile(root.resolve(file));
+    }
+    return root;
+  }
+}
@@ -0,0 +1,104 @@
+import java.nio.file.Path;
+
+/**
+ * One line of a tree as TruffulaPrinter.printTree() prints it: the entry, its
+ * depth below the root, whether it is a directory collapsed by the maximum
+ * depth, and the color it is printed in when color is on.
+ *
+ * TruffulaPrinter.stream() returns the whole tree as TreeNodes, starting with
+ * the root at depth 0.
+ */
+public final class TreeNode {
+  private final TreeEntry entry;
+
+  private final int depth;
+
+  private final boolean collapsed;
+
+  private final ConsoleColor color;
+
+  /**
+   * Constructs a TreeNode.
+   *
+   * @param entry     the entry
+   * @param depth     the depth of the entry (the root is at depth 0)
+   * @param collapsed true if the entry is a directory that was not listed because of the maximum depth
+   * @param color     the color the entry is printed in when color is on
+   */
+  public TreeNode(TreeEntry entry, int depth, boolean collapsed, ConsoleColor color) {
+    this.entry = entry;
+    this.depth = depth;
+    this.collapsed = collapsed;
+    this.color = color;
+  }
+
+  /**
+   * Returns the entry printed on this line.
+   *
+   * @return the entry
+   */
+  public TreeEntry getEntry() {
+    return entry;
+  }
+
+  /**
+   * Returns the full path of the entry.
+   *
+   * @return the path of the entry
+   */
+  public Path getPath() {
+    return entry.getPath();
+  }
+
+  /**
+   * Returns the file name of the entry, as it is printed.
+   *
+   * @return the name of the entry
+   */
+  public String getName() {
+    return entry.getName();
+  }
+
+  /**
+   * Indicates whether the entry is a directory.
+   *
+   * @return true if the entry is a directory; false otherwise
+   */
+  public boolean isDirectory() {
+    return entry.isDirectory();
+  }
+
+  /**
+   * Returns the depth of the entry below the root; the root is at depth 0.
+   *
+   * @return the depth of the entry
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Indicates whether the entry is a directory that was not listed because of
+   * the maximum depth.
+   *
+   * @return true if the directory was collapsed; false otherwise
+   */
+  public boolean isCollapsed() {
+    return collapsed;
+  }
+
+  /**
+   * Returns the color the entry is printed in when color is on.
+   *
+   * @return the color of the entry's depth
+   */
+  public ConsoleColor getColor() {
+    return color;
+  }
+
+  @Override
+  public String toString() {
+    return "TreeNode [path=" + getPath() + ", depth=" + depth + ", directory=" + isDirectory()
+        + ", collapsed=" + collapsed + ", color=" + color.name() + "]";
+  }
+}
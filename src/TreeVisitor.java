@@ -0,0 +1,49 @@
+import java.nio.file.Path;
+
+/**
+ * Receives the entries of a tree as TruffulaPrinter walks it, in the order they
+ * are printed: sorted by the options' sort order and AlphabeticalFileSorter,
+ * depth first, with the options' hidden-file rules and filters applied.
+ *
+ * Every directory is followed directly by the entries below it, so a visitor
+ * can tell where a directory ends from the depth of the next entry.
+ *
+ * Implementations:
+ * - TruffulaPrinter's own text output, used by printTree().
+ * - JsonTreeWriter : writes the tree as nested JSON or as NDJSON.
+ */
+public interface TreeVisitor {
+
+  /**
+   * Called once, before any entry. The root is named as printTree() prints it,
+   * so the root of an archive is named after the archive.
+   *
+   * @param root the root directory of the tree
+   */
+  void start(TreeEntry root);
+
+  /**
+   * Called for every entry below the root.
+   *
+   * @param entry     the entry
+   * @param depth     the depth of the entry (children of the root are at depth 1)
+   * @param collapsed true if the entry is a directory that was not listed because of the maximum depth
+   */
+  void entry(TreeEntry entry, int depth, boolean collapsed);
+
+  /**
+   * Called after the entries of a directory that was cut short by the options'
+   * entry limit, for the entries that were left out. Does nothing by default.
+   *
+   * @param directory the directory the entries were left out of
+   * @param depth     the depth the entries would have been at
+   * @param count     how many entries were left out
+   */
+  default void more(Path directory, int depth, long count) {
+  }
+
+  /**
+   * Called once, after the last entry.
+   */
+  void end();
+}
@@ -0,0 +1,433 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a tree, then keeps it up to date as the filesystem changes.
+ *
+ * The tree is kept in memory as the listing of every directory. Directories are
+ * registered with a WatchService; when events arrive they are batched until
+ * no new event has come for the options' debounce time, then only the
+ * directories that changed are listed again and the tree is re-rendered from
+ * memory, without reading anything else.
+ *
+ * At most options.getMaxWatched() directories are registered. The rest are
+ * polled instead: every poll interval, their modification times are compared
+ * with the ones seen when they were last listed.
+ *
+ * The tree model is a DirectoryLister itself, so rendering goes through a
+ * TruffulaPrinter and looks exactly like a normal run. Include/exclude
+ * patterns and .gitignore rules are applied when directories are listed, so
+ * excluded subtrees are neither read nor watched.
+ *
+ * A TreeWatcher is used from one thread; close() may be called from any thread
+ * to stop run().
+ */
+public class TreeWatcher implements DirectoryLister, AutoCloseable {
+
+  /**
+   * The options for the tree; the display options also apply to every render.
+   */
+  private final TruffulaOptions options;
+
+  /**
+   * The printer every render is written to.
+   */
+  private final ColorPrinter out;
+
+  /**
+   * Lists directories from the filesystem, with the options' filters applied.
+   */
+  private final DirectoryLister lister;
+
+  /**
+   * The last listing of every directory in the tree.
+   */
+  private final Map<Path, List<TreeEntry>> listings = new HashMap<>();
+
+  /**
+   * The depth of every directory in the tree (the root is at depth 0).
+   */
+  private final Map<Path, Integer> depths = new HashMap<>();
+
+  /**
+   * The watch key of every registered directory.
+   */
+  private final Map<Path, WatchKey> keys = new HashMap<>();
+
+  /**
+   * The modification time of every polled directory when it was last listed.
+   */
+  private final Map<Path, Long> polled = new HashMap<>();
+
+  private WatchService watchService;
+  private volatile boolean closed;
+  private int renders;
+  private int listCalls;
+
+  /**
+   * Constructs a TreeWatcher.
+   *
+   * @param options the options for the tree
+   * @param out     the printer every render is written to
+   */
+  public TreeWatcher(TruffulaOptions options, ColorPrinter out) {
+    this.options = options;
+    this.out = out;
+    this.lister = TruffulaPrinter.filteredLister(TruffulaPrinter.defaultLister(options), options);
+  }
+
+  /**
+   * Reads the whole tree, prints it, and starts watching it.
+   *
+   * @throws IOException if the tree can't be read or watched
+   */
+  public void start() throws IOException {
+    Path root = options.getRootPath();
+    watchService = root.getFileSystem().newWatchService();
+    scan(root, 0);
+    render();
+  }
+
+  /**
+   * Prints the tree, then re-renders it after every change until close() is called.
+   *
+   * @throws IOException if the tree can't be read or watched
+   */
+  public void run() throws IOException {
+    start();
+    try {
+      while (!closed) {
+        poll(options.getWatchPollMillis(), TimeUnit.MILLISECONDS);
+      }
+    } catch (ClosedWatchServiceException e) {
+      // close() was called while waiting
+    }
+  }
+
+  /**
+   * Waits up to the timeout for changes. If there are any, waits until they stop
+   * for the debounce time, refreshes the directories that changed, and re-renders
+   * the tree. Polled directories are checked once the wait is over.
+   *
+   * @param timeout how long to wait for the first change
+   * @param unit    the unit of the timeout
+   * @return true if the tree was re-rendered; false otherwise
+   * @throws IOException if a changed directory can't be read or watched
+   */
+  public boolean poll(long timeout, TimeUnit unit) throws IOException {
+    Set<Path> changed = new LinkedHashSet<>();
+    Set<Path> rescan = new LinkedHashSet<>();
+
+    try {
+      WatchKey key = watchService.poll(timeout, unit);
+      if (key != null) {
+        // Keep collecting until the burst is over
+        long debounce = options.getWatchDebounceMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(debounce * 10);
+        while (key != null) {
+          collect(key, changed, rescan);
+          long left = deadline - System.nanoTime();
+          key = left > 0 ? watchService.poll(Math.min(debounce, TimeUnit.NANOSECONDS.toMillis(left)),
+              TimeUnit.MILLISECONDS) : null;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+
+    for (Map.Entry<Path, Long> entry : polled.entrySet()) {
+      if (modifiedTime(entry.getKey()) != entry.getValue()) {
+        changed.add(entry.getKey());
+      }
+    }
+
+    if (changed.isEmpty() && rescan.isEmpty()) {
+      return false;
+    }
+
+    for (Path directory : rescan) {
+      if (listings.containsKey(directory)) {
+        int depth = depths.get(directory);
+        forget(directory);
+        scan(directory, depth);
+      }
+    }
+    for (Path directory : changed) {
+      refresh(directory);
+    }
+    render();
+    return true;
+  }
+
+  /**
+   * Returns how many times the tree has been printed.
+   *
+   * @return the number of renders
+   */
+  public int getRenders() {
+    return renders;
+  }
+
+  /**
+   * Returns how many directories have been read from the filesystem.
+   *
+   * @return the number of listings
+   */
+  public int getListCalls() {
+    return listCalls;
+  }
+
+  /**
+   * Returns how many directories are registered with the WatchService.
+   *
+   * @return the number of watched directories
+   */
+  public int getWatchedCount() {
+    return keys.size();
+  }
+
+  /**
+   * Returns how many directories are polled because the watch limit was reached.
+   *
+   * @return the number of polled directories
+   */
+  public int getPolledCount() {
+    return polled.size();
+  }
+
+  /**
+   * Stops watching. A run() in progress returns.
+   *
+   * @throws IOException if the WatchService can't be closed
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (watchService != null) {
+      watchService.close();
+    }
+  }
+
+  /**
+   * Serves the in-memory listings, so that a TruffulaPrinter can render the
+   * tree without reading the filesystem.
+   */
+  @Override
+  public DirectoryStream<TreeEntry> list(Path directory, boolean showHidden) throws IOException {
+    List<TreeEntry> entries = listings.get(directory);
+    if (entries == null) {
+      throw new IOException("Not in the tree: " + directory);
+    }
+
+    return new DirectoryStream<TreeEntry>() {
+      @Override
+      public Iterator<TreeEntry> iterator() {
+        return entries.iterator();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  /**
+   * Drains a key's events into the set of directories to list again, or (for
+   * .gitignore changes, and lost events) to read again from scratch. A modified
+   * file only changes what is shown if directory sizes are shown or it is sorted
+   * by its size or time; its directory is then listed again for its new size.
+   */
+  private void collect(WatchKey key, Set<Path> changed, Set<Path> rescan) {
+    Path directory = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        rescan.add(directory);
+      } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+        if (options.isGitIgnore() && GitIgnoreLister.GITIGNORE.equals(event.context().toString())) {
+          rescan.add(directory);
+        } else if (options.isDiskUsage() || options.getSortKey().readsAttributes()) {
+          changed.add(directory);
+        }
+      } else {
+        changed.add(directory);
+      }
+    }
+
+    if (!key.reset() && directory.getParent() != null) {
+      // The directory is gone; its parent's listing will drop it
+      changed.add(directory.getParent());
+    }
+  }
+
+  /**
+   * Lists a directory again, dropping subdirectories that disappeared and reading
+   * the new ones.
+   */
+  private void refresh(Path directory) throws IOException {
+    List<TreeEntry> before = listings.get(directory);
+    if (before == null) {
+      return;
+    }
+    int depth = depths.get(directory);
+
+    if (!Files.isDirectory(directory)) {
+      forget(directory);
+      return;
+    }
+    List<TreeEntry> after = read(directory);
+    listings.put(directory, after);
+    if (polled.containsKey(directory)) {
+      polled.put(directory, modifiedTime(directory));
+    }
+
+    Set<Path> oldDirectories = directories(before);
+    Set<Path> newDirectories = directories(after);
+    for (Path old : oldDirectories) {
+      if (!newDirectories.contains(old)) {
+        forget(old);
+      }
+    }
+    for (Path added : newDirectories) {
+      if (!oldDirectories.contains(added) && !listings.containsKey(added)) {
+        scan(added, depth + 1);
+      }
+    }
+  }
+
+  /**
+   * Reads and watches a directory and everything below it, down to the maximum
+   * depth. With directory sizes, the whole tree is read, since everything below
+   * the maximum depth counts towards the sizes that are printed.
+   */
+  private void scan(Path start, int startDepth) throws IOException {
+    Deque<Path> pending = new ArrayDeque<>();
+    pending.push(start);
+    depths.put(start, startDepth);
+
+    while (!pending.isEmpty()) {
+      Path directory = pending.pop();
+      int depth = depths.get(directory);
+      if (!options.isDiskUsage() && !options.isListedAtDepth(depth)) {
+        depths.remove(directory);
+        continue;
+      }
+
+      List<TreeEntry> entries;
+      try {
+        entries = read(directory);
+      } catch (IOException e) {
+        if (directory.equals(start)) throw e;
+        // Deleted while we were reading; its parent's next refresh drops it
+        depths.remove(directory);
+        continue;
+      }
+      listings.put(directory, entries);
+      watch(directory);
+
+      for (Path child : directories(entries)) {
+        depths.put(child, depth + 1);
+        pending.push(child);
+      }
+    }
+  }
+
+  /**
+   * Registers a directory with the WatchService, or polls it once the limit is reached.
+   */
+  private void watch(Path directory) throws IOException {
+    if (keys.size() < options.getMaxWatched()) {
+      keys.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+    } else {
+      polled.put(directory, modifiedTime(directory));
+    }
+  }
+
+  /**
+   * Drops a directory and everything below it from the tree, and stops watching them.
+   */
+  private void forget(Path start) {
+    Deque<Path> pending = new ArrayDeque<>();
+    pending.push(start);
+    while (!pending.isEmpty()) {
+      Path directory = pending.pop();
+      List<TreeEntry> entries = listings.remove(directory);
+      depths.remove(directory);
+      polled.remove(directory);
+      WatchKey key = keys.remove(directory);
+      if (key != null) {
+        key.cancel();
+      }
+      if (entries != null) {
+        pending.addAll(directories(entries));
+      }
+    }
+  }
+
+  private List<TreeEntry> read(Path directory) throws IOException {
+    listCalls++;
+    List<TreeEntry> entries = new ArrayList<>();
+    try (DirectoryStream<TreeEntry> stream = lister.list(directory, options.isShowHidden())) {
+      for (TreeEntry entry : stream) {
+        entries.add(entry);
+      }
+    } catch (DirectoryIteratorException e) {
+      throw e.getCause();
+    }
+    return entries;
+  }
+
+  private static Set<Path> directories(List<TreeEntry> entries) {
+    Set<Path> directories = new LinkedHashSet<>();
+    for (TreeEntry entry : entries) {
+      if (entry.isDirectory()) {
+        directories.add(entry.getPath());
+      }
+    }
+    return directories;
+  }
+
+  /**
+   * Returns a directory's modification time in nanoseconds, or -1 if it can't be read.
+   */
+  private static long modifiedTime(Path directory) {
+    try {
+      return Files.getLastModifiedTime(directory).to(TimeUnit.NANOSECONDS);
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Prints the tree from memory, with the display options of the watched tree.
+   */
+  private void render() {
+    TruffulaOptions display = new TruffulaOptions(options.getRootPath(), options.isShowHidden(), options.isUseColor());
+    display.copyDisplayOptionsFrom(options);
+
+    if (renders > 0) {
+      out.println("");
+    }
+    new TruffulaPrinter(display, out, TruffulaPrinter.DEFAULT_COLOR_SEQUENCE, this).printTree();
+    renders++;
+  }
+}
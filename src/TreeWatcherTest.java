@@ -0,0 +1,268 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeWatcherTest {
+
+  private static final String NL = System.lineSeparator();
+
+  @Test
+  void testChangesAreRenderedFromMemory(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    try (TreeWatcher watcher = new TreeWatcher(options(root), new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      assertEquals(coldScan(root), plain(baos));
+      assertEquals(3, watcher.getListCalls());
+      assertEquals(3, watcher.getWatchedCount());
+
+      // A new file in a, and a new directory (with a file) in the root
+      Files.createFile(root.resolve("a/new.txt"));
+      Files.createDirectory(root.resolve("d"));
+      Files.createFile(root.resolve("d/inner.txt"));
+
+      assertTrue(pollUntilRendered(watcher, 2));
+      assertTrue(plain(baos).endsWith(NL + coldScan(root)), plain(baos));
+      // The root, a and d were read again; b was not
+      assertTrue(watcher.getListCalls() <= 3 + 4, "listCalls=" + watcher.getListCalls());
+      assertEquals(4, watcher.getWatchedCount());
+
+      // Nothing changed: no render
+      assertFalse(watcher.poll(100, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  @Test
+  void testBurstIsRenderedOnce(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    TruffulaOptions options = options(root);
+    options.setWatchDebounceMillis(300);
+
+    try (TreeWatcher watcher = new TreeWatcher(options, new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      for (int i = 0; i < 50; i++) {
+        Files.createFile(root.resolve("a/b/burst" + i + ".txt"));
+      }
+
+      assertTrue(watcher.poll(5, TimeUnit.SECONDS));
+      assertEquals(2, watcher.getRenders());
+      assertTrue(plain(baos).endsWith(NL + coldScan(root)));
+    }
+  }
+
+  @Test
+  void testDeletedSubtreeIsForgotten(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    try (TreeWatcher watcher = new TreeWatcher(options(root), new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      deleteTree(root.resolve("a"));
+
+      assertTrue(pollUntilRendered(watcher, 2));
+      assertTrue(plain(baos).endsWith(NL + coldScan(root)));
+      assertEquals(1, watcher.getWatchedCount());
+    }
+  }
+
+  @Test
+  void testDirectoriesPastTheLimitArePolled(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    TruffulaOptions options = options(root);
+    options.setMaxWatched(1);
+
+    try (TreeWatcher watcher = new TreeWatcher(options, new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      assertEquals(1, watcher.getWatchedCount());
+      assertEquals(2, watcher.getPolledCount());
+
+      // a/b is polled: only its mtime shows the change
+      Path b = root.resolve("a/b");
+      Files.createFile(b.resolve("polled.txt"));
+      Files.setLastModifiedTime(b, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+      assertTrue(pollUntilRendered(watcher, 2));
+      assertTrue(plain(baos).endsWith(NL + coldScan(root)));
+      assertTrue(plain(baos).contains("polled.txt"));
+    }
+  }
+
+  @Test
+  void testEntryLimitApplies(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    TruffulaOptions options = options(root);
+    options.setEntryLimit(1);
+
+    try (TreeWatcher watcher = new TreeWatcher(options, new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      assertEquals(coldScan(options), plain(baos));
+      assertTrue(plain(baos).contains("1 more"), plain(baos));
+    }
+  }
+
+  @Test
+  void testUnsortedKeepsListingOrder(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    for (int i = 0; i < 20; i++) {
+      Files.createFile(root.resolve("a/b/f" + i + ".txt"));
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    TruffulaOptions options = options(root);
+    options.setUnsorted(true);
+
+    try (TreeWatcher watcher = new TreeWatcher(options, new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      assertEquals(coldScan(options), plain(baos));
+    }
+  }
+
+  @Test
+  void testModifiedFileIsSortedAgain(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    Files.write(root.resolve("big.txt"), new byte[5]);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    TruffulaOptions options = options(root);
+    options.setSortKey(SortKey.SIZE);
+    options.setDirectoriesFirst(true);
+
+    try (TreeWatcher watcher = new TreeWatcher(options, new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      assertEquals(coldScan(options), plain(baos));
+      assertTrue(plain(baos).indexOf("big.txt") < plain(baos).indexOf("top.txt"));
+
+      // No entry is added or removed; top.txt only grows past big.txt
+      Files.write(root.resolve("top.txt"), new byte[10]);
+      assertTrue(pollUntilRendered(watcher, 2));
+      String render = plain(baos).substring(plain(baos).lastIndexOf(NL + "tree/"));
+      assertTrue(render.indexOf("top.txt") < render.indexOf("big.txt"), render);
+    }
+  }
+
+  @Test
+  void testModifiedFileUpdatesDiskUsage(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    TruffulaOptions options = options(root);
+    options.setDiskUsage(true);
+
+    try (TreeWatcher watcher = new TreeWatcher(options, new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      assertEquals(coldScan(options), plain(baos));
+
+      Files.write(root.resolve("a/b/y.txt"), new byte[110]);
+      assertTrue(pollUntilRendered(watcher, 2));
+      assertTrue(plain(baos).endsWith(NL + coldScan(options)), plain(baos));
+      assertTrue(plain(baos).contains("b/ (110B, 1 file)"), plain(baos));
+    }
+  }
+
+  @Test
+  void testDiskUsageBelowTheMaximumDepth(@TempDir File tempDir) throws IOException {
+    Path root = createTree(tempDir);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    TruffulaOptions options = options(root);
+    options.setDiskUsage(true);
+    options.setMaxDepth(1);
+
+    try (TreeWatcher watcher = new TreeWatcher(options, new ColorPrinter(new PrintStream(baos)))) {
+      watcher.start();
+      assertEquals(coldScan(options), plain(baos));
+
+      // a/b is below the maximum depth, but its files count towards a
+      Files.write(root.resolve("a/b/y.txt"), new byte[110]);
+      assertTrue(pollUntilRendered(watcher, 2));
+      assertTrue(plain(baos).endsWith(NL + coldScan(options)), plain(baos));
+      assertTrue(plain(baos).contains("a/ (110B, 2 files)"), plain(baos));
+    }
+  }
+
+  @Test
+  void testWatchFlags(@TempDir File tempDir) throws FileNotFoundException {
+    TruffulaOptions options = new TruffulaOptions(new String[] {"-w", "-wl", "10", tempDir.getAbsolutePath()});
+
+    assertTrue(options.isWatch());
+    assertEquals(10, options.getMaxWatched());
+    assertEquals(0, new TruffulaOptions(new String[] {"-w", "-wl", "0", tempDir.getAbsolutePath()}).getMaxWatched());
+    assertThrows(IllegalArgumentException.class,
+        () -> new TruffulaOptions(new String[] {"-w", "-wl", "-1", tempDir.getAbsolutePath()}));
+    assertFalse(new TruffulaOptions(new String[] {tempDir.getAbsolutePath()}).isWatch());
+  }
+
+  /**
+   * Polls until the tree has been rendered the given number of times, for at most 10 seconds.
+   */
+  private static boolean pollUntilRendered(TreeWatcher watcher, int renders) throws IOException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (watcher.getRenders() < renders && System.nanoTime() < deadline) {
+      watcher.poll(200, TimeUnit.MILLISECONDS);
+    }
+    return watcher.getRenders() >= renders;
+  }
+
+  private static TruffulaOptions options(Path root) {
+    TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+    options.setWatchDebounceMillis(50);
+    return options;
+  }
+
+  /**
+   * Creates:
+   *
+   * tree/
+   *  a/
+   *      b/
+   *          y.txt
+   *      x.txt
+   *  top.txt
+   */
+  private static Path createTree(File tempDir) throws IOException {
+    Path root = tempDir.toPath().resolve("tree");
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createFile(root.resolve("a/b/y.txt"));
+    Files.createFile(root.resolve("a/x.txt"));
+    Files.createFile(root.resolve("top.txt"));
+    return root;
+  }
+
+  private static String coldScan(Path root) {
+    return coldScan(new TruffulaOptions(root.toFile(), false, false));
+  }
+
+  private static String coldScan(TruffulaOptions options) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+    return plain(baos);
+  }
+
+  private static String plain(ByteArrayOutputStream baos) {
+    return baos.toString().replaceAll("\033\\[[0-9;]*m", "");
+  }
+
+  private static void deleteTree(Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,188 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A small before/after benchmark for the tree printer.
+ *
+ * Builds a synthetic tree in a temporary directory and times printTree() with
+ * each listing engine, writing the output to a stream that discards it. Then
+ * times printing the same number of lines through ColorPrinter and
+ * BufferedColorPrinter, and sorting directories of 100,000 and 1,000,000 names
+ * with a plain compareToIgnoreCase comparator and with AlphabeticalFileSorter.
+ * Finally builds a monorepo-style tree, where most entries live under build/
+ * and node_modules/, and times printing it with and without excluding them.
+ *
+ * Usage:
+ *
+ * java -cp target TruffulaBenchmark [entriesPerDirectory] [depth]
+ *
+ * or, after mvn test-compile:
+ *
+ * java -cp target/classes:target/test-classes TruffulaBenchmark [entriesPerDirectory] [depth]
+ *
+ * Defaults to 20 entries per directory, 5 levels deep (about 230,000 entries).
+ */
+public class TruffulaBenchmark {
+
+  private static final int WARMUP_RUNS = 3;
+  private static final int MEASURED_RUNS = 5;
+
+  public static void main(String[] args) throws IOException {
+    int fanout = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int depth = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    Path root = Files.createTempDirectory("truffula-bench");
+    try {
+      long entries = createTree(root, fanout, depth);
+      System.out.println("Tree: " + entries + " entries (" + fanout + " per directory, " + depth + " deep)");
+
+      time("java.io.File", entries, () -> printTree(root.toFile(), false));
+      time("java.nio", entries, () -> printTree(root.toFile(), true));
+
+      int lines = (int) entries;
+      time("ColorPrinter", lines, () -> printLines(new ColorPrinter(new PrintStream(OutputStream.nullOutputStream())), lines));
+      time("Buffered", lines, () -> printLines(new BufferedColorPrinter(OutputStream.nullOutputStream()), lines));
+    } finally {
+      deleteTree(root);
+    }
+
+    Path monorepo = Files.createTempDirectory("truffula-monorepo");
+    try {
+      long entries = createMonorepo(monorepo, fanout);
+      System.out.println("Monorepo: " + entries + " entries");
+
+      time("unfiltered", entries, () -> printTree(monorepo.toFile(), null));
+      time("excluded", entries, () -> printTree(monorepo.toFile(), "build|node_modules"));
+    } finally {
+      deleteTree(monorepo);
+    }
+
+    for (int size : new int[] {100_000, 1_000_000}) {
+      File[] names = randomFiles(size);
+      System.out.println("Sorting " + size + " names");
+      time("comparator", size, () -> Arrays.sort(names.clone(),
+          (f1, f2) -> f1.getName().compareToIgnoreCase(f2.getName())));
+      time("sorter", size, () -> AlphabeticalFileSorter.sort(names.clone()));
+    }
+  }
+
+  /**
+   * Runs the task a few times to warm up, then prints the average time of the measured runs.
+   */
+  private static void time(String label, long entries, Runnable task) {
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      task.run();
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      task.run();
+    }
+    double millis = (System.nanoTime() - start) / 1_000_000.0 / MEASURED_RUNS;
+
+    System.out.printf("%-14s %10.1f ms/run %14.0f entries/sec%n", label, millis, entries / (millis / 1000));
+  }
+
+  private static void printTree(File root, boolean useNio) {
+    TruffulaOptions options = new TruffulaOptions(root, false, true);
+    options.setUseNio(useNio);
+    new TruffulaPrinter(options, new PrintStream(OutputStream.nullOutputStream())).printTree();
+  }
+
+  private static void printTree(File root, String excludes) {
+    TruffulaOptions options = new TruffulaOptions(root, false, true);
+    options.setUseNio(true);
+    if (excludes != null) {
+      for (String pattern : excludes.split("\\|")) {
+        options.getPathFilter().exclude(pattern);
+      }
+    }
+    new TruffulaPrinter(options, new PrintStream(OutputStream.nullOutputStream())).printTree();
+  }
+
+  private static void printLines(ColorPrinter printer, int lines) {
+    for (int i = 0; i < lines; i++) {
+      printer.setCurrentColor(i % 2 == 0 ? ConsoleColor.PURPLE : ConsoleColor.YELLOW);
+      printer.println("         some-file-name.txt");
+    }
+    printer.flush();
+  }
+
+  /**
+   * Generates file names in the style of a build output directory: long shared
+   * prefixes, mixed case, and numbered suffixes.
+   */
+  private static File[] randomFiles(int count) {
+    Random random = new Random(1);
+    String[] prefixes = {"Generated", "generated", "ModuleTest", "module-test", "R$", "r$"};
+    File[] files = new File[count];
+    for (int i = 0; i < count; i++) {
+      String prefix = prefixes[random.nextInt(prefixes.length)];
+      files[i] = new File(prefix + "Class" + Integer.toString(random.nextInt(), 36) + ".class");
+    }
+    return files;
+  }
+
+  /**
+   * Creates a tree where every directory holds the given number of entries: half
+   * files, half subdirectories (except at the bottom level), plus one hidden file.
+   *
+   * @return the number of entries created
+   */
+  private static long createTree(Path dir, int fanout, int depth) throws IOException {
+    long count = 0;
+    Files.createFile(dir.resolve(".hidden"));
+    count++;
+
+    for (int i = 0; i < fanout; i++) {
+      if (depth > 1 && i % 2 == 0) {
+        Path child = Files.createDirectory(dir.resolve("Dir" + i));
+        count += 1 + createTree(child, fanout, depth - 1);
+      } else {
+        Files.createFile(dir.resolve("file" + i + ".txt"));
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Creates a monorepo layout: a modules/ directory with one module per fanout,
+   * each holding a small src/ tree, a larger build/ tree, and a node_modules/
+   * tree with several packages.
+   *
+   * @return the number of entries created
+   */
+  private static long createMonorepo(Path root, int fanout) throws IOException {
+    long count = 1;
+    Path modules = Files.createDirectory(root.resolve("modules"));
+    for (int m = 0; m < fanout; m++) {
+      Path module = Files.createDirectory(modules.resolve("module" + m));
+      Files.createFile(module.resolve("README.md"));
+      count += 5 + createTree(Files.createDirectory(module.resolve("src")), 6, 2);
+      count += createTree(Files.createDirectory(module.resolve("build")), 10, 3);
+
+      Path nodeModules = Files.createDirectory(module.resolve("node_modules"));
+      for (int p = 0; p < fanout; p++) {
+        count += 1 + createTree(Files.createDirectory(nodeModules.resolve("package" + p)), 6, 3);
+      }
+    }
+    return count;
+  }
+
+  private static void deleteTree(Path dir) throws IOException {
+    File[] children = dir.toFile().listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteTree(child.toPath());
+      }
+    }
+    Files.delete(dir);
+  }
+}
@@ -1,5 +1,12 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.Comparator;
 
 /**
  * Represents configuration options for controlling how a directory tree is displayed.
@@ -14,14 +21,45 @@ import java.io.FileNotFoundException;
  * 
  * Usage Example:
  * 
- * Arguments Format: [-h] [-nc] path
+ * Arguments Format: [-h] [-nc] [-nio] [-it] [-p threads] [-vt listings] [-rl] [-L depth] [-cm] [-k entries] [-U] [-sort key] [-df] [-P pattern]... [-I pattern]... [-gi] [-s snapshot] [-w] [-wl directories] [-du] [-o format] [-wi image] [-ri image] [-d before] [-stats] path
  * 
  * Flags:
  * - -h   : Show hidden files (defaults to false).
  * - -nc  : Do not use color (color is enabled by default).
+ * - -nio : List directories with java.nio instead of java.io.File (defaults to false).
+ * - -it  : Walk the tree iteratively instead of recursively, for very deep trees (defaults to false).
+ * - -p N : List directories on N threads ahead of the printer (defaults to 1).
+ * - -vt N: List directories on virtual threads, at most N at once (off by default).
+ * - -rl  : Only write color codes when the color changes (defaults to false).
+ * - -L N : Print at most N levels below the root; deeper directories are not read (no limit by default).
+ * - -cm  : Mark directories collapsed by -L with a trailing " [...]" (defaults to false).
+ * - -k N : Print at most the first N entries of each directory, then "… M more" (no limit by default).
+ * - -U   : Don't sort; print entries in the order each directory lists them, with memory that
+ *          stays flat however big a directory is. Implies -nio, and ignores -it, -p, -vt, -sort and -df (defaults to false).
+ * - -sort key : Sort each directory by name, size (largest first), time (newest first) or extension;
+ *               entries with equal keys are sorted by name (defaults to name).
+ * - -df  : List directories before files, then sort each group by the -sort key (defaults to false).
+ * - -P pattern : Only show files matching the glob pattern; may be repeated, or separated by '|'.
+ * - -I pattern : Leave out entries matching the glob pattern; excluded directories are not read.
+ *               May be repeated, or separated by '|' (e.g. -I 'build|node_modules|*.class').
+ * - -gi  : Leave out entries ignored by .gitignore files (and .git); ignored directories are not read.
+ * - -s file : Keep a snapshot of the tree in file; later runs only re-list directories that changed.
+ * - -w   : Keep running, and print the tree again whenever it changes (defaults to false).
+ * - -wl N: Watch at most N directories; poll the rest for changes (defaults to 8192; 0 polls all).
+ * - -du  : Show the total size and file count of every directory (defaults to false).
+ * - -o format : Print the tree as text, json (nested) or ndjson (one entry per line) (defaults to text).
+ * - -wi file : Save the tree to a binary image file instead of printing it.
+ * - -ri file : Print the tree saved in an image file; the path is then a directory in the image
+ *              ("." for its root), and the filesystem is not read.
+ * - -d before : Print only what was added, removed, or changed type since before, which is
+ *               another directory or a snapshot file written with -s.
+ * - -stats : When done, print how many directories were listed, entries seen and hidden,
+ *            attributes read, and bytes written, to standard error (defaults to false).
  * 
  * Path:
  * - The absolute or relative path to the directory whose contents will be printed.
+ * - Or the path to a zip or jar file, whose entries are printed as a tree straight from
+ *   the archive's central directory, without extracting anything.
  * 
  * Behavior:
  * - If color is disabled, all text will be printed in white.
@@ -43,25 +81,94 @@ import java.io.FileNotFoundException;
  * - Throws IllegalArgumentException if:
  *     - Unknown flags are provided.
  *     - The path argument is missing.
+ *     - A flag's value is missing or invalid.
+ *     - The path points to a file that is not a zip or jar file.
  * 
  * - Throws FileNotFoundException if:
  *     - The specified directory does not exist.
- *     - The path points to a file instead of a directory.
  */
 public class TruffulaOptions  {
-  private final File root;
+  /**
+   * Default number of children an iterative walk keeps in memory per open directory.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 1024;
+
+  /**
+   * The default for the most directories registered with a WatchService in watch mode.
+   */
+  public static final int DEFAULT_MAX_WATCHED = 8192;
+
+  /**
+   * The default time a burst of changes must be quiet for before the tree is printed again.
+   */
+  public static final long DEFAULT_WATCH_DEBOUNCE_MILLIS = 200;
+
+  /**
+   * The default interval between checks of the directories that are polled instead of watched.
+   */
+  public static final long DEFAULT_WATCH_POLL_MILLIS = 2000;
+
+  private final Path root;
   private final boolean showHidden;
   private final boolean useColor;
+  private boolean useNio;
+  private boolean iterative;
+  private int windowSize = DEFAULT_WINDOW_SIZE;
+  private int parallelism = 1;
+  private int virtualThreads;
+  private boolean runLengthColor;
+  private int maxDepth;
+  private boolean showCollapsed;
+  private int entryLimit;
+  private boolean unsorted;
+  private SortKey sortKey = SortKey.NAME;
+  private boolean directoriesFirst;
+  private final PathFilter pathFilter = new PathFilter();
+  private boolean gitIgnore;
+  private Path snapshotFile;
+  private boolean watch;
+  private int maxWatched = DEFAULT_MAX_WATCHED;
+  private long watchDebounceMillis = DEFAULT_WATCH_DEBOUNCE_MILLIS;
+  private long watchPollMillis = DEFAULT_WATCH_POLL_MILLIS;
+  private boolean diskUsage;
+  private OutputFormat outputFormat = OutputFormat.TEXT;
+  private Path writeImage;
+  private Path readImage;
+  private Path diffAgainst;
+  private Path archive;
+  private boolean printStats;
 
   /**
    * Returns the root directory from which the directory tree will be printed.
    *
    * @return the root directory as a File object
+   * @throws UnsupportedOperationException if the root is not on the default filesystem
    */
   public File getRoot() {
+    return root == null ? null : root.toFile();
+  }
+
+  /**
+   * Returns the root directory from which the directory tree will be printed, on
+   * whichever filesystem it belongs to.
+   *
+   * @return the root directory as a Path
+   */
+  public Path getRootPath() {
     return root;
   }
 
+  /**
+   * Returns the zip or jar file the tree is printed from, if the path named one.
+   * The root is then the root directory of the archive's filesystem, which stays
+   * open for as long as the tree is printed.
+   *
+   * @return the archive, or null if the path is a directory
+   */
+  public Path getArchive() {
+    return archive;
+  }
+
   /**
    * Indicates whether hidden files should be included when printing the directory tree.
    *
@@ -73,7 +180,16 @@ public class TruffulaOptions  {
 
   @Override
   public String toString() {
-    return "TruffulaOptions [root=" + root + ", showHidden=" + showHidden + ", useColor=" + useColor + "]";
+    return "TruffulaOptions [root=" + root + ", showHidden=" + showHidden + ", useColor=" + useColor
+        + ", useNio=" + useNio + ", iterative=" + iterative + ", parallelism=" + parallelism
+        + ", virtualThreads=" + virtualThreads + ", runLengthColor=" + runLengthColor
+        + ", maxDepth=" + maxDepth + ", showCollapsed=" + showCollapsed + ", entryLimit=" + entryLimit + ", unsorted=" + unsorted
+        + ", sortKey=" + sortKey + ", directoriesFirst=" + directoriesFirst
+        + ", pathFilter=" + pathFilter + ", gitIgnore=" + gitIgnore
+        + ", snapshotFile=" + snapshotFile + ", watch=" + watch + ", maxWatched=" + maxWatched
+        + ", diskUsage=" + diskUsage + ", outputFormat=" + outputFormat
+        + ", writeImage=" + writeImage + ", readImage=" + readImage
+        + ", diffAgainst=" + diffAgainst + ", archive=" + archive + ", printStats=" + printStats + "]";
   }
 
   /**
@@ -87,37 +203,605 @@ public class TruffulaOptions  {
     return useColor;
   }
 
+  /**
+   * Indicates whether directories should be listed with the java.nio engine
+   * (a DirectoryStream plus one attribute read per entry) instead of java.io.File.
+   * 
+   * The printed output is the same either way.
+   *
+   * @return true if the NIO engine should be used; false otherwise
+   */
+  public boolean isUseNio() {
+    return useNio;
+  }
+
+  /**
+   * Sets whether directories should be listed with the java.nio engine.
+   *
+   * @param useNio true to use the NIO engine; false to use java.io.File
+   */
+  public void setUseNio(boolean useNio) {
+    this.useNio = useNio;
+  }
+
+  /**
+   * Indicates whether the tree should be walked with an explicit stack instead of
+   * recursion. Iterative walks survive trees of any depth and keep at most
+   * getWindowSize() children of each open directory in memory.
+   *
+   * @return true if the tree should be walked iteratively; false otherwise
+   */
+  public boolean isIterative() {
+    return iterative;
+  }
+
+  /**
+   * Sets whether the tree should be walked with an explicit stack instead of recursion.
+   *
+   * @param iterative true to walk iteratively; false to walk recursively
+   */
+  public void setIterative(boolean iterative) {
+    this.iterative = iterative;
+  }
+
+  /**
+   * Returns the number of children an iterative walk keeps in memory per open directory.
+   * Directories with more children than this are sorted in a temporary file, in runs of this size.
+   *
+   * @return the window size
+   */
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  /**
+   * Sets the number of children an iterative walk keeps in memory per open directory.
+   *
+   * @param windowSize the window size, at least 1
+   * @throws IllegalArgumentException if windowSize is less than 1
+   */
+  public void setWindowSize(int windowSize) {
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("Window size must be at least 1.");
+    }
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * Returns the number of threads used to list directories. With more than one thread,
+   * directories are listed ahead of the printer on a ForkJoinPool; the output is the same.
+   *
+   * @return the number of listing threads
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the number of threads used to list directories.
+   *
+   * @param parallelism the number of listing threads, at least 1
+   * @throws IllegalArgumentException if parallelism is less than 1
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Returns the most directory listings that may run at once on virtual threads,
+   * or 0 if directories aren't listed on virtual threads. When set, this takes
+   * precedence over getParallelism().
+   *
+   * @return the number of concurrent virtual-thread listings, or 0
+   */
+  public int getVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Sets the most directory listings that may run at once on virtual threads.
+   * Use 0 to turn virtual-thread listing off.
+   *
+   * @param virtualThreads the number of concurrent listings, or 0
+   * @throws IllegalArgumentException if virtualThreads is negative
+   */
+  public void setVirtualThreads(int virtualThreads) {
+    if (virtualThreads < 0) {
+      throw new IllegalArgumentException("Virtual threads can't be negative.");
+    }
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * Indicates whether color codes should only be written when the color changes
+   * between lines, with a single reset at the end. The output looks the same in a
+   * terminal but is smaller.
+   *
+   * @return true if color codes are written only on color changes; false otherwise
+   */
+  public boolean isRunLengthColor() {
+    return runLengthColor;
+  }
+
+  /**
+   * Sets whether color codes should only be written when the color changes.
+   *
+   * @param runLengthColor true to write color codes only on color changes
+   */
+  public void setRunLengthColor(boolean runLengthColor) {
+    this.runLengthColor = runLengthColor;
+  }
+
+  /**
+   * Returns how many levels below the root are printed, or 0 if there is no limit.
+   * Directories at the last printed level are never listed.
+   *
+   * @return the maximum depth, or 0 for no limit
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Sets how many levels below the root are printed.
+   *
+   * @param maxDepth the maximum depth, or 0 for no limit
+   * @throws IllegalArgumentException if maxDepth is negative
+   */
+  public void setMaxDepth(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("Max depth can't be negative.");
+    }
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Indicates whether a directory at the given depth should be listed, i.e. whether
+   * its children are within the maximum depth. The root is at depth 0.
+   *
+   * @param depth the depth of the directory
+   * @return true if the directory's children should be printed; false otherwise
+   */
+  public boolean isListedAtDepth(int depth) {
+    return maxDepth == 0 || depth < maxDepth;
+  }
+
+  /**
+   * Indicates whether directories that were not expanded because of the maximum
+   * depth are marked with a trailing " [...]".
+   *
+   * @return true if collapsed directories are marked; false otherwise
+   */
+  public boolean isShowCollapsed() {
+    return showCollapsed;
+  }
+
+  /**
+   * Sets whether directories that were not expanded because of the maximum depth
+   * are marked with a trailing " [...]".
+   *
+   * @param showCollapsed true to mark collapsed directories
+   */
+  public void setShowCollapsed(boolean showCollapsed) {
+    this.showCollapsed = showCollapsed;
+  }
+
+  /**
+   * Returns how many entries of each directory are printed, or 0 if there is no
+   * limit. The rest of a directory is printed as a single "… N more" line.
+   *
+   * @return the entry limit, or 0 for no limit
+   */
+  public int getEntryLimit() {
+    return entryLimit;
+  }
+
+  /**
+   * Sets how many entries of each directory are printed. Only that many entries
+   * are kept while a directory is listed, so a directory of millions of files is
+   * never held or sorted in full.
+   *
+   * @param entryLimit the entry limit, or 0 for no limit
+   * @throws IllegalArgumentException if entryLimit is negative
+   */
+  public void setEntryLimit(int entryLimit) {
+    if (entryLimit < 0) {
+      throw new IllegalArgumentException("Entry limit can't be negative.");
+    }
+    this.entryLimit = entryLimit;
+  }
+
+  /**
+   * Indicates whether entries are printed in the order each directory lists them,
+   * without sorting.
+   *
+   * @return true if entries are not sorted; false otherwise
+   */
+  public boolean isUnsorted() {
+    return unsorted;
+  }
+
+  /**
+   * Sets whether entries are printed in the order each directory lists them. An
+   * unsorted walk reads each directory through a DirectoryStream and prints every
+   * entry as it arrives, so nothing of a directory is held in memory. It always
+   * lists with java.nio, on the calling thread.
+   *
+   * @param unsorted true to print entries without sorting them
+   */
+  public void setUnsorted(boolean unsorted) {
+    this.unsorted = unsorted;
+  }
+
+  /**
+   * Returns the key each directory's entries are sorted by.
+   *
+   * @return the sort key
+   */
+  public SortKey getSortKey() {
+    return sortKey;
+  }
+
+  /**
+   * Sets the key each directory's entries are sorted by. Entries with equal keys
+   * are sorted by name. Sizes and times are read once per entry, with the rest
+   * of its attributes, so sorting by them always lists with java.nio.
+   *
+   * @param sortKey the sort key
+   */
+  public void setSortKey(SortKey sortKey) {
+    this.sortKey = sortKey;
+  }
+
+  /**
+   * Indicates whether directories are listed before files.
+   *
+   * @return true if directories come first; false otherwise
+   */
+  public boolean isDirectoriesFirst() {
+    return directoriesFirst;
+  }
+
+  /**
+   * Sets whether directories are listed before files. Each group is still
+   * sorted by the sort key.
+   *
+   * @param directoriesFirst true to list directories first
+   */
+  public void setDirectoriesFirst(boolean directoriesFirst) {
+    this.directoriesFirst = directoriesFirst;
+  }
+
+  /**
+   * Returns the order entries are sorted in before their names are compared:
+   * directories first if asked for, then the sort key.
+   *
+   * @return the comparator, or null if entries are only sorted by name
+   */
+  public Comparator<TreeEntry> getSortOrder() {
+    Comparator<TreeEntry> order = sortKey.getOrder();
+    if (directoriesFirst) {
+      return order == null ? SortKey.DIRECTORIES_FIRST : SortKey.DIRECTORIES_FIRST.thenComparing(order);
+    }
+    return order;
+  }
+
+  /**
+   * Returns the include and exclude patterns that decide which entries are shown.
+   * Patterns are added to the returned filter directly.
+   *
+   * @return the path filter
+   */
+  public PathFilter getPathFilter() {
+    return pathFilter;
+  }
+
+  /**
+   * Indicates whether entries ignored by .gitignore files are left out of the tree.
+   *
+   * @return true if .gitignore files are honored; false otherwise
+   */
+  public boolean isGitIgnore() {
+    return gitIgnore;
+  }
+
+  /**
+   * Sets whether entries ignored by .gitignore files are left out of the tree.
+   *
+   * @param gitIgnore true to honor .gitignore files
+   */
+  public void setGitIgnore(boolean gitIgnore) {
+    this.gitIgnore = gitIgnore;
+  }
+
+  /**
+   * Returns the file that holds the snapshot of the tree from the previous run,
+   * or null if no snapshot is kept.
+   *
+   * @return the snapshot file, or null
+   */
+  public Path getSnapshotFile() {
+    return snapshotFile;
+  }
+
+  /**
+   * Sets the file that holds the snapshot of the tree between runs. The file is
+   * created by the first run. It should live outside the tree: writing it inside
+   * would change a directory's mtime on every run.
+   *
+   * @param snapshotFile the snapshot file, or null to not keep a snapshot
+   */
+  public void setSnapshotFile(Path snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  /**
+   * Indicates whether the tree is watched and printed again whenever it changes.
+   *
+   * @return true for watch mode; false to print the tree once
+   */
+  public boolean isWatch() {
+    return watch;
+  }
+
+  /**
+   * Sets whether the tree is watched and printed again whenever it changes.
+   *
+   * @param watch true for watch mode
+   */
+  public void setWatch(boolean watch) {
+    this.watch = watch;
+  }
+
+  /**
+   * Returns the most directories registered with a WatchService in watch mode.
+   * Directories past the limit are polled for changes instead.
+   *
+   * @return the watch limit
+   */
+  public int getMaxWatched() {
+    return maxWatched;
+  }
+
+  /**
+   * Sets the most directories registered with a WatchService in watch mode.
+   *
+   * @param maxWatched the watch limit; 0 polls every directory
+   * @throws IllegalArgumentException if maxWatched is negative
+   */
+  public void setMaxWatched(int maxWatched) {
+    if (maxWatched < 0) {
+      throw new IllegalArgumentException("Watch limit can't be negative.");
+    }
+    this.maxWatched = maxWatched;
+  }
+
+  /**
+   * Returns how long a burst of changes must be quiet for before the tree is printed again.
+   *
+   * @return the debounce time in milliseconds
+   */
+  public long getWatchDebounceMillis() {
+    return watchDebounceMillis;
+  }
+
+  /**
+   * Sets how long a burst of changes must be quiet for before the tree is printed again.
+   *
+   * @param watchDebounceMillis the debounce time in milliseconds, at least 1
+   * @throws IllegalArgumentException if watchDebounceMillis is less than 1
+   */
+  public void setWatchDebounceMillis(long watchDebounceMillis) {
+    if (watchDebounceMillis < 1) {
+      throw new IllegalArgumentException("Debounce time must be at least 1 ms.");
+    }
+    this.watchDebounceMillis = watchDebounceMillis;
+  }
+
+  /**
+   * Returns the interval between checks of the directories that are polled instead of watched.
+   *
+   * @return the poll interval in milliseconds
+   */
+  public long getWatchPollMillis() {
+    return watchPollMillis;
+  }
+
+  /**
+   * Sets the interval between checks of the directories that are polled instead of watched.
+   *
+   * @param watchPollMillis the poll interval in milliseconds, at least 1
+   * @throws IllegalArgumentException if watchPollMillis is less than 1
+   */
+  public void setWatchPollMillis(long watchPollMillis) {
+    if (watchPollMillis < 1) {
+      throw new IllegalArgumentException("Poll interval must be at least 1 ms.");
+    }
+    this.watchPollMillis = watchPollMillis;
+  }
+
+  /**
+   * Indicates whether every directory line shows the total size and number of
+   * files below it.
+   *
+   * @return true if directory sizes are shown; false otherwise
+   */
+  public boolean isDiskUsage() {
+    return diskUsage;
+  }
+
+  /**
+   * Sets whether every directory line shows the total size and number of files below it.
+   *
+   * @param diskUsage true to show directory sizes
+   */
+  public void setDiskUsage(boolean diskUsage) {
+    this.diskUsage = diskUsage;
+  }
+
+  /**
+   * Indicates whether a summary of TreeMetrics is printed to standard error at the end of the run.
+   *
+   * @return true if the summary is printed; false otherwise
+   */
+  public boolean isPrintStats() {
+    return printStats;
+  }
+
+  /**
+   * Sets whether a summary of TreeMetrics is printed to standard error at the end of the run.
+   *
+   * @param printStats true to print the summary
+   */
+  public void setPrintStats(boolean printStats) {
+    this.printStats = printStats;
+  }
+
+  /**
+   * Returns the format the tree is printed in.
+   *
+   * @return the output format
+   */
+  public OutputFormat getOutputFormat() {
+    return outputFormat;
+  }
+
+  /**
+   * Sets the format the tree is printed in.
+   *
+   * @param outputFormat the output format
+   */
+  public void setOutputFormat(OutputFormat outputFormat) {
+    this.outputFormat = outputFormat;
+  }
+
+  /**
+   * Returns the image file the tree is saved to instead of being printed.
+   *
+   * @return the image file, or null if the tree is printed
+   */
+  public Path getWriteImage() {
+    return writeImage;
+  }
+
+  /**
+   * Sets the image file the tree is saved to instead of being printed.
+   *
+   * @param writeImage the image file, or null to print the tree
+   */
+  public void setWriteImage(Path writeImage) {
+    this.writeImage = writeImage;
+  }
+
+  /**
+   * Returns the image file the tree is printed from. When set, the root is a
+   * directory in the image, relative to its root.
+   *
+   * @return the image file, or null if the tree is read from the filesystem
+   */
+  public Path getReadImage() {
+    return readImage;
+  }
+
+  /**
+   * Sets the image file the tree is printed from.
+   *
+   * @param readImage the image file, or null to read the filesystem
+   */
+  public void setReadImage(Path readImage) {
+    this.readImage = readImage;
+  }
+
+  /**
+   * Returns the directory or snapshot file the tree is compared with.
+   *
+   * @return the tree to compare with, or null if the tree is printed
+   */
+  public Path getDiffAgainst() {
+    return diffAgainst;
+  }
+
+  /**
+   * Sets the directory or snapshot file the tree is compared with. When set, only
+   * the differences are printed.
+   *
+   * @param diffAgainst the tree to compare with, or null to print the tree
+   */
+  public void setDiffAgainst(Path diffAgainst) {
+    this.diffAgainst = diffAgainst;
+  }
+
   /**
    * Constructs a TruffulaOptions object based on command-line arguments.
    * 
    * Supported Flags:
    * - -h   : Show hidden files (defaults to false).
    * - -nc  : Do not use color (uses color by default).
+   * - -nio : List directories with java.nio (uses java.io.File by default).
+   * - -it  : Walk the tree iteratively (walks recursively by default).
+   * - -p N : List directories on N threads (uses 1 by default).
+   * - -vt N: List directories on virtual threads, at most N at once (off by default).
+   * - -rl  : Only write color codes when the color changes (off by default).
+   * - -L N : Print at most N levels below the root (no limit by default).
+   * - -cm  : Mark directories collapsed by -L (off by default).
+   * - -k N : Print at most N entries per directory (no limit by default).
+   * - -U   : Print entries in the order directories list them (sorted by default).
+   * - -sort key : Sort by name, size, time or extension (name by default).
+   * - -df  : List directories before files (off by default).
+   * - -P pattern : Only show files matching the pattern (may be repeated).
+   * - -I pattern : Leave out entries matching the pattern (may be repeated).
+   * - -gi  : Leave out entries ignored by .gitignore files (off by default).
+   * - -s file : Reuse and update the snapshot in file (off by default).
+   * - -w   : Watch the tree and print it again when it changes (off by default).
+   * - -wl N: Watch at most N directories, polling the rest (8192 by default; 0 polls all).
+   * - -du  : Show the total size and file count of every directory (off by default).
+   * - -o format : Print the tree as text, json or ndjson (text by default).
+   * - -wi file : Save the tree to an image file instead of printing it (off by default).
+   * - -ri file : Print a directory of the tree saved in an image file (off by default).
+   * - -d before : Print the differences from another directory or a snapshot (off by default).
+   * - -stats : Print a summary of the work done to standard error (off by default).
    * 
    * The last argument must be the path to the directory.
    * 
-   * @param args command-line arguments in the format [-h] [-nc] path
-   * @throws IllegalArgumentException if unknown arguments are provided or the path is missing
-   * @throws FileNotFoundException if the directory cannot be found or if the path points to a file
+   * @param args command-line arguments in the format [-h] [-nc] [-nio] [-it] [-p threads] [-vt listings] [-rl] [-L depth] [-cm] [-k entries] [-U] [-sort key] [-df] [-P pattern]... [-I pattern]... [-gi] [-s snapshot] [-w] [-wl directories] [-du] [-o format] [-wi image] [-ri image] [-d before] [-stats] path
+   * @throws IllegalArgumentException if unknown arguments are provided, the path is missing, or the path
+   *         points to a file that is not an archive
+   * @throws FileNotFoundException if the directory cannot be found
    */
   public TruffulaOptions(String[] args) throws IllegalArgumentException, FileNotFoundException {
-    if (args.length == 0 || args.length > 3) {
-      throw new IllegalArgumentException("Missing arguments or too many flags.");
+    if (args.length == 0) {
+      throw new IllegalArgumentException("Missing arguments.");
     }
 
     boolean showHiddenToggle = false;
     boolean setHidden = false;
     boolean useColorToggle = true;
     boolean setColor = false;
-    File path = new File(args[args.length - 1]);
-
-    if (!path.exists()) {
-      throw new FileNotFoundException("File/directory not found.");
-    } else if (!path.isDirectory()) {
-      throw new IllegalArgumentException("File is not a directory.");
-    }
-
-    root = path;
+    boolean setNio = false;
+    boolean setIterative = false;
+    boolean setParallelism = false;
+    boolean setVirtualThreads = false;
+    boolean setRunLength = false;
+    boolean setMaxDepth = false;
+    boolean setCollapsed = false;
+    boolean setEntryLimit = false;
+    boolean setUnsorted = false;
+    boolean setSortKey = false;
+    boolean setDirectoriesFirst = false;
+    boolean setGitIgnore = false;
+    boolean setSnapshot = false;
+    boolean setWatch = false;
+    boolean setMaxWatched = false;
+    boolean setDiskUsage = false;
+    boolean setOutputFormat = false;
+    boolean setWriteImage = false;
+    boolean setReadImage = false;
+    boolean setDiff = false;
+    boolean setStats = false;
+    Path path = Path.of(args[args.length - 1]);
 
     if (args.length > 1) {
       for (int i = 0; i < args.length - 1; i++) {
@@ -134,12 +818,162 @@ public class TruffulaOptions  {
           }
           useColorToggle = false;
           setColor = true;
+        } else if (flag.equals("-nio")) {
+          if (setNio == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          useNio = true;
+          setNio = true;
+        } else if (flag.equals("-it")) {
+          if (setIterative == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          iterative = true;
+          setIterative = true;
+        } else if (flag.equals("-p")) {
+          if (setParallelism == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          parallelism = parsePositiveInt(args, ++i, flag);
+          setParallelism = true;
+        } else if (flag.equals("-vt")) {
+          if (setVirtualThreads == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          virtualThreads = parsePositiveInt(args, ++i, flag);
+          setVirtualThreads = true;
+        } else if (flag.equals("-rl")) {
+          if (setRunLength == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          runLengthColor = true;
+          setRunLength = true;
+        } else if (flag.equals("-L")) {
+          if (setMaxDepth == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          maxDepth = parsePositiveInt(args, ++i, flag);
+          setMaxDepth = true;
+        } else if (flag.equals("-cm")) {
+          if (setCollapsed == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          showCollapsed = true;
+          setCollapsed = true;
+        } else if (flag.equals("-k")) {
+          if (setEntryLimit == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          entryLimit = parsePositiveInt(args, ++i, flag);
+          setEntryLimit = true;
+        } else if (flag.equals("-U")) {
+          if (setUnsorted == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          unsorted = true;
+          setUnsorted = true;
+        } else if (flag.equals("-sort")) {
+          if (setSortKey == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          sortKey = parseSortKey(value(args, ++i, flag));
+          setSortKey = true;
+        } else if (flag.equals("-df")) {
+          if (setDirectoriesFirst == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          directoriesFirst = true;
+          setDirectoriesFirst = true;
+        } else if (flag.equals("-P")) {
+          for (String pattern : patternValues(args, ++i, flag)) {
+            pathFilter.include(pattern);
+          }
+        } else if (flag.equals("-I")) {
+          for (String pattern : patternValues(args, ++i, flag)) {
+            pathFilter.exclude(pattern);
+          }
+        } else if (flag.equals("-gi")) {
+          if (setGitIgnore == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          gitIgnore = true;
+          setGitIgnore = true;
+        } else if (flag.equals("-s")) {
+          if (setSnapshot == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          snapshotFile = Path.of(value(args, ++i, flag));
+          setSnapshot = true;
+        } else if (flag.equals("-w")) {
+          if (setWatch == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          watch = true;
+          setWatch = true;
+        } else if (flag.equals("-wl")) {
+          if (setMaxWatched == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          maxWatched = parseNonNegativeInt(args, ++i, flag);
+          setMaxWatched = true;
+        } else if (flag.equals("-du")) {
+          if (setDiskUsage == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          diskUsage = true;
+          setDiskUsage = true;
+        } else if (flag.equals("-o")) {
+          if (setOutputFormat == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          outputFormat = parseOutputFormat(value(args, ++i, flag));
+          setOutputFormat = true;
+        } else if (flag.equals("-wi")) {
+          if (setWriteImage == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          writeImage = Path.of(value(args, ++i, flag));
+          setWriteImage = true;
+        } else if (flag.equals("-ri")) {
+          if (setReadImage == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          readImage = Path.of(value(args, ++i, flag));
+          setReadImage = true;
+        } else if (flag.equals("-d")) {
+          if (setDiff == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          diffAgainst = Path.of(value(args, ++i, flag));
+          setDiff = true;
+        } else if (flag.equals("-stats")) {
+          if (setStats == true) {
+            throw new IllegalArgumentException("Can only set flag once.");
+          }
+          printStats = true;
+          setStats = true;
         } else {
           throw new IllegalArgumentException("Command contains unknown/invalid flags.");
         }
       }
     }
 
+    // With -ri the path is a directory in the image, not on disk
+    if (readImage == null && !Files.exists(path)) {
+      throw new FileNotFoundException("File/directory not found.");
+    }
+
+    // A zip or jar file is printed from the filesystem of its entries
+    if (readImage == null && !Files.isDirectory(path)) {
+      if (watch) {
+        throw new IllegalArgumentException("Can't watch an archive.");
+      }
+      root = openArchive(path);
+      archive = path;
+    } else {
+      root = path;
+    }
+
     if (showHiddenToggle) { 
       showHidden = true;
     } else {
@@ -161,8 +995,172 @@ public class TruffulaOptions  {
    * @param useColor   whether color should be used in the output
    */
   public TruffulaOptions(File root, boolean showHidden, boolean useColor) {
+    this(root == null ? null : root.toPath(), showHidden, useColor);
+  }
+
+  /**
+   * Constructs a TruffulaOptions object with explicit values, for a root on any
+   * filesystem: a zip file, an in-memory filesystem, and so on.
+   * 
+   * @param root       the root directory for the directory tree
+   * @param showHidden whether hidden files should be displayed
+   * @param useColor   whether color should be used in the output
+   */
+  public TruffulaOptions(Path root, boolean showHidden, boolean useColor) {
     this.root = root;
     this.showHidden = showHidden;
     this.useColor = useColor;
   }
+
+  /**
+   * Copies the options that decide how a tree is printed once its directories
+   * have been listed: the walk, depth limit, entry limit, order, colors and
+   * directory sizes. The options that decide how directories are read (the
+   * lister, threads, filters and snapshot) and what is done with the tree (watch,
+   * output format, images, diff, stats) are left alone.
+   *
+   * Every option that changes what printTree() prints from a given lister is
+   * copied, so that a tree printed again from memory looks like the first run.
+   *
+   * @param other the options to copy from
+   */
+  public void copyDisplayOptionsFrom(TruffulaOptions other) {
+    iterative = other.iterative;
+    windowSize = other.windowSize;
+    runLengthColor = other.runLengthColor;
+    maxDepth = other.maxDepth;
+    showCollapsed = other.showCollapsed;
+    entryLimit = other.entryLimit;
+    unsorted = other.unsorted;
+    sortKey = other.sortKey;
+    directoriesFirst = other.directoriesFirst;
+    diskUsage = other.diskUsage;
+  }
+
+  /**
+   * Opens a zip or jar file as a read-only filesystem. Only the central directory
+   * is read: directories that are implied by the entries' paths, but have no
+   * entries of their own, are filled in, and no entry's data is read until it
+   * is opened.
+   *
+   * @param file the archive
+   * @return the root directory of the archive
+   * @throws IllegalArgumentException if the file is not an archive
+   */
+  private static Path openArchive(Path file) {
+    try {
+      FileSystem fileSystem = FileSystems.newFileSystem(file);
+      return fileSystem.getRootDirectories().iterator().next();
+    } catch (IOException | ProviderNotFoundException e) {
+      throw new IllegalArgumentException("File is not a directory or an archive.");
+    }
+  }
+
+  /**
+   * Parses the name of an output format, in any case.
+   *
+   * @param name the name of the format
+   * @return the format
+   * @throws IllegalArgumentException if there is no such format
+   */
+  private static OutputFormat parseOutputFormat(String name) {
+    for (OutputFormat format : OutputFormat.values()) {
+      if (format.name().equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unknown output format: " + name + ".");
+  }
+
+  /**
+   * Parses the name of a sort key, in any case.
+   *
+   * @param name the name of the key
+   * @return the sort key
+   * @throws IllegalArgumentException if there is no such key
+   */
+  private static SortKey parseSortKey(String name) {
+    for (SortKey key : SortKey.values()) {
+      if (key.name().equalsIgnoreCase(name)) {
+        return key;
+      }
+    }
+    throw new IllegalArgumentException("Unknown sort key: " + name + ".");
+  }
+
+  /**
+   * Reads the value that follows a flag as one or more glob patterns separated by '|'.
+   *
+   * @param args  the command-line arguments
+   * @param index the index of the value
+   * @param flag  the flag the value belongs to, for error messages
+   * @return the patterns
+   * @throws IllegalArgumentException if the value is missing
+   */
+  private static String[] patternValues(String[] args, int index, String flag) {
+    return value(args, index, flag).split("\\|");
+  }
+
+  /**
+   * Reads the value that follows a flag. The value may not be the last argument,
+   * since that is always the path.
+   *
+   * @param args  the command-line arguments
+   * @param index the index of the value
+   * @param flag  the flag the value belongs to, for error messages
+   * @return the value
+   * @throws IllegalArgumentException if the value is missing
+   */
+  private static String value(String[] args, int index, String flag) {
+    if (index >= args.length - 1) {
+      throw new IllegalArgumentException("Missing value for " + flag + ".");
+    }
+    return args[index];
+  }
+
+  /**
+   * Reads the value that follows a flag as a positive integer. The value may not be
+   * the last argument, since that is always the path.
+   *
+   * @param args  the command-line arguments
+   * @param index the index of the value
+   * @param flag  the flag the value belongs to, for error messages
+   * @return the parsed value
+   * @throws IllegalArgumentException if the value is missing or not a positive integer
+   */
+  private static int parsePositiveInt(String[] args, int index, String flag) {
+    String text = value(args, index, flag);
+    try {
+      int value = Integer.parseInt(text);
+      if (value < 1) {
+        throw new IllegalArgumentException(flag + " must be at least 1.");
+      }
+      return value;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(flag + " must be a number.");
+    }
+  }
+
+  /**
+   * Reads the value that follows a flag as an integer of 0 or more. The value may
+   * not be the last argument, since that is always the path.
+   *
+   * @param args  the command-line arguments
+   * @param index the index of the value
+   * @param flag  the flag the value belongs to, for error messages
+   * @return the parsed value
+   * @throws IllegalArgumentException if the value is missing or negative
+   */
+  private static int parseNonNegativeInt(String[] args, int index, String flag) {
+    String text = value(args, index, flag);
+    try {
+      int value = Integer.parseInt(text);
+      if (value < 0) {
+        throw new IllegalArgumentException(flag + " can't be negative.");
+      }
+      return value;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(flag + " must be a number.");
+    }
+  }
 }
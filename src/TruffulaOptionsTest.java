@@ -1,10 +1,16 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -84,4 +90,215 @@ public class TruffulaOptionsTest {
       TruffulaOptions options = new TruffulaOptions(args);
     }, "Illegal Argument Exception Expected");
   }
+
+  @Test
+  void testNioFlag(@TempDir File tempDir) throws FileNotFoundException {
+    // Arrange: Prepare the arguments with the temp directory
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+    String directoryPath = directory.getAbsolutePath();
+    String[] args = {"-nio", "-h", "-nc", directoryPath};
+
+    // Act: Create TruffulaOptions instance
+    TruffulaOptions options = new TruffulaOptions(args);
+
+    // Assert: Check that every flag was picked up
+    assertTrue(options.isUseNio());
+    assertTrue(options.isShowHidden());
+    assertFalse(options.isUseColor());
+  }
+
+  @Test
+  void testNioDefaultsToFalse(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+    String[] args = {directory.getAbsolutePath()};
+
+    TruffulaOptions options = new TruffulaOptions(args);
+
+    assertFalse(options.isUseNio());
+  }
+
+  @Test
+  void testParallelismFlag(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+    String[] args = {"-h", "-p", "8", directory.getAbsolutePath()};
+
+    TruffulaOptions options = new TruffulaOptions(args);
+
+    assertEquals(8, options.getParallelism());
+    assertTrue(options.isShowHidden());
+  }
+
+  @Test
+  void testMaxDepthFlags(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+    String[] args = {"-L", "2", "-cm", directory.getAbsolutePath()};
+
+    TruffulaOptions options = new TruffulaOptions(args);
+
+    assertEquals(2, options.getMaxDepth());
+    assertTrue(options.isShowCollapsed());
+    assertTrue(options.isListedAtDepth(1));
+    assertFalse(options.isListedAtDepth(2));
+  }
+
+  @Test
+  void testMaxDepthDefaultsToUnlimited(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+
+    TruffulaOptions options = new TruffulaOptions(new String[] {directory.getAbsolutePath()});
+
+    assertEquals(0, options.getMaxDepth());
+    assertFalse(options.isShowCollapsed());
+    assertTrue(options.isListedAtDepth(10_000));
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-L", "0", directory.getAbsolutePath()});
+    });
+  }
+
+  @Test
+  void testEntryLimitFlag(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+
+    assertEquals(100, new TruffulaOptions(new String[] {"-k", "100", directory.getAbsolutePath()}).getEntryLimit());
+    assertEquals(0, new TruffulaOptions(new String[] {directory.getAbsolutePath()}).getEntryLimit());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-k", "0", directory.getAbsolutePath()});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-k", "1", "-k", "2", directory.getAbsolutePath()});
+    });
+  }
+
+  @Test
+  void testUnsortedFlag(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+
+    assertTrue(new TruffulaOptions(new String[] {"-U", directory.getAbsolutePath()}).isUnsorted());
+    assertFalse(new TruffulaOptions(new String[] {directory.getAbsolutePath()}).isUnsorted());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-U", "-U", directory.getAbsolutePath()});
+    });
+  }
+
+  @Test
+  void testSortFlags(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+
+    TruffulaOptions options = new TruffulaOptions(new String[] {"-sort", "Time", "-df", directory.getAbsolutePath()});
+    assertEquals(SortKey.TIME, options.getSortKey());
+    assertTrue(options.isDirectoriesFirst());
+    assertEquals(SortKey.EXTENSION,
+        new TruffulaOptions(new String[] {"-sort", "extension", directory.getAbsolutePath()}).getSortKey());
+
+    TruffulaOptions defaults = new TruffulaOptions(new String[] {directory.getAbsolutePath()});
+    assertEquals(SortKey.NAME, defaults.getSortKey());
+    assertFalse(defaults.isDirectoriesFirst());
+    assertNull(defaults.getSortOrder());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-sort", "color", directory.getAbsolutePath()});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-sort", "size", "-sort", "time", directory.getAbsolutePath()});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-df", "-df", directory.getAbsolutePath()});
+    });
+  }
+
+  @Test
+  void testGitIgnoreFlag(@TempDir File tempDir) throws FileNotFoundException {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+
+    assertTrue(new TruffulaOptions(new String[] {"-gi", directory.getAbsolutePath()}).isGitIgnore());
+    assertFalse(new TruffulaOptions(new String[] {directory.getAbsolutePath()}).isGitIgnore());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-gi", "-gi", directory.getAbsolutePath()});
+    });
+  }
+
+  @Test
+  void testCopyDisplayOptions(@TempDir File tempDir) throws FileNotFoundException {
+    String[] args = {"-it", "-rl", "-L", "3", "-cm", "-k", "5", "-U", "-sort", "size", "-df", "-du",
+        "-nio", "-p", "4", "-gi", "-I", "*.log", "-s", "tree.snapshot", "-w", "-stats", tempDir.getAbsolutePath()};
+    TruffulaOptions options = new TruffulaOptions(args);
+    options.setWindowSize(7);
+
+    TruffulaOptions copy = new TruffulaOptions(tempDir, false, true);
+    copy.copyDisplayOptionsFrom(options);
+
+    // Everything that changes how the listed tree is printed
+    assertTrue(copy.isIterative());
+    assertEquals(7, copy.getWindowSize());
+    assertTrue(copy.isRunLengthColor());
+    assertEquals(3, copy.getMaxDepth());
+    assertTrue(copy.isShowCollapsed());
+    assertEquals(5, copy.getEntryLimit());
+    assertTrue(copy.isUnsorted());
+    assertEquals(SortKey.SIZE, copy.getSortKey());
+    assertTrue(copy.isDirectoriesFirst());
+    assertTrue(copy.isDiskUsage());
+
+    // But nothing about how directories are read, or what else is done with the tree
+    assertFalse(copy.isUseNio());
+    assertEquals(1, copy.getParallelism());
+    assertFalse(copy.isGitIgnore());
+    assertTrue(copy.getPathFilter().isEmpty());
+    assertNull(copy.getSnapshotFile());
+    assertFalse(copy.isWatch());
+    assertFalse(copy.isPrintStats());
+  }
+
+  @Test
+  void testParallelismFlagNeedsValue(@TempDir File tempDir) {
+    File directory = new File(tempDir, "subfolder");
+    directory.mkdir();
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-p", directory.getAbsolutePath()});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-p", "zero", directory.getAbsolutePath()});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TruffulaOptions(new String[] {"-p", "0", directory.getAbsolutePath()});
+    });
+  }
+
+  @Test
+  void testArchivePath(@TempDir File tempDir) throws IOException {
+    Path jar = tempDir.toPath().resolve("app.jar");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+      out.closeEntry();
+    }
+
+    TruffulaOptions options = new TruffulaOptions(new String[] {jar.toString()});
+    try {
+      assertEquals(jar, options.getArchive());
+      assertEquals("/", options.getRootPath().toString());
+      assertTrue(Files.isDirectory(options.getRootPath().resolve("META-INF")));
+    } finally {
+      options.getRootPath().getFileSystem().close();
+    }
+    assertThrows(IllegalArgumentException.class, () -> new TruffulaOptions(new String[] {"-w", jar.toString()}));
+
+    // A file that isn't an archive is still rejected, as an invalid path rather than a missing one
+    Path text = Files.writeString(tempDir.toPath().resolve("notes.txt"), "not a zip");
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> new TruffulaOptions(new String[] {text.toString()}));
+    assertEquals("File is not a directory or an archive.", e.getMessage());
+    assertThrows(FileNotFoundException.class,
+        () -> new TruffulaOptions(new String[] {tempDir.toPath().resolve("missing.zip").toString()}));
+    assertNull(new TruffulaOptions(new String[] {tempDir.getAbsolutePath()}).getArchive());
+  }
 }
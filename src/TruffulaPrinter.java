@@ -1,6 +1,21 @@
-import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * TruffulaPrinter is responsible for printing a directory tree structure
@@ -24,13 +39,34 @@ public class TruffulaPrinter {
    */
   private ColorPrinter out;
 
+  /**
+   * Lists the children of each directory as the tree is walked.
+   */
+  private DirectoryLister lister;
+
+  /**
+   * Reuses the listings of unchanged directories from the previous run, or null
+   * if the options don't name a snapshot file.
+   */
+  private SnapshotDirectoryLister snapshot;
+
+  /**
+   * The size of every directory during a walk that shows them, or null.
+   */
+  private DiskUsage usage;
+
   /**
    * Default color sequence used when no custom colors are provided.
    */
-  private static final List<ConsoleColor> DEFAULT_COLOR_SEQUENCE = List.of(
+  static final List<ConsoleColor> DEFAULT_COLOR_SEQUENCE = List.of(
       ConsoleColor.WHITE, ConsoleColor.PURPLE, ConsoleColor.YELLOW
   );
 
+  /**
+   * Appended to directories that were not expanded because of the maximum depth.
+   */
+  static final String COLLAPSED_MARKER = " [...]";
+
   /**
    * Constructs a TruffulaPrinter with the given options, using the default
    * output stream and the default color sequence.
@@ -71,9 +107,100 @@ public class TruffulaPrinter {
    * @param colorSequence the sequence of colors to use when printing
    */
   public TruffulaPrinter(TruffulaOptions options, PrintStream outStream, List<ConsoleColor> colorSequence) {
+    this(options, outStream, colorSequence, defaultLister(options));
+  }
+
+  /**
+   * Constructs a TruffulaPrinter with the given options, output stream, color sequence,
+   * and directory lister.
+   *
+   * @param options the configuration options for printing the tree
+   * @param outStream the output stream to print to
+   * @param colorSequence the sequence of colors to use when printing
+   * @param lister the lister used to read each directory
+   */
+  public TruffulaPrinter(TruffulaOptions options, PrintStream outStream, List<ConsoleColor> colorSequence,
+      DirectoryLister lister) {
+    this(options, new ColorPrinter(outStream), colorSequence, lister);
+  }
+
+  /**
+   * Constructs a TruffulaPrinter with the given options and color printer,
+   * using the default color sequence. Use this to print through a
+   * BufferedColorPrinter.
+   *
+   * @param options the configuration options for printing the tree
+   * @param out the color printer to print to
+   */
+  public TruffulaPrinter(TruffulaOptions options, ColorPrinter out) {
+    this(options, out, DEFAULT_COLOR_SEQUENCE, defaultLister(options));
+  }
+
+  /**
+   * Constructs a TruffulaPrinter with the given options, color printer, color sequence,
+   * and directory lister.
+   *
+   * @param options the configuration options for printing the tree
+   * @param out the color printer to print to
+   * @param colorSequence the sequence of colors to use when printing
+   * @param lister the lister used to read each directory
+   */
+  public TruffulaPrinter(TruffulaOptions options, ColorPrinter out, List<ConsoleColor> colorSequence,
+      DirectoryLister lister) {
     this.options = options;
     this.colorSequence = colorSequence;
-    out = new ColorPrinter(outStream);
+    this.out = out;
+    if (options.getSnapshotFile() != null) {
+      this.snapshot = new SnapshotDirectoryLister(lister, options.getRootPath(), options.getSnapshotFile(),
+          options.isDiskUsage() || options.getSortKey().readsAttributes());
+      lister = snapshot;
+    }
+    this.lister = filteredLister(lister, options);
+
+    if (options.isRunLengthColor()) {
+      out.setRunLength(true);
+    }
+  }
+
+  /**
+   * Wraps a lister with the filters selected by the options: .gitignore rules,
+   * then include/exclude patterns.
+   */
+  static DirectoryLister filteredLister(DirectoryLister lister, TruffulaOptions options) {
+    if (!options.isGitIgnore() && options.getPathFilter().isEmpty()) {
+      return lister;
+    }
+    return filteredLister(lister, options.getRootPath(), options);
+  }
+
+  /**
+   * Wraps a lister of the tree at root with the filters selected by the options.
+   */
+  static DirectoryLister filteredLister(DirectoryLister lister, Path root, TruffulaOptions options) {
+    if (options.isGitIgnore()) {
+      lister = new GitIgnoreLister(lister, root);
+    }
+    if (!options.getPathFilter().isEmpty()) {
+      lister = new FilteringDirectoryLister(lister, root, options.getPathFilter());
+    }
+    return lister;
+  }
+
+  /**
+   * Returns the lister selected by the options. java.io.File can only list the
+   * default filesystem, so a root anywhere else is always listed with java.nio,
+   * and so is an unsorted walk, since File.listFiles() reads a whole directory
+   * into an array before returning any of it. Sorting by size or time lists with
+   * java.nio too, and so do directory sizes, since java.nio reads sizes and times
+   * with the entry's one attribute read. A snapshot only saves names and types,
+   * so it doesn't need either.
+   */
+  static DirectoryLister defaultLister(TruffulaOptions options) {
+    Path root = options.getRootPath();
+    boolean defaultFileSystem = root == null || root.getFileSystem() == FileSystems.getDefault();
+    boolean nio = options.isUseNio() || options.isUnsorted() || options.getSortKey().readsAttributes()
+        || options.isDiskUsage() || !defaultFileSystem;
+    return nio ? new NioDirectoryLister() : new FileDirectoryLister();
   }
 
   /**
@@ -89,6 +216,61 @@ public class TruffulaPrinter {
    * WAVE 7: The sorting is case-insensitive. If two files have identical case-insensitive names,
    * they are sorted lexicographically (Cat.png before cat.png).
    *
+   * If the NIO engine is selected in the options, directories are read with a
+   * DirectoryStream and one attribute read per entry instead of java.io.File calls.
+   * The output is identical either way.
+   *
+   * If iterative mode is selected in the options, the tree is walked with an explicit
+   * stack instead of recursion, so arbitrarily deep trees can be printed.
+   *
+   * If the options ask for more than one thread (or for virtual threads), directories
+   * are listed ahead of the printer in the background. Lines are still printed one directory at a time in
+   * sorted order, so the output is the same as with a single thread. The iterative
+   * walk always lists directories on the calling thread.
+   *
+   * If a maximum depth is set in the options, directories at that depth are printed
+   * but never listed, so nothing below the limit costs any I/O. They can optionally
+   * be marked with " [...]" to show that they were collapsed.
+   *
+   * If unsorted mode is selected in the options, entries are printed in the order
+   * each directory lists them, as they are read from a DirectoryStream, the way
+   * "ls -U" does. Nothing of a directory is held, so memory only grows with the
+   * depth of the tree, however big its directories are. Unsorted walks are always
+   * iterative and single-threaded, and list with java.nio.
+   *
+   * If a sort key is set in the options, each directory is sorted by size, time or
+   * extension instead, optionally with directories first, and entries with equal
+   * keys by name as above. Sizes and times come from the one attribute read each
+   * entry already costs, so no sort order reads the filesystem again.
+   *
+   * If an entry limit is set in the options, only the first entries of each
+   * directory are printed, followed by a line such as "… 1200 more" for the rest.
+   * Only that many entries are kept while a directory is listed, so a directory of
+   * a million files costs one pass over its listing, not a sort of all of it.
+   *
+   * Entries rejected by the options' include/exclude patterns are dropped as each
+   * directory is listed, so excluded directories are never read. If the options ask
+   * for it, entries ignored by the .gitignore files found on the way down are dropped
+   * the same way.
+   *
+   * If the options name a snapshot file, directories whose modification time matches
+   * the snapshot saved by the previous run are not listed again; their saved listings
+   * are used instead, and the snapshot is replaced once the tree is printed. The
+   * output is the same as without a snapshot.
+   *
+   * If the options ask for directory sizes, the whole tree is read and added up on
+   * options.getParallelism() threads before anything is printed, and the walk then
+   * prints from the listings that were read, so every directory is still listed
+   * once. Each directory line ends with its total size and file count, such as
+   * " (1.5M, 42 files)".
+   *
+   * The walk itself is stream(); printTree() prints every node of the stream, and
+   * walkTree() hands them to a visitor for other formats, such as JsonTreeWriter.
+   *
+   * The color printer is flushed before this method returns, so a buffered printer
+   * such as BufferedColorPrinter can be used. If run-length color is selected in the
+   * options, color codes are only written when the color changes between lines.
+   *
    * Example Output:
    *
    * myFolder/
@@ -104,65 +286,566 @@ public class TruffulaPrinter {
    *    zebra.txt
    */
   public void printTree() {
-    File root = options.getRoot();
-    boolean showHidden = options.isShowHidden();
     boolean showColor = options.isUseColor();
-   
-    if (root == null || !root.isDirectory() || (showHidden == false && root.isHidden())) {
+    try (Stream<TreeNode> nodes = stream()) {
+      nodes.forEach(node -> printNode(node, showColor));
+    } finally {
+      out.flush();
+    }
+  }
+
+  /**
+   * Walks the tree exactly as printTree() does (same order, hidden-file rules,
+   * filters, depth limit, and engine) and hands every entry to the visitor
+   * instead of printing it. The visitor sees each entry as soon as it would have
+   * been printed, so nothing is collected along the way.
+   *
+   * @param visitor receives the root and every entry below it
+   */
+  public void walkTree(TreeVisitor visitor) {
+    try (Stream<TreeNode> nodes = stream()) {
+      nodes.forEach(node -> {
+        if (node.getDepth() == 0) {
+          visitor.start(node.getEntry());
+        } else if (node.getEntry() instanceof MoreEntries) {
+          visitor.more(node.getPath(), node.getDepth(), ((MoreEntries) node.getEntry()).getCount());
+        } else {
+          visitor.entry(node.getEntry(), node.getDepth(), node.isCollapsed());
+        }
+      });
+      visitor.end();
+    } finally {
+      out.flush();
+    }
+  }
+
+  /**
+   * Returns the tree as a lazy stream of nodes in the order printTree() prints
+   * them: the root at depth 0, then every entry below it, depth first. The
+   * options apply exactly as they do to printTree(), and nothing is printed.
+   *
+   * Nothing is read until the first node is asked for, and a directory is only
+   * listed when the node after it is asked for, so short-circuiting operations
+   * such as limit(), findFirst() and anyMatch() stop the I/O along with the
+   * stream. The stream is sequential; it never splits.
+   *
+   * If the options ask for threads, directories are listed ahead of the stream
+   * in the background until it is closed, so close the stream (for instance
+   * with try-with-resources) if it may not be consumed to the end. When it is
+   * consumed to the end, the snapshot, if there is one, is saved. One stream may
+   * be open at a time per printer.
+   *
+   * A directory cut short by the options' entry limit ends with a node whose
+   * entry is a MoreEntries, standing for the entries that were left out.
+   *
+   * Example Usage:
+   *
+   * try (Stream<TreeNode> nodes = printer.stream()) {
+   *   boolean hasReadme = nodes.anyMatch(node -> node.getName().equals("README.md"));
+   * }
+   *
+   * @return the nodes of the tree
+   * @throws IllegalArgumentException if the root is not a directory, or is hidden and hidden files aren't shown
+   * @throws UncheckedIOException from the stream's operations if a directory can't be listed
+   */
+  public Stream<TreeNode> stream() {
+    Path root = options.getRootPath();
+    boolean showHidden = options.isShowHidden();
+
+    if (root == null || !Files.isDirectory(root) || (showHidden == false && isHidden(root))) {
       throw new IllegalArgumentException("Can't find directory");
     }
 
-    int depth = 0;
-    out.println(root.getName() + "/");
-  
-    File[] listOfFiles = root.listFiles();
-    AlphabeticalFileSorter.sort(listOfFiles);
+    Walk walk = new Walk(root, showHidden);
+    return StreamSupport.stream(walk, false).onClose(walk::close);
+  }
 
-    for (File file: listOfFiles) {
-      printTreeHelper(file, depth, showHidden, showColor);
+  /**
+   * Indicates whether the root is hidden, the way java.io.File.isHidden() decides
+   * on the default filesystem. A root whose attributes can't be read is not hidden.
+   */
+  private static boolean isHidden(Path root) {
+    try {
+      return Files.isHidden(root);
+    } catch (IOException e) {
+      return false;
     }
+  }
 
-    // out.println("printTree was called!");
-    // out.println("My options are: " + options);
+  /**
+   * Prints a directory of a tree image, as printTree() would have printed it when
+   * the image was saved. Entries are read from the image as they are printed; the
+   * filesystem is not touched. The maximum depth and display options apply.
+   *
+   * @param image the tree image
+   * @param slice the directory to print, relative to the root of the image (empty for the root)
+   * @throws IllegalArgumentException if the image has no such directory
+   */
+  public void printTree(TreeImage image, Path slice) {
+    walkTree(image, slice, new TextVisitor(options.isUseColor()));
   }
- 
-  private int printTreeHelper(File root, int depth, boolean showHidden, boolean showColor) {
-    if ((root.isHidden() && !showHidden) || (root.getName().charAt(0) == '.' && !showHidden)) return depth;
 
-    depth++;
+  /**
+   * Walks a directory of a tree image, handing every entry to the visitor in the
+   * order printTree() would print it.
+   *
+   * @param image   the tree image
+   * @param slice   the directory to walk, relative to the root of the image (empty for the root)
+   * @param visitor receives the directory and every entry below it
+   * @throws IllegalArgumentException if the image has no such directory
+   */
+  public void walkTree(TreeImage image, Path slice, TreeVisitor visitor) {
+    long index = image.find(slice);
+    if (index < 0 || !image.isDirectory(index)) {
+      throw new IllegalArgumentException("Can't find directory");
+    }
+
+    try {
+      image.walk(index, Path.of(image.name(index)), options.getMaxDepth(), visitor);
+    } finally {
+      out.flush();
+    }
+  }
+
+  /**
+   * The text output of printTree() for walks that don't come from stream(), such
+   * as tree images: the root's name, then one indented line per entry.
+   */
+  private class TextVisitor implements TreeVisitor {
+    private final boolean showColor;
+
+    private TextVisitor(boolean showColor) {
+      this.showColor = showColor;
+    }
+
+    @Override
+    public void start(TreeEntry root) {
+      printNode(new TreeNode(root, 0, false, colorAt(0)), showColor);
+    }
+
+    @Override
+    public void entry(TreeEntry entry, int depth, boolean collapsed) {
+      printNode(new TreeNode(entry, depth, collapsed, colorAt(depth)), showColor);
+    }
+
+    @Override
+    public void end() {
+    }
+  }
+
+  /**
+   * Returns the node for the root of a walk. A root without a file name, such
+   * as the root of an archive, is named after the archive.
+   */
+  private TreeNode rootNode(Path root) {
+    Path archive = options.getArchive();
+    String name = root.getFileName() != null ? root.getFileName().toString()
+        : archive != null ? archive.getFileName().toString() : "";
+    return new TreeNode(new TreeEntry(root, name, true), 0, false, colorAt(0));
+  }
+
+  /**
+   * Returns the color entries at a depth are printed in.
+   */
+  private ConsoleColor colorAt(int depth) {
+    return colorSequence.get(depth % colorSequence.size());
+  }
+
+  /**
+   * Prints a single line of the tree. The root is printed as its name and a slash.
+   * Every other entry is printed as its name indented for its depth, in the color
+   * for its depth, with a trailing slash for directories. Directories that were
+   * not listed because of the maximum depth get the collapsed marker if the
+   * options ask for it, and every directory gets its size when they are known.
+   */
+  private void printNode(TreeNode node, boolean showColor) {
+    if (node.getDepth() == 0) {
+      out.println(node.getName() + "/" + (usage == null ? "" : usage.annotation(node.getPath())));
+      return;
+    }
 
     StringBuilder spacesString = new StringBuilder();
 
-    for (int i = 0; i < depth; i++) {
+    for (int i = 0; i < node.getDepth(); i++) {
       spacesString.append("   ");
     }
 
     String spaces = spacesString.toString();
     String printedFile = "";
-    int colorPicker = depth % 3;
-    ConsoleColor levelColor = DEFAULT_COLOR_SEQUENCE.get(colorPicker);
-    
-    if (!root.isDirectory()) {
-      if (showColor == true) {
-        out.setCurrentColor(levelColor);
-      } 
-      printedFile = spaces + root.getName();
-      out.println(printedFile);
-      return depth;
-    }
 
     if (showColor == true) {
-      out.setCurrentColor(levelColor);
+      out.setCurrentColor(node.getColor());
     } 
-    printedFile = spaces + root.getName() + "/";
+
+    if (!node.isDirectory()) {
+      printedFile = spaces + node.getName();
+    } else {
+      printedFile = spaces + node.getName() + "/";
+      if (usage != null) {
+        printedFile += usage.annotation(node.getPath());
+      }
+      if (node.isCollapsed() && options.isShowCollapsed()) {
+        printedFile += COLLAPSED_MARKER;
+      }
+    }
     out.println(printedFile);
+  }
+
+  /**
+   * The walk behind stream(), advanced one node per tryAdvance().
+   *
+   * The walk keeps one Frame per open directory on a heap-allocated stack, so the
+   * depth of the tree is not limited by the thread's call stack. A directory is
+   * listed when its frame is first advanced, which is when the node after the
+   * directory's own node is asked for.
+   *
+   * In a recursive walk, a frame holds its directory's sorted children from the
+   * DirectoryScanner, which may have listed them ahead of time in the background.
+   *
+   * In an iterative walk, a frame never holds its directory's full listing: it
+   * holds a window of at most options.getWindowSize() upcoming children. A
+   * directory larger than the window is listed once into SortedRuns, a temporary
+   * file of sorted window-sized runs, and each window is merged from the runs.
+   * Memory therefore grows with depth * window size (plus one buffered entry per
+   * run), not with depth * directory size, and no directory is listed twice.
+   *
+   * In an unsorted walk, a frame holds its directory's open DirectoryStream and
+   * hands out entries as the stream returns them, so memory grows with depth only.
+   */
+  private class Walk implements Spliterator<TreeNode> {
+    private final Path root;
+    private final boolean showHidden;
+    private final boolean iterative;
+    private final boolean unsorted;
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private DirectoryScanner scanner;
+    private boolean started;
+
+    private Walk(Path root, boolean showHidden) {
+      this.root = root;
+      this.showHidden = showHidden;
+      this.iterative = options.isIterative();
+      this.unsorted = options.isUnsorted();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super TreeNode> action) {
+      if (!started) {
+        start();
+        action.accept(rootNode(root));
+        return true;
+      }
+
+      while (!stack.isEmpty()) {
+        Frame frame = stack.peek();
+        TreeEntry entry = unsorted ? nextUnsorted(frame, showHidden) : next(frame);
+
+        if (entry == null) {
+          stack.pop();
+          if (stack.isEmpty()) {
+            finish();
+          }
+          continue;
+        }
+
+        frame.given++;
+
+        int depth = frame.depth + 1;
+        boolean listed = entry.isDirectory() && options.isListedAtDepth(depth);
+        if (listed) {
+          stack.push(new Frame(entry.getPath(), depth));
+        }
+        action.accept(new TreeNode(entry, depth, entry.isDirectory() && !listed, colorAt(depth)));
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Loads the snapshot and, if the options ask for them, reads the directory
+     * sizes, which needs the whole tree before the root can be printed.
+     */
+    private void start() {
+      started = true;
+      if (snapshot != null) {
+        snapshot.load(showHidden);
+      }
+      usage = options.isDiskUsage() ? DiskUsage.compute(lister, root, options) : null;
+      if (!iterative && !unsorted) {
+        scanner = newScanner();
+      }
+      stack.push(new Frame(root, 0));
+    }
+
+    /**
+     * Returns the next child of a frame in sorted order, loading more of them if
+     * needed, or null once the frame has run out.
+     */
+    private TreeEntry next(Frame frame) {
+      if (frame.window == null || (frame.next == frame.window.size() && frame.hasMore)) {
+        fill(frame);
+      }
+
+      if (frame.next == frame.window.size()) {
+        return null;
+      }
+
+      TreeEntry entry = frame.window.get(frame.next);
+      if (iterative) {
+        frame.window.set(frame.next, null);
+      }
+      frame.next++;
+      return entry;
+    }
+
+    /**
+     * Loads the next children of a frame.
+     */
+    private void fill(Frame frame) {
+      if (iterative) {
+        nextWindow(frame, showHidden);
+      } else {
+        frame.window = children(scanner, frame.directory, frame.depth);
+        frame.next = 0;
+        frame.hasMore = false;
+      }
+    }
+
+    /**
+     * Ends a walk that reached the last node, saving the snapshot now that every
+     * directory has been seen.
+     */
+    private void finish() {
+      close();
+      if (snapshot != null) {
+        try {
+          snapshot.save();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+
+    /**
+     * Stops any background listings, closes the directories an unsorted walk has
+     * open, and forgets the directory sizes.
+     */
+    private void close() {
+      for (Frame frame : stack) {
+        try {
+          frame.close();
+        } catch (UncheckedIOException e) {
+          // The walk is being abandoned; the listing's failure no longer matters
+        }
+      }
+      stack.clear();
+      usage = null;
+      if (scanner != null) {
+        scanner.close();
+        scanner = null;
+      }
+    }
+
+    @Override
+    public Spliterator<TreeNode> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+  }
+
+  /**
+   * Loads the next window of the frame's children, in sorted order. The
+   * directory is listed the first time only: if it has more children than fit in
+   * a window, they are sorted in a temporary file in window-sized runs, and every
+   * window is merged from the runs. If the window reaches the options' entry
+   * limit, it ends with a MoreEntries for the rest of the directory.
+   */
+  private void nextWindow(Frame frame, boolean showHidden) {
+    int windowSize = options.getWindowSize();
+    int limit = options.getEntryLimit();
+    int count = limit > 0 ? Math.min(windowSize, limit - frame.given) : windowSize;
+    Comparator<TreeEntry> order = AlphabeticalFileSorter.entryOrder(options.getSortOrder());
+
+    List<TreeEntry> window;
+    try {
+      if (frame.window == null) {
+        List<TreeEntry> run = listInRuns(frame, windowSize, order, showHidden);
+        if (frame.runs == null) {
+          run.sort(order);
+          window = new ArrayList<>(run.subList(0, Math.min(count, run.size())));
+        } else {
+          window = frame.runs.next(count);
+        }
+      } else {
+        window = frame.runs.next(count);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    boolean hasMore = frame.runs != null && frame.given + window.size() < frame.listed;
+    long rest = frame.listed - frame.given - window.size();
+    if (limit > 0 && frame.given + window.size() == limit && rest > 0) {
+      window.add(new MoreEntries(frame.directory, rest));
+      hasMore = false;
+    }
+    if (!hasMore) {
+      frame.close();
+    }
+    frame.window = window;
+    frame.next = 0;
+    frame.hasMore = hasMore;
+  }
+
+  /**
+   * Lists the frame's directory once, counting its children. If they fit in one
+   * window, they are returned; otherwise they are written to the frame's runs,
+   * the last run too, and the last run is returned.
+   */
+  private List<TreeEntry> listInRuns(Frame frame, int windowSize, Comparator<TreeEntry> order, boolean showHidden)
+      throws IOException {
+    DirectoryLister walkLister = usage != null ? usage : lister;
+    TreeEvents.DirectoryScan scan = new TreeEvents.DirectoryScan();
+    List<TreeEntry> run = new ArrayList<>();
+    scan.begin();
+    try (DirectoryStream<TreeEntry> stream = walkLister.list(frame.directory, showHidden)) {
+      for (TreeEntry entry : stream) {
+        if (run.size() == windowSize) {
+          if (frame.runs == null) {
+            frame.runs = new SortedRuns(frame.directory, order);
+          }
+          frame.runs.add(run);
+          run.clear();
+        }
+        run.add(entry);
+        frame.listed++;
+      }
+    } catch (DirectoryIteratorException e) {
+      throw e.getCause();
+    }
+    if (frame.runs != null) {
+      frame.runs.add(run);
+    }
+    scan.end();
+    if (scan.shouldCommit()) {
+      scan.directory = frame.directory.toString();
+      scan.entries = (int) frame.listed;
+      scan.commit();
+    }
+    return run;
+  }
+
+  /**
+   * Returns the next entry of the frame's directory, in the order the directory
+   * lists them, opening the directory the first time. Returns null, and closes the
+   * directory, once it has run out. Past the options' entry limit, the rest of the
+   * directory is only counted, and handed out as one MoreEntries.
+   */
+  private TreeEntry nextUnsorted(Frame frame, boolean showHidden) {
+    try {
+      if (frame.stream == null) {
+        DirectoryLister walkLister = usage != null ? usage : lister;
+        frame.stream = walkLister.list(frame.directory, showHidden);
+        frame.entries = frame.stream.iterator();
+      }
+
+      if (!frame.entries.hasNext()) {
+        frame.close();
+        return null;
+      }
+
+      int limit = options.getEntryLimit();
+      if (limit > 0 && frame.given == limit) {
+        long rest = 0;
+        while (frame.entries.hasNext()) {
+          frame.entries.next();
+          rest++;
+        }
+        frame.close();
+        return new MoreEntries(frame.directory, rest);
+      }
+      return frame.entries.next();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (DirectoryIteratorException e) {
+      throw new UncheckedIOException(e.getCause());
+    }
+  }
+
+  /**
+   * One open directory in a walk.
+   */
+  private static class Frame {
+    private final Path directory;
+    private final int depth;
+    private DirectoryStream<TreeEntry> stream;
+    private Iterator<TreeEntry> entries;
+    private List<TreeEntry> window;
+    private int next;
+    private int given;
+    private boolean hasMore;
+    private SortedRuns runs;
+    private long listed;
+
+    private Frame(Path directory, int depth) {
+      this.directory = directory;
+      this.depth = depth;
+    }
 
-    File[] list = root.listFiles();
-    AlphabeticalFileSorter.sort(list);
-    
-    for (File file: list) {
-      printTreeHelper(file, depth, showHidden, showColor);
+    /**
+     * Closes the directory stream of an unsorted walk, or deletes the sorted runs
+     * of an iterative one, if there are any.
+     */
+    private void close() {
+      try {
+        if (stream != null) {
+          stream.close();
+        }
+        if (runs != null) {
+          runs.close();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Creates the scanner for a recursive walk: a VirtualThreadScanner if the options
+   * ask for virtual threads, a ForkJoinScanner if they ask for more than one thread,
+   * otherwise a SequentialScanner. Once directory sizes are known, the listings are
+   * already in memory and are always read sequentially.
+   */
+  private DirectoryScanner newScanner() {
+    if (usage != null) {
+      return new SequentialScanner(usage, options);
+    }
+    if (options.getVirtualThreads() > 0) {
+      return new VirtualThreadScanner(lister, options);
+    }
+    if (options.getParallelism() > 1) {
+      return new ForkJoinScanner(lister, options);
+    }
+    return new SequentialScanner(lister, options);
+  }
+
+  /**
+   * Returns the sorted children of a directory from the scanner.
+   */
+  private static List<TreeEntry> children(DirectoryScanner scanner, Path directory, int depth) {
+    try {
+      return scanner.children(directory, depth);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    return depth;
   }
 }
@@ -1,15 +1,34 @@
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -20,7 +39,7 @@ public class TruffulaPrinterTest {
     public void printTreeColorNullRoot() {
 
         // Set up TruffulaOptions with null root directory
-        TruffulaOptions options = new TruffulaOptions(null, true, true);
+        TruffulaOptions options = new TruffulaOptions((File) null, true, true);
 
         // Capture output using a custom PrintStream
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -756,4 +775,965 @@ public class TruffulaPrinterTest {
         // Assert that the output matches the expected output exactly
         assertEquals(expected.toString(), output);
     }
+
+    @Test
+    public void testNioEngineMatchesFileEngine(@TempDir File tempDir) throws IOException {
+        // Build a tree with hidden entries, mixed case names and nested folders:
+        // myFolder/
+        //    .hidden.txt
+        //    Apple.txt
+        //    banana.txt
+        //    Documents/
+        //       .secret/
+        //          key.txt
+        //       images/
+        //          cat.png
+        //          Dog.png
+        //       notes.txt
+        //    zebra.txt
+        File myFolder = new File(tempDir, "myFolder");
+        assertTrue(myFolder.mkdir(), "myFolder should be created");
+        File documents = new File(myFolder, "Documents");
+        assertTrue(documents.mkdir(), "Documents directory should be created");
+        File secret = new File(documents, ".secret");
+        assertTrue(secret.mkdir(), ".secret directory should be created");
+        File images = new File(documents, "images");
+        assertTrue(images.mkdir(), "images directory should be created");
+
+        new File(myFolder, ".hidden.txt").createNewFile();
+        new File(myFolder, "Apple.txt").createNewFile();
+        new File(myFolder, "banana.txt").createNewFile();
+        new File(myFolder, "zebra.txt").createNewFile();
+        new File(secret, "key.txt").createNewFile();
+        new File(images, "cat.png").createNewFile();
+        new File(images, "Dog.png").createNewFile();
+        new File(documents, "notes.txt").createNewFile();
+
+        // Compare every combination of hidden/color with both engines
+        for (boolean showHidden : new boolean[] {false, true}) {
+            for (boolean useColor : new boolean[] {false, true}) {
+                TruffulaOptions fileOptions = new TruffulaOptions(myFolder, showHidden, useColor);
+                ByteArrayOutputStream fileOutput = new ByteArrayOutputStream();
+                new TruffulaPrinter(fileOptions, new PrintStream(fileOutput)).printTree();
+
+                TruffulaOptions nioOptions = new TruffulaOptions(myFolder, showHidden, useColor);
+                nioOptions.setUseNio(true);
+                ByteArrayOutputStream nioOutput = new ByteArrayOutputStream();
+                new TruffulaPrinter(nioOptions, new PrintStream(nioOutput)).printTree();
+
+                assertArrayEquals(fileOutput.toByteArray(), nioOutput.toByteArray(),
+                    "showHidden=" + showHidden + ", useColor=" + useColor);
+            }
+        }
+    }
+
+    @Test
+    public void testNioEngineExactOutput(@TempDir File tempDir) throws IOException {
+        // Sample Directory:
+        //
+        // folder/
+        //  .hidden.txt
+        //  b.txt
+        //  A/
+        //      c.txt
+        File folder = new File(tempDir, "folder");
+        folder.mkdir();
+        File a = new File(folder, "A");
+        a.mkdir();
+        new File(folder, ".hidden.txt").createNewFile();
+        new File(folder, "b.txt").createNewFile();
+        new File(a, "c.txt").createNewFile();
+
+        TruffulaOptions options = new TruffulaOptions(folder, false, true);
+        options.setUseNio(true);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+
+        String nl = System.lineSeparator();
+        String reset = "\033[0m";
+        String white = "\033[0;37m";
+        String purple = "\033[0;35m";
+        String yellow = "\033[0;33m";
+
+        StringBuilder expected = new StringBuilder();
+        expected.append(white).append("folder/").append(nl).append(reset);
+        expected.append(purple).append("   A/").append(nl).append(reset);
+        expected.append(yellow).append("      c.txt").append(nl).append(reset);
+        expected.append(purple).append("   b.txt").append(nl).append(reset);
+
+        assertEquals(expected.toString(), baos.toString());
+    }
+
+    @Test
+    public void testMaxDepthMarksCollapsedDirectories(@TempDir File tempDir) throws IOException {
+        // Sample Directory:
+        //
+        // folder/
+        //  A/
+        //      B/
+        //          c.txt
+        //      d.txt
+        //  e.txt
+        File folder = new File(tempDir, "folder");
+        File b = new File(new File(folder, "A"), "B");
+        b.mkdirs();
+        new File(b, "c.txt").createNewFile();
+        new File(b.getParentFile(), "d.txt").createNewFile();
+        new File(folder, "e.txt").createNewFile();
+
+        String nl = System.lineSeparator();
+        for (boolean iterative : new boolean[] {false, true}) {
+            TruffulaOptions options = new TruffulaOptions(folder, false, false);
+            options.setIterative(iterative);
+            options.setMaxDepth(2);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+            assertEquals("folder/" + nl + "   A/" + nl + "      B/" + nl + "      d.txt" + nl + "   e.txt" + nl,
+                    baos.toString().replaceAll("\033\\[[0-9;]*m", ""), "iterative=" + iterative);
+
+            options.setShowCollapsed(true);
+            baos.reset();
+            new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+            assertEquals("folder/" + nl + "   A/" + nl + "      B/ [...]" + nl + "      d.txt" + nl + "   e.txt" + nl,
+                    baos.toString().replaceAll("\033\\[[0-9;]*m", ""), "iterative=" + iterative);
+        }
+    }
+
+    @Test
+    public void testGitIgnoreNestedRules(@TempDir File tempDir) throws IOException {
+        // Sample Directory (ignored entries marked with x):
+        //
+        // repo/
+        //  .git/                 x (always)
+        //      HEAD
+        //  .gitignore            build/  *.log  !keep.log  /out
+        //  app.log               x
+        //  build/                x
+        //      a.class
+        //  keep.log
+        //  Main.java
+        //  out/                  x
+        //      x.txt
+        //  sub/
+        //      .gitignore        !debug.log  secret.txt
+        //      build/            x (parent rule)
+        //          b.class
+        //      debug.log         (re-included)
+        //      deeper/
+        //          build         (a file, so build/ doesn't match)
+        //          secret.txt    x
+        //      notes.txt
+        //      other.log         x
+        //      out/              (/out only matches at the top)
+        //          y.txt
+        Path repo = tempDir.toPath().resolve("repo");
+        Files.createDirectories(repo.resolve(".git"));
+        Files.createDirectories(repo.resolve("build"));
+        Files.createDirectories(repo.resolve("out"));
+        Files.createDirectories(repo.resolve("sub/build"));
+        Files.createDirectories(repo.resolve("sub/deeper"));
+        Files.createDirectories(repo.resolve("sub/out"));
+        Files.writeString(repo.resolve(".gitignore"), "# build output\nbuild/\n*.log\n!keep.log\n/out\n");
+        Files.writeString(repo.resolve("sub/.gitignore"), "!debug.log\nsecret.txt   \n");
+        for (String file : new String[] {".git/HEAD", "app.log", "build/a.class", "keep.log", "Main.java",
+                "out/x.txt", "sub/build/b.class", "sub/debug.log", "sub/deeper/build", "sub/deeper/secret.txt",
+                "sub/notes.txt", "sub/other.log", "sub/out/y.txt"}) {
+            Files.createFile(repo.resolve(file));
+        }
+
+        String nl = System.lineSeparator();
+        String visible = "   keep.log" + nl
+                + "   Main.java" + nl
+                + "   sub/" + nl
+                + "%s"
+                + "      debug.log" + nl
+                + "      deeper/" + nl
+                + "         build" + nl
+                + "      notes.txt" + nl
+                + "      out/" + nl
+                + "         y.txt" + nl;
+
+        for (boolean showHidden : new boolean[] {false, true}) {
+            for (boolean useNio : new boolean[] {false, true}) {
+                TruffulaOptions options = new TruffulaOptions(repo.toFile(), showHidden, false);
+                options.setUseNio(useNio);
+                options.setGitIgnore(true);
+
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+
+                String expected = showHidden
+                        ? "repo/" + nl + "   .gitignore" + nl + String.format(visible, "      .gitignore" + nl)
+                        : "repo/" + nl + String.format(visible, "");
+                assertEquals(expected, baos.toString().replaceAll("\033\\[[0-9;]*m", ""),
+                        "showHidden=" + showHidden + ", useNio=" + useNio);
+            }
+        }
+    }
+
+    @Test
+    public void testGitIgnoredDirectoriesAreNotListed(@TempDir File tempDir) throws IOException {
+        // repo/
+        //  .gitignore    target/
+        //  a/
+        //      .gitignore    !target/
+        //      target/       (re-included)
+        //          kept.txt
+        //  b/
+        //      target/       x
+        //          deep/
+        //              lost.txt
+        Path repo = tempDir.toPath().resolve("repo");
+        Files.createDirectories(repo.resolve("a/target"));
+        Files.createDirectories(repo.resolve("b/target/deep"));
+        Files.writeString(repo.resolve(".gitignore"), "target/\n");
+        Files.writeString(repo.resolve("a/.gitignore"), "!target/\n");
+        Files.createFile(repo.resolve("a/target/kept.txt"));
+        Files.createFile(repo.resolve("b/target/deep/lost.txt"));
+
+        String nl = System.lineSeparator();
+        String expected = "repo/" + nl + "   a/" + nl + "      target/" + nl + "         kept.txt" + nl + "   b/" + nl;
+
+        for (int mode = 0; mode < 3; mode++) {
+            List<Path> listed = new CopyOnWriteArrayList<>();
+            DirectoryLister recording = (directory, showHidden) -> {
+                listed.add(directory);
+                return new NioDirectoryLister().list(directory, showHidden);
+            };
+
+            TruffulaOptions options = new TruffulaOptions(repo.toFile(), false, false);
+            options.setGitIgnore(true);
+            options.setIterative(mode == 1);
+            options.setParallelism(mode == 2 ? 4 : 1);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new TruffulaPrinter(options, new PrintStream(baos), List.of(ConsoleColor.WHITE), recording).printTree();
+
+            assertEquals(expected, baos.toString().replaceAll("\033\\[[0-9;]*m", ""), "mode=" + mode);
+            assertEquals(4, listed.size(), "mode=" + mode + " listed " + listed);
+            assertTrue(listed.stream().noneMatch(path -> path.startsWith(repo.resolve("b/target"))),
+                    "mode=" + mode + " listed " + listed);
+        }
+    }
+
+    @Test
+    public void testPrintTreeSuperDeepDirectoryIterative(@TempDir File tempDir) throws IOException {
+        // Same structure as testPrintTreeSuperDeepDirectory, walked with an explicit stack:
+        //  folder/
+        //      folder/
+        //          folder/
+        // ... 25 total folders
+        File folder = new File(tempDir, "folder");
+        folder.mkdir();
+        File current = folder;
+        for (int i = 1; i < 25; i++) {
+            current = new File(current, "folder");
+            current.mkdir();
+        }
+
+        TruffulaOptions options = new TruffulaOptions(folder, false, true);
+        options.setIterative(true);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+
+        String nl = System.lineSeparator();
+        String reset = "\033[0m";
+        String[] colors = {"\033[0;37m", "\033[0;35m", "\033[0;33m"};
+
+        StringBuilder expected = new StringBuilder();
+        for (int depth = 0; depth < 25; depth++) {
+            expected.append(colors[depth % 3]).append("   ".repeat(depth)).append("folder/").append(nl).append(reset);
+        }
+
+        assertEquals(expected.toString(), baos.toString());
+    }
+
+    @Test
+    public void testPrintTreeTenThousandLevelsIterative(@TempDir File tempDir) {
+        // A chain of 12,000 nested folders is too long a path for a real filesystem,
+        // so the levels below the root are served by a lister that invents them.
+        int levels = 12_000;
+        DirectoryLister deepLister = (directory, showHidden) -> {
+            int level = directory.equals(tempDir.toPath()) ? 0 : Integer.parseInt(directory.getFileName().toString());
+            if (level == levels) {
+                return entries(List.of());
+            }
+            return entries(List.of(new TreeEntry(Paths.get(String.valueOf(level + 1)), "folder", true)));
+        };
+
+        TruffulaOptions options = new TruffulaOptions(tempDir, false, false);
+        options.setIterative(true);
+
+        // Only keep the line count and the last line; the full output is over 200 MB
+        LineCountingStream sink = new LineCountingStream();
+        new TruffulaPrinter(options, new PrintStream(sink), List.of(ConsoleColor.WHITE), deepLister).printTree();
+
+        assertEquals(levels + 1, sink.lines);
+        assertEquals("\033[0m\033[0;37m" + "   ".repeat(levels) + "folder/", sink.lastLine());
+    }
+
+    @Test
+    public void testIterativeWindowMatchesRecursive(@TempDir File tempDir) throws IOException {
+        // A directory with more children than the window forces the iterative walk to
+        // merge its windows from sorted runs, including while a subfolder is open.
+        File folder = new File(tempDir, "folder");
+        folder.mkdir();
+        for (int i = 0; i < 10; i++) {
+            new File(folder, "file" + i + ".txt").createNewFile();
+            File sub = new File(folder, "Sub" + i);
+            sub.mkdir();
+            for (int j = 0; j < 4; j++) {
+                new File(sub, "inner" + j + ".txt").createNewFile();
+            }
+        }
+        new File(folder, ".hidden").createNewFile();
+
+        for (boolean useNio : new boolean[] {false, true}) {
+            TruffulaOptions recursiveOptions = new TruffulaOptions(folder, false, true);
+            recursiveOptions.setUseNio(useNio);
+            ByteArrayOutputStream recursiveOutput = new ByteArrayOutputStream();
+            new TruffulaPrinter(recursiveOptions, new PrintStream(recursiveOutput)).printTree();
+
+            TruffulaOptions iterativeOptions = new TruffulaOptions(folder, false, true);
+            iterativeOptions.setUseNio(useNio);
+            iterativeOptions.setIterative(true);
+            iterativeOptions.setWindowSize(3);
+            ByteArrayOutputStream iterativeOutput = new ByteArrayOutputStream();
+            new TruffulaPrinter(iterativeOptions, new PrintStream(iterativeOutput)).printTree();
+
+            assertEquals(recursiveOutput.toString(), iterativeOutput.toString(), "useNio=" + useNio);
+        }
+    }
+
+    @Test
+    public void testIterativeWindowListsEachDirectoryOnce(@TempDir File tempDir) throws IOException {
+        // 500 files of many sizes, and a subdirectory of 100 more, with a window of 7
+        Path root = Files.createDirectory(tempDir.toPath().resolve("wide"));
+        FakeDirectoryLister lister = new FakeDirectoryLister();
+        lister.addDirectory(root);
+        lister.addDirectory(root.resolve("Sub"));
+        for (int i = 0; i < 500; i++) {
+            lister.addFile(root.resolve("f" + (i * 7919 % 500) + (i % 3 == 0 ? ".txt" : ".md")), i * 37 % 101);
+        }
+        for (int i = 0; i < 100; i++) {
+            lister.addFile(root.resolve("Sub/g" + i));
+        }
+        List<Path> runsBefore = runFiles();
+
+        for (SortKey key : List.of(SortKey.NAME, SortKey.SIZE)) {
+            for (int limit : new int[] {0, 30}) {
+                TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+                options.setSortKey(key);
+                options.setDirectoriesFirst(key == SortKey.SIZE);
+                options.setEntryLimit(limit);
+                int before = lister.getListCalls();
+                ByteArrayOutputStream recursive = new ByteArrayOutputStream();
+                new TruffulaPrinter(options, new PrintStream(recursive), List.of(ConsoleColor.WHITE), lister)
+                        .printTree();
+                int recursiveListings = lister.getListCalls() - before;
+
+                options.setIterative(true);
+                options.setWindowSize(7);
+                before = lister.getListCalls();
+                ByteArrayOutputStream iterative = new ByteArrayOutputStream();
+                new TruffulaPrinter(options, new PrintStream(iterative), List.of(ConsoleColor.WHITE), lister)
+                        .printTree();
+
+                String run = key + ", limit=" + limit;
+                assertEquals(recursive.toString(), iterative.toString(), run);
+                assertEquals(recursiveListings, lister.getListCalls() - before, run);
+                assertEquals(runsBefore, runFiles(), run);
+            }
+        }
+
+        // An abandoned walk deletes the runs of the directories it has open
+        TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+        options.setIterative(true);
+        options.setWindowSize(7);
+        try (Stream<TreeNode> nodes = new TruffulaPrinter(options, new PrintStream(new ByteArrayOutputStream()),
+                List.of(ConsoleColor.WHITE), lister).stream()) {
+            assertEquals(20, nodes.limit(20).count());
+        }
+        assertEquals(runsBefore, runFiles());
+    }
+
+    /**
+     * Lists the sorted runs left in the temporary directory.
+     */
+    private static List<Path> runFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".runs")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testBufferedColorPrinterMatchesPrintStream(@TempDir File tempDir) throws IOException {
+        // Sample Directory:
+        //
+        // folder/
+        //  b.txt
+        //  A/
+        //      c.txt
+        File folder = new File(tempDir, "folder");
+        File a = new File(folder, "A");
+        a.mkdirs();
+        new File(folder, "b.txt").createNewFile();
+        new File(a, "c.txt").createNewFile();
+
+        TruffulaOptions options = new TruffulaOptions(folder, false, true);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new TruffulaPrinter(options, new PrintStream(expected)).printTree();
+
+        // printTree flushes the buffered printer before returning
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new TruffulaPrinter(options, new BufferedColorPrinter(actual)).printTree();
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testRunLengthColorRendersTheSame(@TempDir File tempDir) throws IOException {
+        // Sample Directory:
+        //
+        // folder/
+        //  a.txt
+        //  b.txt
+        //  C/
+        //      d.txt
+        //      e.txt
+        //      f.txt
+        //  g.txt
+        File folder = new File(tempDir, "folder");
+        File c = new File(folder, "C");
+        c.mkdirs();
+        for (String name : new String[] {"a.txt", "b.txt", "g.txt"}) {
+            new File(folder, name).createNewFile();
+        }
+        for (String name : new String[] {"d.txt", "e.txt", "f.txt"}) {
+            new File(c, name).createNewFile();
+        }
+
+        for (boolean useColor : new boolean[] {true, false}) {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            new TruffulaPrinter(new TruffulaOptions(folder, false, useColor), new PrintStream(plain)).printTree();
+
+            TruffulaOptions runLengthOptions = new TruffulaOptions(folder, false, useColor);
+            runLengthOptions.setRunLengthColor(true);
+            ByteArrayOutputStream runLength = new ByteArrayOutputStream();
+            new TruffulaPrinter(runLengthOptions, new BufferedColorPrinter(runLength)).printTree();
+
+            // Every visible character has the same color either way
+            assertEquals(render(plain.toString()), render(runLength.toString()), "useColor=" + useColor);
+
+            // 8 lines: plain writes a color and a reset per line. Run-length writes a color
+            // per change (4 with color: white, purple, yellow, purple; 1 without) and one reset.
+            String nl = System.lineSeparator();
+            int text = "folder/a.txtb.txtC/d.txte.txtf.txtg.txt".length() + 4 * 3 + 3 * 6 + 8 * nl.length();
+            int colorCode = ConsoleColor.WHITE.getCode().length();
+            int resetCode = ConsoleColor.RESET.getCode().length();
+            assertEquals(text + 8 * (colorCode + resetCode), plain.size());
+            assertEquals(text + (useColor ? 4 : 1) * colorCode + resetCode, runLength.size());
+        }
+    }
+
+    @Test
+    public void testPrintArchive(@TempDir File tempDir) throws IOException {
+        // Sample Archive, with no entries for .git/ and A/:
+        //
+        // tree.zip/
+        //  .git/
+        //      config
+        //  A/
+        //      .hidden
+        //      c.txt (3 bytes)
+        //  b.txt
+        //  Cat.png
+        //  cat.png
+        //  empty/
+        Path zip = tempDir.toPath().resolve("tree.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (String name : new String[] {"b.txt", "A/c.txt", "A/.hidden", ".git/config", "cat.png", "Cat.png", "empty/"}) {
+                out.putNextEntry(new ZipEntry(name));
+                if (name.equals("A/c.txt")) {
+                    out.write("abc".getBytes());
+                }
+                out.closeEntry();
+            }
+        }
+
+        String nl = System.lineSeparator();
+        assertEquals("tree.zip/" + nl
+                + "   A/" + nl
+                + "      c.txt" + nl
+                + "   b.txt" + nl
+                + "   Cat.png" + nl
+                + "   cat.png" + nl
+                + "   empty/" + nl, printArchive("-nc", zip.toString()));
+
+        assertEquals("tree.zip/" + nl
+                + "   .git/" + nl
+                + "      config" + nl
+                + "   A/" + nl
+                + "      .hidden" + nl
+                + "      c.txt" + nl
+                + "   b.txt" + nl
+                + "   Cat.png" + nl
+                + "   cat.png" + nl
+                + "   empty/" + nl, printArchive("-h", zip.toString()));
+
+        // Only the central directory is read: wipe every entry's header and data,
+        // and the tree, with its sizes, is the same
+        byte[] bytes = Files.readAllBytes(zip);
+        int end = bytes.length - 22;
+        int centralDirectory = ByteBuffer.wrap(bytes, end + 16, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        Arrays.fill(bytes, 0, centralDirectory, (byte) 0);
+        Files.write(zip, bytes);
+        assertEquals("tree.zip/ (3B, 4 files)" + nl
+                + "   A/ (3B, 1 file)" + nl
+                + "      c.txt" + nl
+                + "   b.txt" + nl
+                + "   Cat.png" + nl
+                + "   cat.png" + nl
+                + "   empty/ (0B, 0 files)" + nl, printArchive("-du", zip.toString()));
+    }
+
+    @Test
+    public void testPrintHalfMillionEntryArchive(@TempDir File tempDir) throws IOException {
+        // 100 packages of 50 subpackages of 100 classes, with no directory entries
+        Path jar = tempDir.toPath().resolve("big.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(jar)))) {
+            for (int i = 0; i < 100; i++) {
+                for (int j = 0; j < 50; j++) {
+                    for (int k = 0; k < 100; k++) {
+                        ZipEntry entry = new ZipEntry("pkg" + i + "/sub" + j + "/Class" + k + ".class");
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(0);
+                        entry.setCrc(0);
+                        out.putNextEntry(entry);
+                        out.closeEntry();
+                    }
+                }
+            }
+        }
+
+        TruffulaOptions options = new TruffulaOptions(new String[] {"-nc", jar.toString()});
+        try {
+            LineCountingStream lines = new LineCountingStream();
+            new TruffulaPrinter(options, new BufferedColorPrinter(lines)).printTree();
+            assertEquals(1 + 100 + 100 * 50 + 500_000, lines.lines);
+            assertEquals("         Class99.class", lines.lastLine().replaceAll("\033\\[[0-9;]*m", ""));
+        } finally {
+            options.getRootPath().getFileSystem().close();
+        }
+    }
+
+    /**
+     * Prints the archive named by the arguments, without color codes.
+     */
+    static String printArchive(String... args) throws IOException {
+        TruffulaOptions options = new TruffulaOptions(args);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+            return baos.toString().replaceAll("\033\\[[0-9;]*m", "");
+        } finally {
+            options.getRootPath().getFileSystem().close();
+        }
+    }
+
+    @Test
+    public void testStopsListingWhenOutputFails(@TempDir File tempDir) throws Exception {
+        // 1000 directories of 5 files print about 55K, but the output fails after 2K
+        Path root = tempDir.toPath().resolve("wide");
+        for (int d = 0; d < 1000; d++) {
+            Path dir = Files.createDirectories(root.resolve(String.format("d%04d", d)));
+            for (int f = 0; f < 5; f++) {
+                Files.createFile(dir.resolve("f" + f));
+            }
+        }
+
+        for (String engine : List.of("recursive", "iterative", "forkjoin", "virtual")) {
+            for (boolean buffered : new boolean[] {false, true}) {
+                TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+                options.setIterative(engine.equals("iterative"));
+                options.setParallelism(engine.equals("forkjoin") ? 2 : 1);
+                options.setVirtualThreads(engine.equals("virtual") ? 2 : 0);
+
+                AtomicInteger listed = new AtomicInteger();
+                DirectoryLister slow = new SlowDirectoryLister(new NioDirectoryLister(), 1);
+                DirectoryLister counting = (directory, showHidden) -> {
+                    listed.incrementAndGet();
+                    return slow.list(directory, showHidden);
+                };
+
+                // PrintStream swallows the failure, as System.out does for a closed pipe
+                PrintStream sink = new PrintStream(new FailingStream(2000));
+                ColorPrinter out = buffered ? new BufferedColorPrinter(sink, ConsoleColor.WHITE, 1024)
+                        : new ColorPrinter(sink);
+                TruffulaPrinter printer = new TruffulaPrinter(options, out,
+                        TruffulaPrinter.DEFAULT_COLOR_SEQUENCE, counting);
+
+                String run = engine + (buffered ? " buffered" : "");
+                assertThrows(UncheckedIOException.class, printer::printTree, run);
+                assertTrue(listed.get() < 300, run + " listed " + listed.get() + " directories");
+
+                // Background listings were cancelled with the walk
+                Thread.sleep(20);
+                int afterFailure = listed.get();
+                Thread.sleep(100);
+                assertEquals(afterFailure, listed.get(), run);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamMatchesPrintTree(@TempDir File tempDir) throws IOException {
+        Path root = tempDir.toPath().resolve("tree");
+        for (String dir : List.of("a/b/c/d", "a/e", ".hidden/x", "f")) {
+            Files.createDirectories(root.resolve(dir));
+        }
+        for (String file : List.of("a/b/c/d/deep.txt", "a/b/one.txt", "a/two.txt", "a/e/Three.txt",
+                "a/e/three.txt", "top.txt", ".hidden/x/y.txt")) {
+            Files.createFile(root.resolve(file));
+        }
+
+        for (boolean iterative : new boolean[] {false, true}) {
+            for (boolean showHidden : new boolean[] {false, true}) {
+                TruffulaOptions options = new TruffulaOptions(root.toFile(), showHidden, false);
+                options.setIterative(iterative);
+                options.setWindowSize(2);
+                options.setMaxDepth(3);
+                options.setShowCollapsed(true);
+
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                TruffulaPrinter printer = new TruffulaPrinter(options, new PrintStream(baos));
+                printer.printTree();
+
+                String streamed;
+                try (Stream<TreeNode> nodes = printer.stream()) {
+                    streamed = nodes.map(node -> {
+                        assertEquals(TruffulaPrinter.DEFAULT_COLOR_SEQUENCE.get(node.getDepth() % 3), node.getColor());
+                        return "   ".repeat(node.getDepth()) + node.getName() + (node.isDirectory() ? "/" : "")
+                                + (node.isCollapsed() ? TruffulaPrinter.COLLAPSED_MARKER : "")
+                                + System.lineSeparator();
+                    }).collect(Collectors.joining());
+                }
+                String run = "iterative=" + iterative + ", showHidden=" + showHidden;
+                assertEquals(baos.toString().replaceAll("\033\\[[0-9;]*m", ""), streamed, run);
+                assertTrue(streamed.contains("c/ [...]"), run);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamOnlyListsWhatIsConsumed(@TempDir File tempDir) throws IOException {
+        // 50 directories of 3 files
+        Path root = tempDir.toPath().resolve("wide");
+        for (int d = 0; d < 50; d++) {
+            Path dir = Files.createDirectories(root.resolve(String.format("d%02d", d)));
+            for (int f = 0; f < 3; f++) {
+                Files.createFile(dir.resolve("f" + f));
+            }
+        }
+
+        for (boolean iterative : new boolean[] {false, true}) {
+            TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+            options.setIterative(iterative);
+            List<Path> listed = new CopyOnWriteArrayList<>();
+            DirectoryLister nio = new NioDirectoryLister();
+            DirectoryLister recording = (directory, showHidden) -> {
+                listed.add(root.relativize(directory));
+                return nio.list(directory, showHidden);
+            };
+            TruffulaPrinter printer = new TruffulaPrinter(options, new PrintStream(new ByteArrayOutputStream()),
+                    TruffulaPrinter.DEFAULT_COLOR_SEQUENCE, recording);
+
+            // Creating the stream and reading the root read nothing
+            try (Stream<TreeNode> nodes = printer.stream()) {
+                assertEquals("wide", nodes.findFirst().get().getName());
+            }
+            assertEquals(List.of(), listed);
+
+            try (Stream<TreeNode> nodes = printer.stream()) {
+                assertEquals(3, nodes.limit(3).count());
+            }
+            assertEquals(List.of(Path.of(""), Path.of("d00")), listed);
+
+            // d01 is reached, but not listed, since its first child isn't asked for
+            listed.clear();
+            try (Stream<TreeNode> nodes = printer.stream()) {
+                assertTrue(nodes.anyMatch(node -> node.getName().equals("d01")));
+            }
+            assertEquals(List.of(Path.of(""), Path.of("d00")), listed);
+
+            listed.clear();
+            try (Stream<TreeNode> nodes = printer.stream()) {
+                assertEquals(201, nodes.count());
+            }
+            assertEquals(51, listed.size());
+        }
+    }
+
+    @Test
+    public void testUnsortedPrintsEveryEntryOnce(@TempDir File tempDir) throws IOException {
+        Path root = tempDir.toPath().resolve("tree");
+        for (String dir : List.of("a/b/c", "a/d", "e", ".hidden")) {
+            Files.createDirectories(root.resolve(dir));
+        }
+        for (String file : List.of("a/b/c/1", "a/b/2", "a/b/3", "a/d/4", "a/5", "a/6", "a/7", "e/8", "9",
+                ".hidden/10")) {
+            Files.createFile(root.resolve(file));
+        }
+
+        for (int limit : new int[] {0, 2}) {
+            TruffulaOptions sortedOptions = new TruffulaOptions(root.toFile(), false, false);
+            sortedOptions.setEntryLimit(limit);
+            TruffulaOptions unsortedOptions = new TruffulaOptions(root.toFile(), false, false);
+            unsortedOptions.setEntryLimit(limit);
+            unsortedOptions.setUnsorted(true);
+
+            List<TreeNode> sorted;
+            try (Stream<TreeNode> nodes = new TruffulaPrinter(sortedOptions).stream()) {
+                sorted = nodes.collect(Collectors.toList());
+            }
+            List<TreeNode> unsorted;
+            try (Stream<TreeNode> nodes = new TruffulaPrinter(unsortedOptions).stream()) {
+                unsorted = nodes.collect(Collectors.toList());
+            }
+
+            // Every node is directly below the last directory printed above its depth
+            Deque<Path> parents = new ArrayDeque<>();
+            for (TreeNode node : unsorted) {
+                while (parents.size() > node.getDepth()) {
+                    parents.pop();
+                }
+                if (node.getDepth() > 0) {
+                    Path parent = node.getEntry() instanceof MoreEntries ? node.getPath() : node.getPath().getParent();
+                    assertEquals(parents.peek(), parent, "limit=" + limit + ", " + node);
+                }
+                if (node.isDirectory()) {
+                    parents.push(node.getPath());
+                }
+            }
+
+            if (limit == 0) {
+                assertEquals(describe(sorted), describe(unsorted));
+            } else {
+                // Different entries may make the cut, but each directory keeps two and counts the rest
+                for (TreeNode node : unsorted) {
+                    if (node.isDirectory() && !node.isCollapsed()) {
+                        long total;
+                        try (Stream<Path> children = Files.list(node.getPath())) {
+                            total = children.filter(child -> !child.getFileName().toString().startsWith("."))
+                                    .count();
+                        }
+                        long kept = unsorted.stream().filter(child -> node.getPath().equals(child.getPath().getParent()))
+                                .count();
+                        assertEquals(Math.min(total, limit), kept, node.toString());
+                        assertEquals(total > limit ? List.of(node.getPath() + " " + (total - limit)) : List.of(),
+                                describeMore(unsorted).stream().filter(more -> more.startsWith(node.getPath() + " "))
+                                        .collect(Collectors.toList()), node.toString());
+                    }
+                }
+                assertEquals(describeMore(sorted).get(0), describeMore(unsorted).get(0));
+            }
+        }
+
+        // The same lines are printed, in another order
+        List<List<String>> printed = new ArrayList<>();
+        for (boolean unsorted : new boolean[] {false, true}) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+            options.setUnsorted(unsorted);
+            new TruffulaPrinter(options, new PrintStream(baos)).printTree();
+            List<String> lines = new ArrayList<>(List.of(baos.toString().split(System.lineSeparator())));
+            lines.sort(null);
+            printed.add(lines);
+        }
+        assertEquals(printed.get(0), printed.get(1));
+    }
+
+    @Test
+    public void testUnsortedMillionEntryDirectoryInSmallHeap(@TempDir File tempDir) throws Exception {
+        // Unsorted, the entries are printed as they are listed, so they never pile up in the heap
+        assertEquals("1000001 lines in listing order", printMillionEntries(tempDir));
+    }
+
+    private static String printMillionEntries(File root) throws Exception {
+        String classPath = Path.of(TruffulaPrinter.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                + File.pathSeparator
+                + Path.of(MillionEntries.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx32m", "-cp", classPath, MillionEntries.class.getName(), root.getPath())
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes()).trim();
+        process.waitFor();
+        return output;
+    }
+
+    /**
+     * Prints a directory of a million generated entries, listed out of name order,
+     * without sorting them, and reports how many lines were printed and whether
+     * they came out in listing order. Runs in its own JVM, so that it can be given
+     * a small heap.
+     */
+    static class MillionEntries {
+        public static void main(String[] args) {
+            Path root = Path.of(args[0]);
+            int size = 1_000_000;
+            DirectoryLister lister = (directory, showHidden) -> new DirectoryStream<TreeEntry>() {
+                @Override
+                public Iterator<TreeEntry> iterator() {
+                    return new Iterator<TreeEntry>() {
+                        private int i;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < size;
+                        }
+
+                        @Override
+                        public TreeEntry next() {
+                            String name = name(i++, size);
+                            return new TreeEntry(root.resolve(name), name, false);
+                        }
+                    };
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+
+            TruffulaOptions options = new TruffulaOptions(root.toFile(), false, false);
+            options.setUnsorted(true);
+            int[] outOfOrder = {-1};
+            LineCountingStream lines = new LineCountingStream() {
+                @Override
+                public void write(int b) {
+                    super.write(b);
+                    // Every line after the root's is the next listed name, indented once
+                    if (b == '\n' && lines > 1 && outOfOrder[0] < 0
+                            && !lastLine().replaceAll("\033\\[[0-9;]*m", "").equals("   " + name(lines - 2, size))) {
+                        outOfOrder[0] = lines - 1;
+                    }
+                }
+            };
+            new TruffulaPrinter(options, new BufferedColorPrinter(lines), TruffulaPrinter.DEFAULT_COLOR_SEQUENCE,
+                    lister).printTree();
+            System.out.println(lines.lines + " lines"
+                    + (outOfOrder[0] < 0 ? " in listing order" : ", line " + outOfOrder[0] + " out of order"));
+        }
+
+        /**
+         * Returns the name of the i-th entry listed, which isn't the i-th in name order.
+         */
+        private static String name(int i, int size) {
+            return String.format("f%07d", (i * 7919L) % size);
+        }
+    }
+
+    /**
+     * Lists each node's depth and path, sorted, so walks in different orders can be compared.
+     */
+    private static List<String> describe(List<TreeNode> nodes) {
+        return nodes.stream().map(node -> node.getDepth() + " " + node.getPath()).sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Lists the directories that were cut short and how many entries each left out.
+     */
+    private static List<String> describeMore(List<TreeNode> nodes) {
+        return nodes.stream().filter(node -> node.getEntry() instanceof MoreEntries)
+                .map(node -> node.getPath() + " " + ((MoreEntries) node.getEntry()).getCount()).sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Replays ANSI color codes the way a terminal would, returning each visible
+     * character prefixed by the color it is drawn in ('-' for the default color).
+     */
+    static String render(String output) {
+        StringBuilder rendered = new StringBuilder();
+        String color = "-";
+        int i = 0;
+        while (i < output.length()) {
+            if (output.charAt(i) == '\033') {
+                int end = output.indexOf('m', i);
+                String code = output.substring(i, end + 1);
+                color = code.equals(ConsoleColor.RESET.getCode()) ? "-" : code.substring(code.length() - 3, code.length() - 1);
+                i = end + 1;
+            } else {
+                rendered.append(color).append(output.charAt(i));
+                i++;
+            }
+        }
+        return rendered.toString();
+    }
+
+    /**
+     * Wraps a fixed list of entries as a directory listing.
+     */
+    static DirectoryStream<TreeEntry> entries(List<TreeEntry> entries) {
+        return new DirectoryStream<TreeEntry>() {
+            @Override
+            public Iterator<TreeEntry> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * An output stream that counts lines and remembers only the most recent one.
+     */
+    static class LineCountingStream extends OutputStream {
+        int lines;
+        private ByteArrayOutputStream current = new ByteArrayOutputStream();
+        private byte[] last = new byte[0];
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+                last = current.toByteArray();
+                current.reset();
+            } else if (b != '\r') {
+                current.write(b);
+            }
+        }
+
+        String lastLine() {
+            return new String(last);
+        }
+    }
+
+    /**
+     * An output stream that fails, like a closed pipe, once it has taken a number of bytes.
+     */
+    static class FailingStream extends OutputStream {
+        private int remaining;
+
+        FailingStream(int capacity) {
+            this.remaining = capacity;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (remaining == 0) {
+                throw new IOException("Broken pipe");
+            }
+            remaining--;
+        }
+    }
 }
@@ -0,0 +1,62 @@
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A ScanAheadScanner that starts one virtual thread per pending directory listing.
+ *
+ * Virtual threads are cheap to block, so thousands of slow listings (remote
+ * mounts) can be waiting at once without tying up platform threads. A semaphore
+ * caps how many listings actually talk to the filesystem at the same time.
+ */
+public class VirtualThreadScanner extends ScanAheadScanner {
+  /**
+   * How many listings may be queued ahead of the walk for each concurrent listing.
+   */
+  private static final int LOOKAHEAD_PER_PERMIT = 4;
+
+  /**
+   * Runs the background listings.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Limits how many listings run at once.
+   */
+  private final Semaphore permits;
+
+  /**
+   * Constructs a VirtualThreadScanner that runs at most options.getVirtualThreads()
+   * listings at the same time.
+   *
+   * @param lister  the lister used to read each directory
+   * @param options the options that decide which entries are listed and how deep
+   */
+  public VirtualThreadScanner(DirectoryLister lister, TruffulaOptions options) {
+    super(lister, options, options.getVirtualThreads() * LOOKAHEAD_PER_PERMIT);
+    int maxConcurrent = options.getVirtualThreads();
+    this.permits = new Semaphore(maxConcurrent);
+    this.executor = Executors.newVirtualThreadPerTaskExecutor();
+  }
+
+  @Override
+  protected Future<List<TreeEntry>> submit(Callable<List<TreeEntry>> listing) {
+    return executor.submit(() -> {
+      permits.acquire();
+      try {
+        return listing.call();
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    executor.shutdownNow();
+  }
+}